@@ -1,7 +1,9 @@
 package cf.bautroixa.firestorehelper.model;
 
 import cf.bautroixa.firestoreodm.Document;
+import cf.bautroixa.firestoreodm.FirestoreModel;
 
+@FirestoreModel
 public class Notification extends Document {
     private String content;
 
@@ -7,6 +7,7 @@ import java.util.List;
 import cf.bautroixa.firestoreodm.CollectionManager;
 import cf.bautroixa.firestoreodm.Document;
 import cf.bautroixa.firestoreodm.DocumentsManager;
+import cf.bautroixa.firestoreodm.FirestoreModel;
 import cf.bautroixa.firestoreodm.RefsArrayManager;
 
 /**
@@ -17,6 +18,7 @@ import cf.bautroixa.firestoreodm.RefsArrayManager;
  * }
  * a User document also contains a sub-collection Notification
  */
+@FirestoreModel
 public class User extends Document {
     // PROPERTY NAME FOR UPDATING VALUE
     public static final String NAME = "name";
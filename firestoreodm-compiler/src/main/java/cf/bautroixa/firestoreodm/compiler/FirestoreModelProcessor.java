@@ -0,0 +1,431 @@
+package cf.bautroixa.firestoreodm.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * FirestoreModelProcessor generate a DocumentMapper for each Document class annotated with FirestoreModel
+ * <p>
+ * properties follow the rules of Firestore class mapping: public setters and public fields,
+ * named after the setter or field unless annotated with PropertyName, Exclude-d members are skipped.
+ * When a property type is not supported, or a member is annotated with DocumentId or ServerTimestamp which only
+ * toObject honors, no mapper is generated and the class keeps using reflection.
+ */
+public class FirestoreModelProcessor extends AbstractProcessor {
+    static final String FIRESTORE_MODEL = "cf.bautroixa.firestoreodm.FirestoreModel";
+    static final String DOCUMENT = "cf.bautroixa.firestoreodm.Document";
+    static final String DOCUMENT_MAPPER = "cf.bautroixa.firestoreodm.DocumentMapper";
+    static final String DOCUMENT_MAPPERS = "cf.bautroixa.firestoreodm.DocumentMappers";
+    static final String MAPPER_SUFFIX = "_Mapper";
+    static final String EXCLUDE = "com.google.firebase.firestore.Exclude";
+    static final String PROPERTY_NAME = "com.google.firebase.firestore.PropertyName";
+    static final String DOCUMENT_ID = "com.google.firebase.firestore.DocumentId";
+    static final String SERVER_TIMESTAMP = "com.google.firebase.firestore.ServerTimestamp";
+    static final String TIMESTAMP = "com.google.firebase.Timestamp";
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(FIRESTORE_MODEL);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement annotation = processingEnv.getElementUtils().getTypeElement(FIRESTORE_MODEL);
+        if (annotation == null) return false;
+        for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "@FirestoreModel can only be applied to classes");
+                continue;
+            }
+            TypeElement type = (TypeElement) element;
+            if (isValidModel(type)) generate(type);
+        }
+        return true;
+    }
+
+    private boolean isValidModel(TypeElement type) {
+        TypeElement document = processingEnv.getElementUtils().getTypeElement(DOCUMENT);
+        if (!processingEnv.getTypeUtils().isSubtype(type.asType(), document.asType())) {
+            error(type, "@FirestoreModel class must extend " + DOCUMENT);
+            return false;
+        }
+        if (type.getModifiers().contains(Modifier.ABSTRACT) || !type.getTypeParameters().isEmpty()) {
+            error(type, "@FirestoreModel class must be a concrete, non generic class");
+            return false;
+        }
+        if (type.getNestingKind().isNested() && !type.getModifiers().contains(Modifier.STATIC)) {
+            error(type, "@FirestoreModel nested class must be static");
+            return false;
+        }
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC)) {
+                return true;
+            }
+        }
+        error(type, "@FirestoreModel class must have a public no-arg constructor");
+        return false;
+    }
+
+    private void generate(TypeElement type) {
+        List<Property> properties = new ArrayList<>();
+        if (!collectProperties(type, properties)) return;
+
+        PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(type);
+        String packageName = packageElement.getQualifiedName().toString();
+        String typeName = type.getQualifiedName().toString();
+        String mapperName = binarySimpleName(type, packageName).replace('$', '_') + MAPPER_SUFFIX;
+
+        StringBuilder code = new StringBuilder();
+        if (!packageName.isEmpty()) code.append("package ").append(packageName).append(";\n\n");
+        code.append("/**\n * generated by FirestoreModelProcessor, do not edit\n */\n");
+        code.append("public final class ").append(mapperName)
+                .append(" implements ").append(DOCUMENT_MAPPER).append("<").append(typeName).append("> {\n");
+
+        code.append("    @Override\n");
+        code.append("    public ").append(typeName).append(" newInstance() {\n");
+        code.append("        return new ").append(typeName).append("();\n");
+        code.append("    }\n\n");
+
+        code.append("    @Override\n");
+        code.append("    @SuppressWarnings(\"unchecked\")\n");
+        code.append("    public ").append(typeName).append(" decode(java.util.Map<String, Object> data) {\n");
+        code.append("        ").append(typeName).append(" document = new ").append(typeName).append("();\n");
+        code.append("        Object value;\n");
+        for (Property property : properties) {
+            code.append("        value = data.get(\"").append(property.name).append("\");\n");
+            String converted = property.decode("value");
+            if (property.type.getKind().isPrimitive()) {
+                code.append("        if (value != null) ").append(property.write("document", converted)).append(";\n");
+            } else {
+                code.append("        if (data.containsKey(\"").append(property.name).append("\")) ")
+                        .append(property.write("document", "value == null ? null : " + converted)).append(";\n");
+            }
+        }
+        code.append("        return document;\n");
+        code.append("    }\n\n");
+
+        code.append("    @Override\n");
+        code.append("    public java.util.Map<String, Object> encode(").append(typeName).append(" document) {\n");
+        code.append("        java.util.Map<String, Object> data = new java.util.HashMap<>();\n");
+        for (Property property : properties) {
+            if (property.getter == null && property.field == null) continue;
+            code.append("        data.put(\"").append(property.name).append("\", ")
+                    .append(property.encode(property.read("document"))).append(");\n");
+        }
+        code.append("        return data;\n");
+        code.append("    }\n\n");
+
+        code.append("    @Override\n");
+        code.append("    public void update(").append(typeName).append(" target, ").append(typeName).append(" from) {\n");
+        for (Property property : properties) {
+            if (property.getter == null && property.field == null) continue;
+            code.append("        ").append(property.write("target", property.read("from"))).append(";\n");
+        }
+        code.append("    }\n\n");
+
+        code.append("    @Override\n");
+        code.append("    public ").append(typeName).append(" copy(").append(typeName).append(" from) {\n");
+        code.append("        ").append(typeName).append(" target = new ").append(typeName).append("();\n");
+        code.append("        update(target, from);\n");
+        code.append("        return target;\n");
+        code.append("    }\n");
+        code.append("}\n");
+
+        String qualifiedMapperName = packageName.isEmpty() ? mapperName : packageName + "." + mapperName;
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedMapperName, type);
+            try (Writer writer = file.openWriter()) {
+                writer.write(code.toString());
+            }
+        } catch (IOException e) {
+            error(type, "Failed to write " + qualifiedMapperName + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * collect persisted properties of type and its superclasses
+     *
+     * @return false if a property has unsupported type
+     */
+    private boolean collectProperties(TypeElement type, List<Property> properties) {
+        Map<String, Property> byName = new LinkedHashMap<>();
+        List<? extends Element> members = processingEnv.getElementUtils().getAllMembers(type);
+        for (Element member : members) {
+            if (member.getKind() != ElementKind.FIELD && member.getKind() != ElementKind.METHOD) continue;
+            AnnotationMirror annotation = findAnnotation(member, DOCUMENT_ID);
+            if (annotation == null) annotation = findAnnotation(member, SERVER_TIMESTAMP);
+            if (annotation != null) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                        "Member " + member.getSimpleName() + " is annotated with " + annotation.getAnnotationType()
+                                + ", " + type.getSimpleName() + " will be mapped by reflection", type);
+                return false;
+            }
+        }
+        for (VariableElement field : ElementFilter.fieldsIn(members)) {
+            Set<Modifier> modifiers = field.getModifiers();
+            if (!modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.STATIC)
+                    || modifiers.contains(Modifier.FINAL) || modifiers.contains(Modifier.TRANSIENT)
+                    || isSkipped(field)) continue;
+            String name = propertyName(field, field.getSimpleName().toString());
+            Property property = new Property(name, field.asType());
+            property.field = field.getSimpleName().toString();
+            byName.put(name, property);
+        }
+        for (ExecutableElement method : ElementFilter.methodsIn(members)) {
+            String methodName = method.getSimpleName().toString();
+            Set<Modifier> modifiers = method.getModifiers();
+            if (!methodName.startsWith("set") || methodName.length() == 3 || method.getParameters().size() != 1
+                    || !modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.STATIC)
+                    || isSkipped(method)) continue;
+            TypeMirror propertyType = method.getParameters().get(0).asType();
+            String suffix = methodName.substring(3);
+            String name = propertyName(method, serializedName(suffix));
+            Property property = new Property(name, propertyType);
+            property.setter = methodName;
+            ExecutableElement getter = findGetter(members, suffix, propertyType);
+            if (getter != null && findAnnotation(getter, EXCLUDE) != null) continue;
+            property.getter = getter != null ? getter.getSimpleName().toString() : null;
+            byName.put(name, property);
+        }
+        boolean isSupported = true;
+        for (Property property : byName.values()) {
+            if (property.decode("value") == null) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                        "Property " + property.name + " of type " + property.type
+                                + " is not supported, " + type.getSimpleName() + " will be mapped by reflection", type);
+                isSupported = false;
+            }
+        }
+        properties.addAll(byName.values());
+        return isSupported;
+    }
+
+    private ExecutableElement findGetter(List<? extends Element> members, String suffix, TypeMirror propertyType) {
+        for (ExecutableElement method : ElementFilter.methodsIn(members)) {
+            String methodName = method.getSimpleName().toString();
+            boolean isGetter = methodName.equals("get" + suffix)
+                    || (methodName.equals("is" + suffix) && propertyType.getKind() == TypeKind.BOOLEAN);
+            if (isGetter && method.getParameters().isEmpty() && method.getModifiers().contains(Modifier.PUBLIC)
+                    && !method.getModifiers().contains(Modifier.STATIC)
+                    && processingEnv.getTypeUtils().isSameType(method.getReturnType(), propertyType)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * members declared by Document or Object and members annotated with Exclude are not persisted
+     */
+    private boolean isSkipped(Element member) {
+        String owner = ((TypeElement) member.getEnclosingElement()).getQualifiedName().toString();
+        if (owner.equals(DOCUMENT) || owner.equals("java.lang.Object")) return true;
+        return findAnnotation(member, EXCLUDE) != null;
+    }
+
+    private String propertyName(Element member, String defaultName) {
+        AnnotationMirror propertyName = findAnnotation(member, PROPERTY_NAME);
+        if (propertyName == null) return defaultName;
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : propertyName.getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals("value")) {
+                return entry.getValue().getValue().toString();
+            }
+        }
+        return defaultName;
+    }
+
+    private static AnnotationMirror findAnnotation(Element element, String annotationName) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            TypeElement annotationType = (TypeElement) mirror.getAnnotationType().asElement();
+            if (annotationType.getQualifiedName().contentEquals(annotationName)) return mirror;
+        }
+        return null;
+    }
+
+    /**
+     * same naming rule as Firestore: leading upper case characters are lower cased
+     */
+    private static String serializedName(String name) {
+        char[] chars = name.toCharArray();
+        for (int i = 0; i < chars.length && Character.isUpperCase(chars[i]); i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    private static String binarySimpleName(TypeElement type, String packageName) {
+        String qualifiedName = type.getQualifiedName().toString();
+        String simpleNames = packageName.isEmpty() ? qualifiedName : qualifiedName.substring(packageName.length() + 1);
+        return simpleNames.replace('.', '$');
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private class Property {
+        final String name;
+        final TypeMirror type;
+        String setter, getter, field;
+
+        Property(String name, TypeMirror type) {
+            this.name = name;
+            this.type = type;
+        }
+
+        String write(String target, String value) {
+            if (setter != null) return target + "." + setter + "(" + value + ")";
+            return target + "." + field + " = " + value;
+        }
+
+        String read(String from) {
+            if (getter != null) return from + "." + getter + "()";
+            return from + "." + field;
+        }
+
+        /**
+         * @return expression converting a property value to a Firestore value, enums are stored by name
+         */
+        String encode(String value) {
+            if (type.getKind() == TypeKind.DECLARED && ((DeclaredType) type).asElement().getKind() == ElementKind.ENUM) {
+                return value + " == null ? null : " + value + ".name()";
+            }
+            return value;
+        }
+
+        /**
+         * @return expression converting a value of DocumentSnapshot#getData to this property type,
+         * null if the type is not supported
+         */
+        String decode(String value) {
+            switch (type.getKind()) {
+                case BOOLEAN:
+                    return "(Boolean) " + value;
+                case LONG:
+                    return "((Number) " + value + ").longValue()";
+                case INT:
+                    return "((Number) " + value + ").intValue()";
+                case DOUBLE:
+                    return "((Number) " + value + ").doubleValue()";
+                case FLOAT:
+                    return "((Number) " + value + ").floatValue()";
+                case DECLARED:
+                    return decodeDeclared((DeclaredType) type, value);
+                default:
+                    return null;
+            }
+        }
+
+        private String decodeDeclared(DeclaredType declaredType, String value) {
+            TypeElement element = (TypeElement) declaredType.asElement();
+            String name = element.getQualifiedName().toString();
+            if (element.getKind() == ElementKind.ENUM) {
+                return "Enum.valueOf(" + name + ".class, (String) " + value + ")";
+            }
+            switch (name) {
+                case "java.lang.Boolean":
+                case "java.lang.String":
+                case "com.google.firebase.firestore.DocumentReference":
+                case "com.google.firebase.firestore.GeoPoint":
+                case "com.google.firebase.firestore.Blob":
+                case TIMESTAMP:
+                    return "(" + name + ") " + value;
+                case "java.lang.Long":
+                    return "((Number) " + value + ").longValue()";
+                case "java.lang.Integer":
+                    return "((Number) " + value + ").intValue()";
+                case "java.lang.Double":
+                    return "((Number) " + value + ").doubleValue()";
+                case "java.lang.Float":
+                    return "((Number) " + value + ").floatValue()";
+                case "java.util.Date":
+                    return "(" + value + " instanceof " + TIMESTAMP + " ? ((" + TIMESTAMP + ") " + value
+                            + ").toDate() : (java.util.Date) " + value + ")";
+                case "java.util.List":
+                case "java.util.Map":
+                    if (!isPlainCollection(declaredType)) return null;
+                    // whole numbers are Long and others Double in getData, numbers are converted like toObject does
+                    switch (leafTypeName(declaredType)) {
+                        case "java.lang.Long":
+                            return "(" + declaredType + ") " + DOCUMENT_MAPPERS + ".toLongs(" + value + ")";
+                        case "java.lang.Double":
+                            return "(" + declaredType + ") " + DOCUMENT_MAPPERS + ".toDoubles(" + value + ")";
+                        default:
+                            return "(" + declaredType + ") " + value;
+                    }
+                default:
+                    return null;
+            }
+        }
+
+        /**
+         * @return qualified name of the element type of the innermost List or Map
+         */
+        private String leafTypeName(DeclaredType collectionType) {
+            List<? extends TypeMirror> arguments = collectionType.getTypeArguments();
+            DeclaredType elementType = (DeclaredType) arguments.get(arguments.size() - 1);
+            String name = ((TypeElement) elementType.asElement()).getQualifiedName().toString();
+            if (name.equals("java.util.List") || name.equals("java.util.Map")) return leafTypeName(elementType);
+            return name;
+        }
+
+        /**
+         * List and Map are cast and encoded as they are, so their elements must be types Firestore returns as is,
+         * or Long and Double whose values are converted.
+         * Object and raw collections could hold POJOs or enums that only reflection can encode, they are not supported
+         */
+        private boolean isPlainCollection(DeclaredType collectionType) {
+            List<? extends TypeMirror> arguments = collectionType.getTypeArguments();
+            if (arguments.isEmpty()) return false;
+            if (arguments.size() == 2 && !arguments.get(0).toString().equals("java.lang.String")) return false;
+            TypeMirror elementType = arguments.get(arguments.size() - 1);
+            if (elementType.getKind() != TypeKind.DECLARED) return false;
+            switch (((TypeElement) ((DeclaredType) elementType).asElement()).getQualifiedName().toString()) {
+                case "java.lang.Boolean":
+                case "java.lang.String":
+                case "java.lang.Long":
+                case "java.lang.Double":
+                case "com.google.firebase.firestore.DocumentReference":
+                case "com.google.firebase.firestore.GeoPoint":
+                case "com.google.firebase.firestore.Blob":
+                case TIMESTAMP:
+                    return true;
+                case "java.util.List":
+                case "java.util.Map":
+                    return isPlainCollection((DeclaredType) elementType);
+                default:
+                    return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package cf.bautroixa.firestoreodm.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IndexedListBenchmark measures the list operations behind DocumentsManager put, remove, get and applyChanges
+ * <p>
+ * every benchmark leaves the list as it found it, so its size stays the same across invocations
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class IndexedListBenchmark {
+    private static final int BATCH_SIZE = 100;
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private IndexedList<Item> items;
+    private Item[] existing;
+    private Item extra;
+    private Random random;
+
+    @Setup
+    public void setUp() {
+        random = new Random(42);
+        items = new IndexedList<>(new IndexedList.IdOf<Item>() {
+            @Override
+            public String idOf(Item item) {
+                return item.id;
+            }
+        });
+        existing = new Item[size];
+        for (int i = 0; i < size; i++) {
+            existing[i] = new Item("doc" + i);
+            items.add(existing[i]);
+        }
+        extra = new Item("extra");
+    }
+
+    /**
+     * DocumentsManager#put of a new Document at a random position followed by DocumentsManager#remove
+     */
+    @Benchmark
+    public int insertAndRemove() {
+        items.insert(random.nextInt(size + 1), extra);
+        return items.remove(extra.id);
+    }
+
+    /**
+     * DocumentsManager#remove of a random Document followed by putting it back where it was
+     */
+    @Benchmark
+    public int removeAndInsert() {
+        Item item = existing[random.nextInt(size)];
+        int position = items.remove(item.id);
+        items.insert(position, item);
+        return position;
+    }
+
+    /**
+     * DocumentsManager#get
+     */
+    @Benchmark
+    public Item get() {
+        return items.get(existing[random.nextInt(size)].id);
+    }
+
+    /**
+     * DocumentsManager#indexOf, which is also done for every put
+     */
+    @Benchmark
+    public int indexOf() {
+        return items.indexOf(existing[random.nextInt(size)].id);
+    }
+
+    /**
+     * removed and changed ranges of DocumentsManager#applyChanges for a snapshot of BATCH_SIZE Documents
+     */
+    @Benchmark
+    public void removeAllAndRestore(Blackhole blackhole) {
+        List<String> ids = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            ids.add(existing[random.nextInt(size)].id);
+        }
+        blackhole.consume(items.rangesOf(ids));
+        ArrayList<ItemRange<Item>> removedRanges = items.removeAll(ids);
+        // ranges are in descending order, put them back in ascending order
+        for (int i = removedRanges.size() - 1; i >= 0; i--) {
+            ItemRange<Item> range = removedRanges.get(i);
+            for (int j = 0; j < range.items.size(); j++) {
+                items.insert(range.positionStart + j, range.items.get(j));
+            }
+        }
+        blackhole.consume(removedRanges);
+    }
+
+    static class Item {
+        final String id;
+
+        Item(String id) {
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package cf.bautroixa.firestoreodm.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ReorderBenchmark measures the reorder step of RefsArrayManager#updateRefList
+ * when a few references of a large array change place
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReorderBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    @Param({"1", "10", "100"})
+    public int movedRefs;
+
+    private IndexedList<Ref> items;
+    private ListDiff.Ordering<Ref> ordering;
+    private ListDiff.Mover<Ref> mover;
+    private Random random;
+
+    @Setup
+    public void setUp() {
+        random = new Random(42);
+        items = new IndexedList<>(new IndexedList.IdOf<Ref>() {
+            @Override
+            public String idOf(Ref item) {
+                return item.path;
+            }
+        });
+        for (int i = 0; i < size; i++) {
+            items.add(new Ref("users/" + i, i));
+        }
+        ordering = new ListDiff.Ordering<Ref>() {
+            @Override
+            public int orderOf(Ref item) {
+                return item.order;
+            }
+        };
+        mover = new ListDiff.Mover<Ref>() {
+            @Override
+            public void move(String id, int toPosition) {
+                items.move(id, toPosition);
+            }
+        };
+    }
+
+    /**
+     * move movedRefs random references to random places, then sort the list back to array order
+     */
+    @Benchmark
+    public int shuffleAndReorder() {
+        for (int i = 0; i < movedRefs; i++) {
+            Ref ref = items.getList().get(random.nextInt(size));
+            items.move(ref.path, random.nextInt(size));
+        }
+        ListDiff.reorder(items, ordering, mover);
+        return items.size();
+    }
+
+    /**
+     * longest increasing subsequence alone, on an array with movedRefs misplaced values
+     */
+    @Benchmark
+    public boolean[] longestIncreasingSubsequence() {
+        int[] orders = new int[size];
+        for (int i = 0; i < size; i++) {
+            orders[i] = i;
+        }
+        for (int i = 0; i < movedRefs; i++) {
+            orders[random.nextInt(size)] = random.nextInt(size);
+        }
+        return ListDiff.longestIncreasingSubsequence(orders);
+    }
+
+    static class Ref {
+        final String path;
+        final int order;
+
+        Ref(String path, int order) {
+            this.path = path;
+            this.order = order;
+        }
+    }
+}
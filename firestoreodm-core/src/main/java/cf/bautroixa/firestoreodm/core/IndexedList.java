@@ -0,0 +1,648 @@
+package cf.bautroixa.firestoreodm.core;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * IndexedList is a list of items that can be found by id, items are kept in a {@link PositionIndex}
+ * <p>
+ * insert, remove, finding an id and reading a position cost O(log n), nothing is shifted.
+ * {@link IndexedList#getList()} and {@link IndexedList#getPositionMap()} are read-only views of the index
+ * typed as ArrayList and HashMap for managers that expose them, iterating them costs O(1) per item.
+ *
+ * @param <T> item type
+ */
+public class IndexedList<T> {
+    private final PositionIndex<T> positionIndex = new PositionIndex<>();
+    private final ListView list = new ListView();
+    private final PositionMap positionMap = new PositionMap();
+    private final IdOf<T> idOf;
+    // changes of positionIndex, iterators of the views fail fast like those of ArrayList
+    private int changeCount = 0;
+
+    /**
+     * @param idOf get id of an item, id of an item must not change while it is in list
+     */
+    public IndexedList(IdOf<T> idOf) {
+        this.idOf = idOf;
+    }
+
+    /**
+     * @return read-only list view in order of position, it follows every change of this IndexedList
+     */
+    public ArrayList<T> getList() {
+        return list;
+    }
+
+    /**
+     * @return read-only view of id -> position, it follows every change of this IndexedList
+     */
+    public HashMap<String, Integer> getPositionMap() {
+        return positionMap;
+    }
+
+    public String idOf(T item) {
+        return idOf.idOf(item);
+    }
+
+    public int size() {
+        return positionIndex.size();
+    }
+
+    public boolean contains(String id) {
+        return positionIndex.contains(id);
+    }
+
+    /**
+     * @return item with id or null if there is none
+     */
+    public T get(String id) {
+        return positionIndex.get(id);
+    }
+
+    /**
+     * @return position of id or -1 if there is none
+     */
+    public int indexOf(String id) {
+        return positionIndex.indexOf(id);
+    }
+
+    public void add(T item) {
+        insert(size(), item);
+    }
+
+    /**
+     * insert item at position, positions of items behind it grow by one
+     *
+     * @param position position to insert, 0 <= position <= size()
+     * @param item     item whose id is not in list yet
+     */
+    public void insert(int position, T item) {
+        positionIndex.insert(position, idOf.idOf(item), item);
+        changeCount++;
+    }
+
+    /**
+     * remove item with id, positions of items behind it drop by one
+     *
+     * @param id id of item
+     * @return position it had before removal or -1 if there is none
+     */
+    public int remove(String id) {
+        int position = positionIndex.remove(id);
+        if (position >= 0) changeCount++;
+        return position;
+    }
+
+    /**
+     * move item with id to toPosition
+     *
+     * @param id         id of item
+     * @param toPosition position after the move
+     * @return position before the move or -1 if there is none
+     */
+    public int move(String id, int toPosition) {
+        T item = positionIndex.get(id);
+        int fromPosition = remove(id);
+        if (fromPosition >= 0) insert(toPosition, item);
+        return fromPosition;
+    }
+
+    /**
+     * removeAll remove items with given ids, O(k log n) for k ids
+     *
+     * @param ids ids of items to remove, unknown ids are ignored
+     * @return removed ranges in descending order of position, so every position is valid
+     * if ranges are removed one by one in that order
+     */
+    public ArrayList<ItemRange<T>> removeAll(Collection<String> ids) {
+        ArrayList<ItemRange<T>> removedRanges = new ArrayList<>();
+        ArrayList<ItemRange<T>> ranges = rangesOf(ids);
+        if (ranges.isEmpty()) return removedRanges;
+        for (int i = ranges.size() - 1; i >= 0; i--) {
+            removedRanges.add(ranges.get(i));
+        }
+        for (ItemRange<T> range : ranges) {
+            for (T item : range.items) {
+                positionIndex.remove(idOf.idOf(item));
+            }
+        }
+        changeCount++;
+        return removedRanges;
+    }
+
+    /**
+     * rangesOf group items with given ids into ascending ranges of consecutive positions
+     *
+     * @param ids ids of items, unknown and duplicated ids are ignored
+     * @return ranges in ascending order of position
+     */
+    public ArrayList<ItemRange<T>> rangesOf(Collection<String> ids) {
+        ArrayList<Integer> positions = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            int position = positionIndex.indexOf(id);
+            if (position >= 0) positions.add(position);
+        }
+        Collections.sort(positions);
+        ArrayList<ItemRange<T>> ranges = new ArrayList<>();
+        ItemRange<T> range = null;
+        int lastPosition = -1;
+        for (int position : positions) {
+            if (position == lastPosition) continue;
+            if (range == null || position != lastPosition + 1) {
+                range = new ItemRange<>(position);
+                ranges.add(range);
+            }
+            range.items.add(positionIndex.getAt(position));
+            lastPosition = position;
+        }
+        return ranges;
+    }
+
+    public void clear() {
+        positionIndex.clear();
+        changeCount++;
+    }
+
+    private void checkChangeCount(int expectedChangeCount) {
+        if (changeCount != expectedChangeCount) throw new ConcurrentModificationException();
+    }
+
+    /**
+     * ListView read-only ArrayList reading positionIndex, every method of ArrayList that reads
+     * its own array is overridden, the array itself stays empty
+     */
+    private class ListView extends ArrayList<T> {
+        ListView() {
+            super(0);
+        }
+
+        @Override
+        public int size() {
+            return positionIndex.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return positionIndex.size() == 0;
+        }
+
+        @Override
+        public T get(int index) {
+            return positionIndex.getAt(index);
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return indexOf(o) >= 0;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public int indexOf(Object o) {
+            // an indexed item is found by its id, other values are compared one by one
+            try {
+                if (o != null && positionIndex.get(idOf.idOf((T) o)) == o) return positionIndex.indexOf(idOf.idOf((T) o));
+            } catch (ClassCastException e) {
+                return -1;
+            }
+            int index = 0;
+            for (T item : this) {
+                if (o == null ? item == null : o.equals(item)) return index;
+                index++;
+            }
+            return -1;
+        }
+
+        @Override
+        public int lastIndexOf(Object o) {
+            ListIterator<T> iterator = listIterator(size());
+            while (iterator.hasPrevious()) {
+                T item = iterator.previous();
+                if (o == null ? item == null : o.equals(item)) return iterator.nextIndex();
+            }
+            return -1;
+        }
+
+        @Override
+        public Object[] toArray() {
+            Object[] array = new Object[size()];
+            int index = 0;
+            for (T item : this) {
+                array[index++] = item;
+            }
+            return array;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <E> E[] toArray(E[] a) {
+            int size = size();
+            E[] array = a.length >= size ? a : (E[]) java.lang.reflect.Array.newInstance(a.getClass().getComponentType(), size);
+            int index = 0;
+            for (T item : this) {
+                array[index++] = (E) item;
+            }
+            if (array.length > size) array[size] = null;
+            return array;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return listIterator(0);
+        }
+
+        @Override
+        public ListIterator<T> listIterator() {
+            return listIterator(0);
+        }
+
+        @Override
+        public ListIterator<T> listIterator(int index) {
+            final ListIterator<T> iterator = positionIndex.listIterator(index);
+            final int expectedChangeCount = changeCount;
+            return new ListIterator<T>() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public T next() {
+                    checkChangeCount(expectedChangeCount);
+                    return iterator.next();
+                }
+
+                @Override
+                public boolean hasPrevious() {
+                    return iterator.hasPrevious();
+                }
+
+                @Override
+                public T previous() {
+                    checkChangeCount(expectedChangeCount);
+                    return iterator.previous();
+                }
+
+                @Override
+                public int nextIndex() {
+                    return iterator.nextIndex();
+                }
+
+                @Override
+                public int previousIndex() {
+                    return iterator.previousIndex();
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public void set(T t) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public void add(T t) {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public List<T> subList(int fromIndex, int toIndex) {
+            if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex)
+                throw new IndexOutOfBoundsException("subList " + fromIndex + ".." + toIndex + " of size " + size());
+            ArrayList<T> items = new ArrayList<>(toIndex - fromIndex);
+            ListIterator<T> iterator = listIterator(fromIndex);
+            for (int i = fromIndex; i < toIndex; i++) {
+                items.add(iterator.next());
+            }
+            // a copy, the view is read-only so only later changes of this IndexedList are not reflected
+            return Collections.unmodifiableList(items);
+        }
+
+        @Override
+        public void forEach(Consumer<? super T> action) {
+            for (T item : this) {
+                action.accept(item);
+            }
+        }
+
+        @Override
+        public Spliterator<T> spliterator() {
+            return Spliterators.spliterator(this, Spliterator.ORDERED);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            if (!(o instanceof List)) return false;
+            List<?> other = (List<?>) o;
+            if (other.size() != size()) return false;
+            Iterator<?> otherIterator = other.iterator();
+            for (T item : this) {
+                Object otherItem = otherIterator.next();
+                if (item == null ? otherItem != null : !item.equals(otherItem)) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int hashCode = 1;
+            for (T item : this) {
+                hashCode = 31 * hashCode + (item == null ? 0 : item.hashCode());
+            }
+            return hashCode;
+        }
+
+        @Override
+        public Object clone() {
+            return new ArrayList<>(this);
+        }
+
+        @Override
+        public T set(int index, T element) {
+            throw new UnsupportedOperationException("change the list through its IndexedList");
+        }
+
+        @Override
+        public boolean add(T t) {
+            throw new UnsupportedOperationException("change the list through its IndexedList");
+        }
+
+        @Override
+        public void add(int index, T element) {
+            throw new UnsupportedOperationException("change the list through its IndexedList");
+        }
+
+        @Override
+        public T remove(int index) {
+            throw new UnsupportedOperationException("change the list through its IndexedList");
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            throw new UnsupportedOperationException("change the list through its IndexedList");
+        }
+
+        @Override
+        public void clear() {
+            throw new UnsupportedOperationException("change the list through its IndexedList");
+        }
+
+        @Override
+        public boolean addAll(Collection<? extends T> c) {
+            throw new UnsupportedOperationException("change the list through its IndexedList");
+        }
+
+        @Override
+        public boolean addAll(int index, Collection<? extends T> c) {
+            throw new UnsupportedOperationException("change the list through its IndexedList");
+        }
+
+        @Override
+        public boolean removeAll(Collection<?> c) {
+            throw new UnsupportedOperationException("change the list through its IndexedList");
+        }
+
+        @Override
+        public boolean retainAll(Collection<?> c) {
+            throw new UnsupportedOperationException("change the list through its IndexedList");
+        }
+
+        @Override
+        public boolean removeIf(Predicate<? super T> filter) {
+            throw new UnsupportedOperationException("change the list through its IndexedList");
+        }
+
+        @Override
+        public void replaceAll(UnaryOperator<T> operator) {
+            throw new UnsupportedOperationException("change the list through its IndexedList");
+        }
+
+        @Override
+        public void sort(Comparator<? super T> c) {
+            throw new UnsupportedOperationException("change the list through its IndexedList");
+        }
+
+        @Override
+        protected void removeRange(int fromIndex, int toIndex) {
+            throw new UnsupportedOperationException("change the list through its IndexedList");
+        }
+    }
+
+    /**
+     * PositionMap read-only HashMap of id -> position reading positionIndex, the map itself stays empty
+     */
+    private class PositionMap extends HashMap<String, Integer> {
+        private final Set<Map.Entry<String, Integer>> entries = new AbstractSet<Map.Entry<String, Integer>>() {
+            @Override
+            public Iterator<Map.Entry<String, Integer>> iterator() {
+                final Iterator<String> ids = positionIndex.ids().iterator();
+                final int expectedChangeCount = changeCount;
+                return new Iterator<Map.Entry<String, Integer>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return ids.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<String, Integer> next() {
+                        checkChangeCount(expectedChangeCount);
+                        String id = ids.next();
+                        return new AbstractMap.SimpleImmutableEntry<>(id, positionIndex.indexOf(id));
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return positionIndex.size();
+            }
+        };
+
+        @Override
+        public int size() {
+            return positionIndex.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return positionIndex.size() == 0;
+        }
+
+        @Override
+        public Integer get(Object key) {
+            if (!(key instanceof String)) return null;
+            int position = positionIndex.indexOf((String) key);
+            return position >= 0 ? position : null;
+        }
+
+        @Override
+        public Integer getOrDefault(Object key, Integer defaultValue) {
+            Integer position = get(key);
+            return position != null ? position : defaultValue;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String && positionIndex.contains((String) key);
+        }
+
+        @Override
+        public boolean containsValue(Object value) {
+            return value instanceof Integer && (Integer) value >= 0 && (Integer) value < positionIndex.size();
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return Collections.unmodifiableSet(positionIndex.ids());
+        }
+
+        @Override
+        public Collection<Integer> values() {
+            return new AbstractCollection<Integer>() {
+                @Override
+                public Iterator<Integer> iterator() {
+                    final Iterator<Map.Entry<String, Integer>> iterator = entries.iterator();
+                    return new Iterator<Integer>() {
+                        @Override
+                        public boolean hasNext() {
+                            return iterator.hasNext();
+                        }
+
+                        @Override
+                        public Integer next() {
+                            return iterator.next().getValue();
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return positionIndex.size();
+                }
+            };
+        }
+
+        @Override
+        public Set<Map.Entry<String, Integer>> entrySet() {
+            return entries;
+        }
+
+        @Override
+        public void forEach(BiConsumer<? super String, ? super Integer> action) {
+            for (Map.Entry<String, Integer> entry : entries) {
+                action.accept(entry.getKey(), entry.getValue());
+            }
+        }
+
+        @Override
+        public Object clone() {
+            return new HashMap<>(this);
+        }
+
+        @Override
+        public Integer put(String key, Integer value) {
+            throw new UnsupportedOperationException("positions change with their IndexedList");
+        }
+
+        @Override
+        public void putAll(Map<? extends String, ? extends Integer> m) {
+            throw new UnsupportedOperationException("positions change with their IndexedList");
+        }
+
+        @Override
+        public Integer remove(Object key) {
+            throw new UnsupportedOperationException("positions change with their IndexedList");
+        }
+
+        @Override
+        public boolean remove(Object key, Object value) {
+            throw new UnsupportedOperationException("positions change with their IndexedList");
+        }
+
+        @Override
+        public void clear() {
+            throw new UnsupportedOperationException("positions change with their IndexedList");
+        }
+
+        @Override
+        public Integer putIfAbsent(String key, Integer value) {
+            throw new UnsupportedOperationException("positions change with their IndexedList");
+        }
+
+        @Override
+        public boolean replace(String key, Integer oldValue, Integer newValue) {
+            throw new UnsupportedOperationException("positions change with their IndexedList");
+        }
+
+        @Override
+        public Integer replace(String key, Integer value) {
+            throw new UnsupportedOperationException("positions change with their IndexedList");
+        }
+
+        @Override
+        public void replaceAll(BiFunction<? super String, ? super Integer, ? extends Integer> function) {
+            throw new UnsupportedOperationException("positions change with their IndexedList");
+        }
+
+        @Override
+        public Integer computeIfAbsent(String key, Function<? super String, ? extends Integer> mappingFunction) {
+            throw new UnsupportedOperationException("positions change with their IndexedList");
+        }
+
+        @Override
+        public Integer computeIfPresent(String key, BiFunction<? super String, ? super Integer, ? extends Integer> remappingFunction) {
+            throw new UnsupportedOperationException("positions change with their IndexedList");
+        }
+
+        @Override
+        public Integer compute(String key, BiFunction<? super String, ? super Integer, ? extends Integer> remappingFunction) {
+            throw new UnsupportedOperationException("positions change with their IndexedList");
+        }
+
+        @Override
+        public Integer merge(String key, Integer value, BiFunction<? super Integer, ? super Integer, ? extends Integer> remappingFunction) {
+            throw new UnsupportedOperationException("positions change with their IndexedList");
+        }
+    }
+
+    public interface IdOf<T> {
+        String idOf(T item);
+    }
+}
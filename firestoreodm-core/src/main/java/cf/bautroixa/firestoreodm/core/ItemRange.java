@@ -0,0 +1,18 @@
+package cf.bautroixa.firestoreodm.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ItemRange consecutive items of a list starting at positionStart
+ *
+ * @param <T> item type
+ */
+public final class ItemRange<T> {
+    public final int positionStart;
+    public final List<T> items = new ArrayList<>();
+
+    public ItemRange(int positionStart) {
+        this.positionStart = positionStart;
+    }
+}
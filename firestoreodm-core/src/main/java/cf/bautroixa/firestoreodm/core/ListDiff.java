@@ -0,0 +1,103 @@
+package cf.bautroixa.firestoreodm.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * ListDiff helps find the minimal set of items to move when reordering a list
+ */
+public class ListDiff {
+    /**
+     * longestIncreasingSubsequence find items that can stay in place when sorting values,
+     * every other item has to be moved, runs in O(n log n)
+     *
+     * @param values target order of each item in current list
+     * @return keep[i] is true if item i belongs to a longest strictly increasing subsequence
+     */
+    public static boolean[] longestIncreasingSubsequence(int[] values) {
+        int n = values.length;
+        boolean[] keep = new boolean[n];
+        if (n == 0) return keep;
+        // tails[k] is index of smallest tail value of an increasing subsequence of length k + 1
+        int[] tails = new int[n];
+        int[] previous = new int[n];
+        int length = 0;
+        for (int i = 0; i < n; i++) {
+            int low = 0, high = length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (values[tails[mid]] < values[i]) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            previous[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == length) length++;
+        }
+        for (int i = tails[length - 1]; i >= 0; i = previous[i]) {
+            keep[i] = true;
+        }
+        return keep;
+    }
+
+    /**
+     * reorder sort items by ordering with as few moves as possible, only items outside the longest
+     * already-ordered subsequence are moved, each one right after its predecessor
+     *
+     * @param items    list to sort
+     * @param ordering target order of each item, items with equal order keep their relative order only if already sorted
+     * @param mover    move an item, it must move it in items too
+     */
+    public static <T> void reorder(IndexedList<T> items, final Ordering<T> ordering, Mover<T> mover) {
+        List<T> list = items.getList();
+        int size = list.size();
+        int[] orders = new int[size];
+        for (int i = 0; i < size; i++) {
+            orders[i] = ordering.orderOf(list.get(i));
+        }
+        boolean[] keep = longestIncreasingSubsequence(orders);
+        TreeMap<Integer, T> placed = new TreeMap<>();
+        ArrayList<T> moving = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (keep[i]) {
+                placed.put(orders[i], list.get(i));
+            } else {
+                moving.add(list.get(i));
+            }
+        }
+        if (moving.isEmpty()) return;
+        Collections.sort(moving, new Comparator<T>() {
+            @Override
+            public int compare(T a, T b) {
+                return Integer.compare(ordering.orderOf(a), ordering.orderOf(b));
+            }
+        });
+        for (T item : moving) {
+            int order = ordering.orderOf(item);
+            Map.Entry<Integer, T> predecessor = placed.lowerEntry(order);
+            String id = items.idOf(item);
+            int fromPosition = items.indexOf(id);
+            int toPosition = predecessor != null ? items.indexOf(items.idOf(predecessor.getValue())) + 1 : 0;
+            if (fromPosition < toPosition) toPosition--;
+            mover.move(id, toPosition);
+            placed.put(order, item);
+        }
+    }
+
+    public interface Ordering<T> {
+        int orderOf(T item);
+    }
+
+    public interface Mover<T> {
+        /**
+         * move item with id to toPosition
+         */
+        void move(String id, int toPosition);
+    }
+}
@@ -0,0 +1,201 @@
+package cf.bautroixa.firestoreodm.core;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * PersistentList is an immutable list, every change returns a new list that shares
+ * all but O(log n) nodes with the old one (path-copying implicit treap)
+ * <p>
+ * get, plus, with and minus cost O(log n), iteration costs O(n). Old lists stay valid
+ * and unchanged, so they can be handed to other threads or kept as consistent snapshots.
+ * Mutating methods of {@link List} throw UnsupportedOperationException.
+ *
+ * @param <T> item type
+ */
+public final class PersistentList<T> extends AbstractList<T> {
+    private static final PersistentList<?> EMPTY = new PersistentList<>(null);
+    private static final Random random = new Random();
+    private final Node<T> root;
+
+    private PersistentList(Node<T> root) {
+        this.root = root;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> PersistentList<T> empty() {
+        return (PersistentList<T>) EMPTY;
+    }
+
+    /**
+     * from build a list of items in O(n)
+     */
+    public static <T> PersistentList<T> from(List<? extends T> items) {
+        // balanced tree, children get lower priorities than their parent
+        return new PersistentList<>(build(items, 0, items.size(), Integer.MAX_VALUE));
+    }
+
+    @Override
+    public int size() {
+        return size(root);
+    }
+
+    @Override
+    public T get(int index) {
+        checkIndex(index, size());
+        Node<T> node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index == leftSize) {
+                return node.value;
+            } else {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * plus insert item at index
+     *
+     * @return new list, this list is unchanged
+     */
+    public PersistentList<T> plus(int index, T item) {
+        checkIndex(index, size() + 1);
+        Split<T> parts = split(root, index);
+        return new PersistentList<>(merge(merge(parts.first, new Node<>(item, random.nextInt(), null, null)), parts.rest));
+    }
+
+    /**
+     * plus append item
+     *
+     * @return new list, this list is unchanged
+     */
+    public PersistentList<T> plus(T item) {
+        return plus(size(), item);
+    }
+
+    /**
+     * with replace item at index
+     *
+     * @return new list, this list is unchanged
+     */
+    public PersistentList<T> with(int index, T item) {
+        checkIndex(index, size());
+        return new PersistentList<>(with(root, index, item));
+    }
+
+    /**
+     * minus remove item at index
+     *
+     * @return new list, this list is unchanged
+     */
+    public PersistentList<T> minus(int index) {
+        checkIndex(index, size());
+        Split<T> parts = split(root, index);
+        Split<T> rest = split(parts.rest, 1);
+        return new PersistentList<>(merge(parts.first, rest.rest));
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private final ArrayDeque<Node<T>> stack = new ArrayDeque<>();
+            private Node<T> next = root;
+
+            @Override
+            public boolean hasNext() {
+                return next != null || !stack.isEmpty();
+            }
+
+            @Override
+            public T next() {
+                while (next != null) {
+                    stack.push(next);
+                    next = next.left;
+                }
+                if (stack.isEmpty()) throw new NoSuchElementException();
+                Node<T> node = stack.pop();
+                next = node.right;
+                return node.value;
+            }
+        };
+    }
+
+    private static void checkIndex(int index, int bound) {
+        if (index < 0 || index >= bound)
+            throw new IndexOutOfBoundsException("index " + index + " out of bound " + bound);
+    }
+
+    private static int size(Node<?> node) {
+        return node != null ? node.size : 0;
+    }
+
+    private static <T> Node<T> build(List<? extends T> items, int from, int to, int maxPriority) {
+        if (from >= to) return null;
+        int mid = (from + to) >>> 1;
+        // any priority below the parent one keeps the heap order, the depth is at most 32 so it never underflows
+        int priority = maxPriority - 1 - random.nextInt(1 << 16);
+        return new Node<T>(items.get(mid), priority, build(items, from, mid, priority), build(items, mid + 1, to, priority));
+    }
+
+    private static <T> Node<T> with(Node<T> node, int index, T item) {
+        int leftSize = size(node.left);
+        if (index < leftSize) return new Node<>(node.value, node.priority, with(node.left, index, item), node.right);
+        if (index == leftSize) return new Node<>(item, node.priority, node.left, node.right);
+        return new Node<>(node.value, node.priority, node.left, with(node.right, index - leftSize - 1, item));
+    }
+
+    /**
+     * split tree into first count nodes and the rest, only nodes on the split path are copied
+     */
+    private static <T> Split<T> split(Node<T> node, int count) {
+        if (node == null) return new Split<>();
+        Split<T> parts;
+        if (size(node.left) >= count) {
+            parts = split(node.left, count);
+            parts.rest = new Node<>(node.value, node.priority, parts.rest, node.right);
+        } else {
+            parts = split(node.right, count - size(node.left) - 1);
+            parts.first = new Node<>(node.value, node.priority, node.left, parts.first);
+        }
+        return parts;
+    }
+
+    /**
+     * merge two trees, every node of first tree is positioned before nodes of second tree
+     */
+    private static <T> Node<T> merge(Node<T> first, Node<T> second) {
+        if (first == null) return second;
+        if (second == null) return first;
+        if (first.priority > second.priority) {
+            return new Node<>(first.value, first.priority, first.left, merge(first.right, second));
+        }
+        return new Node<>(second.value, second.priority, merge(first, second.left), second.right);
+    }
+
+    private static final class Node<T> {
+        final T value;
+        final int priority;
+        final int size;
+        final Node<T> left, right;
+
+        Node(T value, int priority, Node<T> left, Node<T> right) {
+            this.value = value;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+            this.size = 1 + size(left) + size(right);
+        }
+    }
+
+    private static final class Split<T> {
+        Node<T> first, rest;
+    }
+}
@@ -0,0 +1,312 @@
+package cf.bautroixa.firestoreodm.core;
+
+import java.util.HashMap;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * PositionIndex maps documentId to its value and its position in a list
+ * <p>
+ * positions are kept in an order-statistic tree (implicit treap with parent links),
+ * so insert, remove, indexOf and getAt cost O(log n) and never re-index the items behind
+ * the changed position, get by documentId is O(1), iterating in order costs O(1) per item
+ *
+ * @param <T> value type
+ */
+public class PositionIndex<T> {
+    private final HashMap<String, Node<T>> nodes = new HashMap<>();
+    private final Random random = new Random();
+    private Node<T> root;
+
+    public int size() {
+        return size(root);
+    }
+
+    public boolean contains(String id) {
+        return nodes.containsKey(id);
+    }
+
+    /**
+     * @return value of documentId or null if documentId is not indexed
+     */
+    public T get(String id) {
+        Node<T> node = nodes.get(id);
+        return node != null ? node.value : null;
+    }
+
+    /**
+     * getAt get value at position
+     *
+     * @param position 0 <= position < size()
+     * @return value at position
+     */
+    public T getAt(int position) {
+        if (position < 0 || position >= size())
+            throw new IndexOutOfBoundsException("position " + position + " out of size " + size());
+        return nodeAt(position).value;
+    }
+
+    /**
+     * @return indexed documentIds, in no particular order
+     */
+    public Set<String> ids() {
+        return nodes.keySet();
+    }
+
+    /**
+     * indexOf get position of documentId
+     *
+     * @param id documentId
+     * @return position or -1 if documentId is not indexed
+     */
+    public int indexOf(String id) {
+        Node<T> node = nodes.get(id);
+        return node != null ? positionOf(node) : -1;
+    }
+
+    /**
+     * add documentId at the end
+     *
+     * @param id    documentId
+     * @param value value of documentId
+     */
+    public void add(String id, T value) {
+        insert(size(), id, value);
+    }
+
+    /**
+     * insert documentId at position, items from that position are shifted by one
+     *
+     * @param position position to insert, 0 <= position <= size()
+     * @param id       documentId, must not be indexed yet
+     * @param value    value of documentId
+     */
+    public void insert(int position, String id, T value) {
+        if (position < 0 || position > size())
+            throw new IndexOutOfBoundsException("position " + position + " out of size " + size());
+        if (nodes.containsKey(id))
+            throw new IllegalArgumentException("documentId " + id + " is already indexed");
+        Node<T> node = new Node<>(value, random.nextInt());
+        nodes.put(id, node);
+        Split<T> parts = split(root, position);
+        root = merge(merge(parts.first, node), parts.rest);
+        root.parent = null;
+    }
+
+    /**
+     * remove documentId, items behind it are shifted by one
+     *
+     * @param id documentId
+     * @return position it had before removal or -1 if documentId is not indexed
+     */
+    public int remove(String id) {
+        Node<T> node = nodes.remove(id);
+        if (node == null) return -1;
+        int position = positionOf(node);
+        // children of a treap node always have lower priority than its parent, so they can take its place
+        Node<T> merged = merge(node.left, node.right);
+        Node<T> parent = node.parent;
+        if (merged != null) merged.parent = parent;
+        if (parent == null) {
+            root = merged;
+        } else if (parent.left == node) {
+            parent.left = merged;
+        } else {
+            parent.right = merged;
+        }
+        for (Node<T> p = parent; p != null; p = p.parent) {
+            p.size--;
+        }
+        return position;
+    }
+
+    public void clear() {
+        nodes.clear();
+        root = null;
+    }
+
+    /**
+     * listIterator iterate values in order of position, it must not be used after the index changes
+     *
+     * @param position position of the first value returned by next
+     * @return read-only ListIterator
+     */
+    public ListIterator<T> listIterator(final int position) {
+        if (position < 0 || position > size())
+            throw new IndexOutOfBoundsException("position " + position + " out of size " + size());
+        return new ListIterator<T>() {
+            // node returned by the next call of next, null at the end
+            private Node<T> nextNode = position < size() ? nodeAt(position) : null;
+            private int index = position;
+
+            @Override
+            public boolean hasNext() {
+                return nextNode != null;
+            }
+
+            @Override
+            public T next() {
+                if (nextNode == null) throw new NoSuchElementException();
+                Node<T> node = nextNode;
+                nextNode = successor(node);
+                index++;
+                return node.value;
+            }
+
+            @Override
+            public boolean hasPrevious() {
+                return index > 0;
+            }
+
+            @Override
+            public T previous() {
+                if (index == 0) throw new NoSuchElementException();
+                nextNode = nextNode != null ? predecessor(nextNode) : last(root);
+                index--;
+                return nextNode.value;
+            }
+
+            @Override
+            public int nextIndex() {
+                return index;
+            }
+
+            @Override
+            public int previousIndex() {
+                return index - 1;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void set(T t) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void add(T t) {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private Node<T> nodeAt(int position) {
+        Node<T> node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (position < leftSize) {
+                node = node.left;
+            } else if (position == leftSize) {
+                return node;
+            } else {
+                position -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    private static <T> Node<T> first(Node<T> node) {
+        while (node.left != null) node = node.left;
+        return node;
+    }
+
+    private static <T> Node<T> last(Node<T> node) {
+        while (node.right != null) node = node.right;
+        return node;
+    }
+
+    private static <T> Node<T> successor(Node<T> node) {
+        if (node.right != null) return first(node.right);
+        Node<T> child = node, parent = node.parent;
+        while (parent != null && child == parent.right) {
+            child = parent;
+            parent = parent.parent;
+        }
+        return parent;
+    }
+
+    private static <T> Node<T> predecessor(Node<T> node) {
+        if (node.left != null) return last(node.left);
+        Node<T> child = node, parent = node.parent;
+        while (parent != null && child == parent.left) {
+            child = parent;
+            parent = parent.parent;
+        }
+        return parent;
+    }
+
+    private int positionOf(Node<T> node) {
+        int position = size(node.left);
+        for (Node<T> child = node, parent = node.parent; parent != null; child = parent, parent = parent.parent) {
+            if (child == parent.right) position += size(parent.left) + 1;
+        }
+        return position;
+    }
+
+    private static int size(Node<?> node) {
+        return node != null ? node.size : 0;
+    }
+
+    private static <T> void update(Node<T> node) {
+        node.size = 1 + size(node.left) + size(node.right);
+        if (node.left != null) node.left.parent = node;
+        if (node.right != null) node.right.parent = node;
+    }
+
+    /**
+     * split tree into first count nodes and the rest
+     */
+    private static <T> Split<T> split(Node<T> node, int count) {
+        if (node == null) return new Split<>();
+        Split<T> parts;
+        if (size(node.left) >= count) {
+            parts = split(node.left, count);
+            node.left = parts.rest;
+            update(node);
+            parts.rest = node;
+        } else {
+            parts = split(node.right, count - size(node.left) - 1);
+            node.right = parts.first;
+            update(node);
+            parts.first = node;
+        }
+        return parts;
+    }
+
+    /**
+     * merge two trees, every node of first tree is positioned before nodes of second tree
+     */
+    private static <T> Node<T> merge(Node<T> first, Node<T> second) {
+        if (first == null) return second;
+        if (second == null) return first;
+        if (first.priority > second.priority) {
+            first.right = merge(first.right, second);
+            update(first);
+            return first;
+        }
+        second.left = merge(first, second.left);
+        update(second);
+        return second;
+    }
+
+    private static class Node<T> {
+        final T value;
+        final int priority;
+        int size = 1;
+        Node<T> left, right, parent;
+
+        Node(T value, int priority) {
+            this.value = value;
+            this.priority = priority;
+        }
+    }
+
+    private static class Split<T> {
+        Node<T> first, rest;
+    }
+}
@@ -0,0 +1,170 @@
+package cf.bautroixa.firestoreodm.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IndexedListTest {
+    private IndexedList<String> items;
+
+    @Before
+    public void setUp() {
+        items = new IndexedList<>(new IndexedList.IdOf<String>() {
+            @Override
+            public String idOf(String item) {
+                return item;
+            }
+        });
+    }
+
+    @Test
+    public void insertRemoveMove_keepListAndIndexInStep() {
+        items.add("a");
+        items.add("c");
+        items.insert(1, "b");
+        assertEquals(Arrays.asList("a", "b", "c"), items.getList());
+        assertEquals(2, items.indexOf("c"));
+        assertEquals("b", items.get("b"));
+
+        assertEquals(0, items.move("a", 2));
+        assertEquals(Arrays.asList("b", "c", "a"), items.getList());
+        assertEquals(2, items.indexOf("a"));
+        assertEquals(-1, items.move("z", 0));
+
+        assertEquals(1, items.remove("c"));
+        assertEquals(-1, items.remove("c"));
+        assertEquals(Arrays.asList("b", "a"), items.getList());
+        assertFalse(items.contains("c"));
+
+        items.clear();
+        assertEquals(0, items.size());
+        assertTrue(items.getList().isEmpty());
+    }
+
+    @Test
+    public void rangesOf_groupsConsecutivePositions() {
+        for (String id : Arrays.asList("a", "b", "c", "d", "e", "f")) {
+            items.add(id);
+        }
+        ArrayList<ItemRange<String>> ranges = items.rangesOf(Arrays.asList("e", "a", "b", "z", "d", "a"));
+        assertEquals(2, ranges.size());
+        assertEquals(0, ranges.get(0).positionStart);
+        assertEquals(Arrays.asList("a", "b"), ranges.get(0).items);
+        assertEquals(3, ranges.get(1).positionStart);
+        assertEquals(Arrays.asList("d", "e"), ranges.get(1).items);
+    }
+
+    @Test
+    public void removeAll_returnsDescendingRanges() {
+        for (String id : Arrays.asList("a", "b", "c", "d", "e", "f")) {
+            items.add(id);
+        }
+        ArrayList<ItemRange<String>> ranges = items.removeAll(Arrays.asList("b", "c", "f", "z"));
+        assertEquals(2, ranges.size());
+        assertEquals(5, ranges.get(0).positionStart);
+        assertEquals(Arrays.asList("f"), ranges.get(0).items);
+        assertEquals(1, ranges.get(1).positionStart);
+        assertEquals(Arrays.asList("b", "c"), ranges.get(1).items);
+        assertEquals(Arrays.asList("a", "d", "e"), items.getList());
+        assertEquals(1, items.indexOf("d"));
+        assertTrue(items.removeAll(Arrays.asList("z")).isEmpty());
+    }
+
+    @Test
+    public void views_followChangesAndRejectWrites() {
+        ArrayList<String> list = items.getList();
+        HashMap<String, Integer> positions = items.getPositionMap();
+        for (String id : Arrays.asList("a", "b", "c", "d")) {
+            items.add(id);
+        }
+        items.remove("b");
+        assertEquals(Arrays.asList("a", "c", "d"), list);
+        assertEquals(Arrays.asList("a", "c", "d").hashCode(), list.hashCode());
+        assertEquals("c", list.get(1));
+        assertEquals(2, list.indexOf("d"));
+        assertArrayEquals(new String[]{"a", "c", "d"}, list.toArray(new String[0]));
+        assertEquals(Arrays.asList("c", "d"), list.subList(1, 3));
+        ListIterator<String> iterator = list.listIterator(3);
+        assertEquals("d", iterator.previous());
+        assertEquals("c", iterator.previous());
+        assertEquals(1, iterator.nextIndex());
+
+        assertEquals(3, positions.size());
+        assertEquals(Integer.valueOf(1), positions.get("c"));
+        assertNull(positions.get("b"));
+        HashMap<String, Integer> expected = new HashMap<>();
+        expected.put("a", 0);
+        expected.put("c", 1);
+        expected.put("d", 2);
+        assertEquals(expected, positions);
+
+        try {
+            list.add("e");
+            fail("the list view must be read-only");
+        } catch (UnsupportedOperationException expectedException) {
+            // changes go through IndexedList
+        }
+        try {
+            positions.put("e", 3);
+            fail("the position view must be read-only");
+        } catch (UnsupportedOperationException expectedException) {
+            // positions follow IndexedList
+        }
+        Iterator<String> stale = list.iterator();
+        items.add("e");
+        try {
+            stale.next();
+            fail("an iterator must fail after the list changes");
+        } catch (java.util.ConcurrentModificationException expectedException) {
+            // like ArrayList
+        }
+    }
+
+    @Test
+    public void randomChanges_matchArrayList() {
+        Random random = new Random(7);
+        ArrayList<String> expected = new ArrayList<>();
+        int nextId = 0;
+        for (int step = 0; step < 2000; step++) {
+            int action = expected.isEmpty() ? 0 : random.nextInt(4);
+            if (action == 0) {
+                int position = random.nextInt(expected.size() + 1);
+                String id = "d" + nextId++;
+                items.insert(position, id);
+                expected.add(position, id);
+            } else if (action == 1) {
+                String id = expected.remove(random.nextInt(expected.size()));
+                items.remove(id);
+            } else if (action == 2) {
+                String id = expected.get(random.nextInt(expected.size()));
+                int toPosition = random.nextInt(expected.size());
+                expected.remove(id);
+                expected.add(toPosition, id);
+                items.move(id, toPosition);
+            } else {
+                HashSet<String> ids = new HashSet<>();
+                for (int i = random.nextInt(5); i > 0; i--) {
+                    ids.add(expected.get(random.nextInt(expected.size())));
+                }
+                items.removeAll(ids);
+                expected.removeAll(ids);
+            }
+            assertEquals(expected, items.getList());
+            List<String> copy = new ArrayList<>(items.getList());
+            assertEquals(expected, copy);
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(i, items.indexOf(expected.get(i)));
+        }
+    }
+}
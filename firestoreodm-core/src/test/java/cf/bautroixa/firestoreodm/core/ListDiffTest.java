@@ -0,0 +1,78 @@
+package cf.bautroixa.firestoreodm.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ListDiffTest {
+    @Test
+    public void longestIncreasingSubsequence_keepsLongestRun() {
+        boolean[] keep = ListDiff.longestIncreasingSubsequence(new int[]{0, 5, 1, 2, 6, 3});
+        assertArrayEquals(new boolean[]{true, false, true, true, false, true}, keep);
+        assertEquals(0, ListDiff.longestIncreasingSubsequence(new int[0]).length);
+    }
+
+    @Test
+    public void reorder_sortsWithFewestMoves() {
+        Random random = new Random(3);
+        for (int round = 0; round < 200; round++) {
+            int size = 1 + random.nextInt(50);
+            ArrayList<String> ids = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                ids.add("d" + i);
+            }
+            final HashMap<String, Integer> orders = new HashMap<>();
+            for (int i = 0; i < size; i++) {
+                orders.put(ids.get(i), i);
+            }
+            Collections.shuffle(ids, random);
+            final IndexedList<String> items = newList(ids);
+            int[] values = new int[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = orders.get(ids.get(i));
+            }
+            int kept = 0;
+            for (boolean keep : ListDiff.longestIncreasingSubsequence(values)) {
+                if (keep) kept++;
+            }
+            final int[] moves = {0};
+            ListDiff.reorder(items, new ListDiff.Ordering<String>() {
+                @Override
+                public int orderOf(String item) {
+                    return orders.get(item);
+                }
+            }, new ListDiff.Mover<String>() {
+                @Override
+                public void move(String id, int toPosition) {
+                    items.move(id, toPosition);
+                    moves[0]++;
+                }
+            });
+            List<String> list = items.getList();
+            for (int i = 0; i < size; i++) {
+                assertEquals(i, (int) orders.get(list.get(i)));
+                assertEquals(i, items.indexOf(list.get(i)));
+            }
+            assertEquals(size - kept, moves[0]);
+        }
+    }
+
+    private static IndexedList<String> newList(List<String> ids) {
+        IndexedList<String> items = new IndexedList<>(new IndexedList.IdOf<String>() {
+            @Override
+            public String idOf(String item) {
+                return item;
+            }
+        });
+        for (String id : ids) {
+            items.add(id);
+        }
+        return items;
+    }
+}
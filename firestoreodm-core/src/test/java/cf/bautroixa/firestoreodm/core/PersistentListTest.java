@@ -0,0 +1,82 @@
+package cf.bautroixa.firestoreodm.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PersistentListTest {
+    @Test
+    public void changes_leaveOldListUntouched() {
+        PersistentList<String> empty = PersistentList.empty();
+        PersistentList<String> abc = PersistentList.from(Arrays.asList("a", "b", "c"));
+        PersistentList<String> abxc = abc.plus(2, "x");
+        PersistentList<String> ayc = abc.with(1, "y");
+        PersistentList<String> ac = abc.minus(1);
+        PersistentList<String> abcd = abc.plus("d");
+
+        assertTrue(empty.isEmpty());
+        assertEquals(Arrays.asList("a", "b", "c"), abc);
+        assertEquals(Arrays.asList("a", "b", "x", "c"), abxc);
+        assertEquals(Arrays.asList("a", "y", "c"), ayc);
+        assertEquals(Arrays.asList("a", "c"), ac);
+        assertEquals(Arrays.asList("a", "b", "c", "d"), abcd);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void add_isUnsupported() {
+        PersistentList.<String>empty().add("a");
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void get_rejectsIndexOutOfSize() {
+        PersistentList.from(Arrays.asList("a")).get(1);
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void iterator_throwsAfterLastItem() {
+        Iterator<String> iterator = PersistentList.from(Arrays.asList("a")).iterator();
+        iterator.next();
+        iterator.next();
+    }
+
+    @Test
+    public void randomChanges_matchArrayList() {
+        Random random = new Random(11);
+        PersistentList<Integer> list = PersistentList.empty();
+        ArrayList<Integer> expected = new ArrayList<>();
+        ArrayList<PersistentList<Integer>> versions = new ArrayList<>();
+        ArrayList<List<Integer>> expectedVersions = new ArrayList<>();
+        for (int step = 0; step < 3000; step++) {
+            int action = expected.isEmpty() ? 0 : random.nextInt(3);
+            if (action == 0) {
+                int index = random.nextInt(expected.size() + 1);
+                list = list.plus(index, step);
+                expected.add(index, step);
+            } else if (action == 1) {
+                int index = random.nextInt(expected.size());
+                list = list.with(index, step);
+                expected.set(index, step);
+            } else {
+                int index = random.nextInt(expected.size());
+                list = list.minus(index);
+                expected.remove(index);
+            }
+            if (step % 100 == 0) {
+                versions.add(list);
+                expectedVersions.add(new ArrayList<>(expected));
+            }
+        }
+        assertEquals(expected, list);
+        for (int i = 0; i < versions.size(); i++) {
+            assertEquals(expectedVersions.get(i), versions.get(i));
+        }
+        assertEquals(expected, PersistentList.from(expected));
+    }
+}
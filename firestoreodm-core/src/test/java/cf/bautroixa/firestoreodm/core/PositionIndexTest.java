@@ -0,0 +1,71 @@
+package cf.bautroixa.firestoreodm.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PositionIndexTest {
+    @Test
+    public void insertAndRemove_keepPositions() {
+        PositionIndex<Integer> index = new PositionIndex<>();
+        index.add("b", 2);
+        index.insert(0, "a", 1);
+        index.add("c", 3);
+        assertEquals(3, index.size());
+        assertEquals(0, index.indexOf("a"));
+        assertEquals(1, index.indexOf("b"));
+        assertEquals(2, index.indexOf("c"));
+        assertEquals(Integer.valueOf(2), index.get("b"));
+
+        assertEquals(1, index.remove("b"));
+        assertEquals(-1, index.remove("b"));
+        assertFalse(index.contains("b"));
+        assertNull(index.get("b"));
+        assertEquals(-1, index.indexOf("b"));
+        assertEquals(1, index.indexOf("c"));
+
+        index.clear();
+        assertEquals(0, index.size());
+        assertFalse(index.contains("a"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void insert_rejectsIndexedId() {
+        PositionIndex<Integer> index = new PositionIndex<>();
+        index.add("a", 1);
+        index.add("a", 2);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void insert_rejectsPositionOutOfSize() {
+        new PositionIndex<Integer>().insert(1, "a", 1);
+    }
+
+    @Test
+    public void randomChanges_matchArrayList() {
+        Random random = new Random(42);
+        PositionIndex<Integer> index = new PositionIndex<>();
+        ArrayList<String> expected = new ArrayList<>();
+        int nextId = 0;
+        for (int step = 0; step < 5000; step++) {
+            if (expected.isEmpty() || random.nextInt(3) > 0) {
+                int position = random.nextInt(expected.size() + 1);
+                String id = "d" + nextId;
+                index.insert(position, id, nextId++);
+                expected.add(position, id);
+            } else {
+                int position = random.nextInt(expected.size());
+                assertEquals(position, index.remove(expected.remove(position)));
+            }
+            if (step % 100 == 0) {
+                assertEquals(expected.size(), index.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(i, index.indexOf(expected.get(i)));
+                }
+            }
+        }
+    }
+}
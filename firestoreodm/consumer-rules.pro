@@ -0,0 +1,4 @@
+# generated DocumentMapper is found by class name
+-keep class * implements cf.bautroixa.firestoreodm.DocumentMapper {
+    public <init>();
+}
@@ -0,0 +1,143 @@
+package cf.bautroixa.firestoreodm;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.AdapterListUpdateCallback;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
+import androidx.recyclerview.widget.RecyclerView;
+
+import cf.bautroixa.firestoreodm.core.PersistentList;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * AsyncDocumentsDiffer keep the last submitted snapshot of a list, diff every new snapshot against it
+ * on a background Executor and dispatch the minimal range notifications on main thread, like AsyncListDiffer
+ * <p>
+ * an adapter bound to it must read items from {@link AsyncDocumentsDiffer#getItem(int)} and
+ * {@link AsyncDocumentsDiffer#getItemCount()}, not from the manager, so that it always matches the notifications.
+ * Documents are the same item when their documentIds are equal, a changed item is notified with its changed
+ * field names as payload. It must be used on main thread.
+ *
+ * @param <T> Document type
+ */
+public class AsyncDocumentsDiffer<T extends Document> {
+    private static Executor diffExecutor;
+    private final ListUpdateCallback updateCallback;
+    private final Executor executor;
+    private PersistentList<T> currentList = PersistentList.empty();
+    // submissions are numbered so that the result of an outdated diff is dropped
+    private int maxGeneration = 0;
+
+    /**
+     * @param adapter notified of every change
+     */
+    public AsyncDocumentsDiffer(@NonNull RecyclerView.Adapter adapter) {
+        this(new AdapterListUpdateCallback(adapter), null);
+    }
+
+    /**
+     * @param updateCallback notified of every change
+     * @param executor       Executor to diff on, null to use a shared background pool
+     */
+    public AsyncDocumentsDiffer(@NonNull ListUpdateCallback updateCallback, @Nullable Executor executor) {
+        this.updateCallback = updateCallback;
+        this.executor = executor != null ? executor : getDiffExecutor();
+    }
+
+    private static synchronized Executor getDiffExecutor() {
+        if (diffExecutor == null) diffExecutor = Executors.newFixedThreadPool(2);
+        return diffExecutor;
+    }
+
+    @NonNull
+    public PersistentList<T> getCurrentList() {
+        return currentList;
+    }
+
+    public int getItemCount() {
+        return currentList.size();
+    }
+
+    public T getItem(int position) {
+        return currentList.get(position);
+    }
+
+    /**
+     * submitList diff newList against the current list, the current list is replaced
+     * when the diff is dispatched, a later submission cancels an earlier one still being diffed
+     *
+     * @param newList new snapshot, it must never change (see {@link DocumentsManager#getSnapshot()})
+     */
+    public void submitList(@NonNull final PersistentList<T> newList) {
+        final int generation = ++maxGeneration;
+        if (newList == currentList) return;
+        final PersistentList<T> oldList = currentList;
+        // nothing to diff against, notify the whole range at once
+        if (oldList.isEmpty() || newList.isEmpty()) {
+            currentList = newList;
+            if (!oldList.isEmpty()) updateCallback.onRemoved(0, oldList.size());
+            if (!newList.isEmpty()) updateCallback.onInserted(0, newList.size());
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final DiffUtil.DiffResult result = DiffUtil.calculateDiff(new DocumentsDiffCallback<>(oldList, newList));
+                MainThread.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != maxGeneration) return;
+                        currentList = newList;
+                        result.dispatchUpdatesTo(updateCallback);
+                    }
+                });
+            }
+        });
+    }
+
+    private static class DocumentsDiffCallback<T extends Document> extends DiffUtil.Callback {
+        private final PersistentList<T> oldList, newList;
+
+        DocumentsDiffCallback(PersistentList<T> oldList, PersistentList<T> newList) {
+            this.oldList = oldList;
+            this.newList = newList;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldList.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newList.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return Objects.equals(oldList.get(oldItemPosition).getId(), newList.get(newItemPosition).getId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            T oldItem = oldList.get(oldItemPosition);
+            T newItem = newList.get(newItemPosition);
+            // snapshots share the frozen copy of every unchanged Document
+            if (oldItem == newItem) return true;
+            Map<String, Object> oldData = oldItem.getSnapshotData();
+            Map<String, Object> newData = newItem.getSnapshotData();
+            return oldData != null && newData != null && oldData.equals(newData);
+        }
+
+        @Nullable
+        @Override
+        public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+            return Documents.getChangedFields(oldList.get(oldItemPosition).getSnapshotData(), newList.get(newItemPosition).getSnapshotData());
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package cf.bautroixa.firestoreodm;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * BulkWriter commit a large number of writes in WriteBatches of at most {@link BulkWriter#MAX_BATCH_SIZE} writes,
+ * with a bounded number of batches in flight and a ramp-up rate policy
+ * <p>
+ * the rate starts at initialOpsPerSecond and grows by 50% every rampUpIntervalMillis (the 500/50/5 rule),
+ * so that a new collection has time to split its load. Batches failing with a contention or availability
+ * error are retried with backoff, other failures are reported in {@link Result#getFailures()}.
+ * Writes are pulled from the Iterator lazily, it must be used on main thread.
+ */
+public class BulkWriter {
+    public static final int MAX_BATCH_SIZE = WriteCoalescer.MAX_BATCH_SIZE;
+    private static final String TAG = "BulkWriter";
+    private static final int MAX_RETRIES = 3;
+    private final int batchSize;
+    private final int maxInFlightBatches;
+    private final int initialOpsPerSecond;
+    private final long rampUpIntervalMillis;
+
+    /**
+     * construct BulkWriter with 500 writes per batch, 5 batches in flight and the 500/50/5 ramp-up
+     */
+    public BulkWriter() {
+        this(MAX_BATCH_SIZE, 5, 500, 5 * 60 * 1000);
+    }
+
+    /**
+     * @param batchSize            writes per WriteBatch, at most {@link BulkWriter#MAX_BATCH_SIZE}
+     * @param maxInFlightBatches   maximum number of batches committing at once
+     * @param initialOpsPerSecond  write rate at start
+     * @param rampUpIntervalMillis rate grows by 50% after each interval
+     */
+    public BulkWriter(int batchSize, int maxInFlightBatches, int initialOpsPerSecond, long rampUpIntervalMillis) {
+        if (batchSize <= 0 || batchSize > MAX_BATCH_SIZE)
+            throw new RuntimeException("batchSize must be between 1 and " + MAX_BATCH_SIZE);
+        if (maxInFlightBatches <= 0) throw new RuntimeException("maxInFlightBatches must be positive");
+        if (initialOpsPerSecond <= 0) throw new RuntimeException("initialOpsPerSecond must be positive");
+        this.batchSize = batchSize;
+        this.maxInFlightBatches = maxInFlightBatches;
+        this.initialOpsPerSecond = initialOpsPerSecond;
+        this.rampUpIntervalMillis = rampUpIntervalMillis;
+    }
+
+    /**
+     * write every operation
+     *
+     * @param firestore          FirebaseFirestore to create WriteBatches from
+     * @param operations         writes, pulled when a batch is built
+     * @param onProgressListener notified after each batch, may be null
+     * @return Task completes with Result once every batch is committed or failed, it never fails itself
+     */
+    @NonNull
+    public Task<Result> write(@NonNull FirebaseFirestore firestore, @NonNull Iterator<? extends Operation> operations,
+                              @Nullable OnProgressListener onProgressListener) {
+        Job job = new Job(firestore, operations, onProgressListener);
+        job.pump();
+        return job.source.getTask();
+    }
+
+    /**
+     * rate allowed after elapsedMillis
+     */
+    private double getOpsPerSecond(long elapsedMillis) {
+        if (rampUpIntervalMillis <= 0) return initialOpsPerSecond;
+        return initialOpsPerSecond * Math.pow(1.5, elapsedMillis / rampUpIntervalMillis);
+    }
+
+    private static boolean isRetryable(Exception e) {
+        if (!(e instanceof FirebaseFirestoreException)) return false;
+        FirebaseFirestoreException.Code code = ((FirebaseFirestoreException) e).getCode();
+        return code == FirebaseFirestoreException.Code.ABORTED
+                || code == FirebaseFirestoreException.Code.UNAVAILABLE
+                || code == FirebaseFirestoreException.Code.RESOURCE_EXHAUSTED
+                || code == FirebaseFirestoreException.Code.DEADLINE_EXCEEDED;
+    }
+
+    public interface Operation {
+        /**
+         * addTo add this write to batch
+         *
+         * @param batch WriteBatch
+         * @return documentId written, reported in failures
+         */
+        @NonNull
+        String addTo(@NonNull WriteBatch batch);
+    }
+
+    public interface OnProgressListener {
+        /**
+         * @param written number of writes committed so far
+         * @param failed  number of writes failed so far
+         */
+        void onProgress(int written, int failed);
+    }
+
+    public static class ChunkFailure {
+        private final List<String> ids;
+        private final Exception exception;
+
+        ChunkFailure(List<String> ids, Exception exception) {
+            this.ids = Collections.unmodifiableList(ids);
+            this.exception = exception;
+        }
+
+        /**
+         * @return documentIds of the failed batch
+         */
+        public List<String> getIds() {
+            return ids;
+        }
+
+        public Exception getException() {
+            return exception;
+        }
+    }
+
+    public static class Result {
+        private final int written;
+        private final List<ChunkFailure> failures;
+
+        Result(int written, List<ChunkFailure> failures) {
+            this.written = written;
+            this.failures = Collections.unmodifiableList(failures);
+        }
+
+        public int getWritten() {
+            return written;
+        }
+
+        public List<ChunkFailure> getFailures() {
+            return failures;
+        }
+
+        public boolean isSuccessful() {
+            return failures.isEmpty();
+        }
+    }
+
+    private class Job {
+        final FirebaseFirestore firestore;
+        final Iterator<? extends Operation> operations;
+        @Nullable
+        final OnProgressListener onProgressListener;
+        final TaskCompletionSource<Result> source = new TaskCompletionSource<>();
+        final ArrayList<ChunkFailure> failures = new ArrayList<>();
+        final long startTime = SystemClock.elapsedRealtime();
+        final Runnable pumpRunnable = new Runnable() {
+            @Override
+            public void run() {
+                isPumpScheduled = false;
+                pump();
+            }
+        };
+        long nextStartTime = startTime;
+        int inFlight = 0, written = 0, failed = 0;
+        boolean isExhausted = false, isPumpScheduled = false;
+
+        Job(FirebaseFirestore firestore, Iterator<? extends Operation> operations, @Nullable OnProgressListener onProgressListener) {
+            this.firestore = firestore;
+            this.operations = operations;
+            this.onProgressListener = onProgressListener;
+        }
+
+        /**
+         * start as many batches as the rate and the in-flight limit allow
+         */
+        void pump() {
+            while (!isExhausted && inFlight < maxInFlightBatches) {
+                long now = SystemClock.elapsedRealtime();
+                if (now < nextStartTime) {
+                    if (!isPumpScheduled) {
+                        isPumpScheduled = true;
+                        MainThread.getHandler().postDelayed(pumpRunnable, nextStartTime - now);
+                    }
+                    return;
+                }
+                ArrayList<Operation> chunk = new ArrayList<>(batchSize);
+                while (chunk.size() < batchSize && operations.hasNext()) {
+                    chunk.add(operations.next());
+                }
+                if (chunk.isEmpty()) {
+                    isExhausted = true;
+                    break;
+                }
+                // pace the next batch so that writes stay under the current rate
+                double opsPerSecond = getOpsPerSecond(now - startTime);
+                nextStartTime = Math.max(now, nextStartTime) + (long) (chunk.size() * 1000 / opsPerSecond);
+                commit(chunk, 0);
+            }
+            if (isExhausted && inFlight == 0) {
+                source.trySetResult(new Result(written, failures));
+            }
+        }
+
+        void commit(final List<Operation> chunk, final int retries) {
+            WriteBatch batch = firestore.batch();
+            final ArrayList<String> ids = new ArrayList<>(chunk.size());
+            for (Operation operation : chunk) {
+                ids.add(operation.addTo(batch));
+            }
+            inFlight++;
+            batch.commit().addOnCompleteListener(new OnCompleteListener<Void>() {
+                @Override
+                public void onComplete(@NonNull Task<Void> task) {
+                    inFlight--;
+                    if (task.isSuccessful()) {
+                        written += chunk.size();
+                    } else {
+                        Exception e = task.getException() != null ? task.getException() : new RuntimeException("commit failed");
+                        if (retries < MAX_RETRIES && isRetryable(e)) {
+                            long backoff = 1000L << retries;
+                            Log.e(TAG, String.format("[Retry in %d ms] Commit %d writes failed reason: %s", backoff, chunk.size(), e.getMessage()));
+                            inFlight++;
+                            MainThread.getHandler().postDelayed(new Runnable() {
+                                @Override
+                                public void run() {
+                                    inFlight--;
+                                    commit(chunk, retries + 1);
+                                }
+                            }, backoff);
+                            return;
+                        }
+                        Log.e(TAG, String.format("Commit %d writes failed reason: %s", chunk.size(), e.getMessage()));
+                        failed += chunk.size();
+                        failures.add(new ChunkFailure(ids, e));
+                    }
+                    if (onProgressListener != null) onProgressListener.onProgress(written, failed);
+                    pump();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package cf.bautroixa.firestoreodm;
+
+import android.os.Handler;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.EventListener;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ChunkedRefsListener listens to many Documents with a few {@link FieldPath#documentId()} whereIn
+ * queries instead of one snapshot listener per Document, then routes each result to its Document
+ *
+ * @param <T> Document type
+ */
+class ChunkedRefsListener<T extends Document> {
+    /**
+     * maximum number of values in a whereIn filter
+     */
+    static final int MAX_CHUNK_SIZE = 10;
+    private String TAG = "ChunkedRefsListener";
+    private HashMap<String, ArrayList<Chunk>> chunksByCollection = new HashMap<>();
+    private HashMap<String, Chunk> chunkByPath = new HashMap<>();
+    private Map<String, T> documents = new HashMap<>();
+    private final String metricsName;
+
+    ChunkedRefsListener(Class<T> itemClass, String metricsName) {
+        TAG = itemClass.getSimpleName() + TAG;
+        this.metricsName = metricsName;
+    }
+
+    /**
+     * update rebalance chunks so that every Document is listened by exactly one chunk,
+     * only chunks whose Documents changed are listened again
+     *
+     * @param documents Documents to listen, keyed by path
+     */
+    void update(@NonNull Map<String, T> documents) {
+        this.documents = documents;
+        // drop Documents no longer listened
+        Iterator<Map.Entry<String, Chunk>> iterator = chunkByPath.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Chunk> entry = iterator.next();
+            if (documents.containsKey(entry.getKey())) continue;
+            Chunk chunk = entry.getValue();
+            chunk.ids.remove(entry.getKey());
+            chunk.isDirty = true;
+            iterator.remove();
+        }
+        // add new Documents, filling chunks that have to be listened again first
+        for (T document : documents.values()) {
+            DocumentReference ref = document.getRef();
+            if (chunkByPath.containsKey(ref.getPath())) continue;
+            Chunk chunk = findChunk(ref.getParent());
+            chunk.ids.put(ref.getPath(), ref.getId());
+            chunk.isDirty = true;
+            chunkByPath.put(ref.getPath(), chunk);
+        }
+        for (ArrayList<Chunk> chunks : chunksByCollection.values()) {
+            Iterator<Chunk> chunkIterator = chunks.iterator();
+            while (chunkIterator.hasNext()) {
+                Chunk chunk = chunkIterator.next();
+                if (chunk.ids.isEmpty()) {
+                    chunk.cancel();
+                    chunkIterator.remove();
+                } else if (chunk.isDirty) {
+                    chunk.isDirty = false;
+                    chunk.listen(1000);
+                }
+            }
+        }
+    }
+
+    /**
+     * clear stop every chunk listener
+     */
+    void clear() {
+        for (ArrayList<Chunk> chunks : chunksByCollection.values()) {
+            for (Chunk chunk : chunks) {
+                chunk.cancel();
+            }
+        }
+        chunksByCollection.clear();
+        chunkByPath.clear();
+        documents = new HashMap<>();
+    }
+
+    private Chunk findChunk(CollectionReference collection) {
+        ArrayList<Chunk> chunks = chunksByCollection.get(collection.getPath());
+        if (chunks == null) {
+            chunks = new ArrayList<>();
+            chunksByCollection.put(collection.getPath(), chunks);
+        }
+        Chunk available = null;
+        for (Chunk chunk : chunks) {
+            if (chunk.ids.size() >= MAX_CHUNK_SIZE) continue;
+            if (chunk.isDirty) return chunk;
+            if (available == null) available = chunk;
+        }
+        if (available == null) {
+            available = new Chunk(collection);
+            chunks.add(available);
+        }
+        return available;
+    }
+
+    private void onChunkSnapshot(@NonNull Chunk chunk, @NonNull QuerySnapshot querySnapshot) {
+        Metrics.snapshotReceived(metricsName, querySnapshot.getDocumentChanges().size());
+        for (DocumentChange documentChange : querySnapshot.getDocumentChanges()) {
+            DocumentSnapshot documentSnapshot = documentChange.getDocument();
+            String path = documentSnapshot.getReference().getPath();
+            if (documentChange.getType() != DocumentChange.Type.REMOVED) chunk.foundPaths.add(path);
+            T document = documents.get(path);
+            if (document == null) continue;
+            document.applySnapshot(documentChange.getType() != DocumentChange.Type.REMOVED ? documentSnapshot : null);
+        }
+        // whereIn never returns a Document that does not exist, once the server answered the missing ones are removed
+        if (chunk.isComplete || querySnapshot.getMetadata().isFromCache()) return;
+        chunk.isComplete = true;
+        for (String path : new ArrayList<>(chunk.ids.keySet())) {
+            if (chunk.foundPaths.contains(path)) continue;
+            T document = documents.get(path);
+            if (document != null && !document.isRemoved()) document.applySnapshot(null);
+        }
+        chunk.foundPaths.clear();
+    }
+
+    private class Chunk {
+        final CollectionReference collection;
+        // path -> documentId
+        final LinkedHashMap<String, String> ids = new LinkedHashMap<>();
+        // paths returned since listen, until the first snapshot from the server
+        final HashSet<String> foundPaths = new HashSet<>();
+        ListenerRegistration listenerRegistration;
+        boolean isDirty = false, isCancelled = false, isComplete = false;
+
+        Chunk(CollectionReference collection) {
+            this.collection = collection;
+        }
+
+        void listen(final long retryInterval) {
+            removeListenerRegistration();
+            isCancelled = false;
+            isComplete = false;
+            foundPaths.clear();
+            listenerRegistration = collection.whereIn(FieldPath.documentId(), new ArrayList<>(ids.values()))
+                    .addSnapshotListener(new EventListener<QuerySnapshot>() {
+                        @Override
+                        public void onEvent(@Nullable QuerySnapshot querySnapshot, @Nullable FirebaseFirestoreException e) {
+                            if (e != null) {
+                                Log.e(TAG, String.format("[Retry in %d ms] Listen %s failed reason: %s", retryInterval, collection.getId(), e.getMessage()));
+                                if (retryInterval > 0 && retryInterval < 60 * 1000) {
+                                    Metrics.retry(metricsName);
+                                    new Handler().postDelayed(new Runnable() {
+                                        @Override
+                                        public void run() {
+                                            if (!isCancelled) listen(retryInterval * 2);
+                                        }
+                                    }, retryInterval);
+                                } else {
+                                    Log.e(TAG, String.format("[TIMEOUT] Listen %s failed reason: %s", collection.getId(), e.getMessage()));
+                                }
+                                return;
+                            }
+                            if (querySnapshot != null) onChunkSnapshot(Chunk.this, querySnapshot);
+                        }
+                    });
+            Metrics.listenerRegistered(metricsName);
+        }
+
+        private void removeListenerRegistration() {
+            if (listenerRegistration == null) return;
+            listenerRegistration.remove();
+            listenerRegistration = null;
+            Metrics.listenerUnregistered(metricsName);
+        }
+
+        void cancel() {
+            isCancelled = true;
+            removeListenerRegistration();
+        }
+    }
+}
@@ -7,21 +7,39 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.google.firebase.firestore.CollectionReference;
-import com.google.firebase.firestore.DocumentChange;
-import com.google.firebase.firestore.DocumentSnapshot;
-import com.google.firebase.firestore.EventListener;
 import com.google.firebase.firestore.FirebaseFirestoreException;
 import com.google.firebase.firestore.ListenerRegistration;
 import com.google.firebase.firestore.Query;
-import com.google.firebase.firestore.QuerySnapshot;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 public class CollectionManager<T extends Document> extends DocumentsManager<T> {
     protected String TAG = "CollectionManager";
     private Query query;
     private ListenerRegistration listenerRegistration;
+    private Query listeningQuery;
+    private int initialRetryInterval = 0;
+    private int listenerVersion = 0;
     private boolean isListComplete = false;
+    // Documents are saved to diskSnapshot at most once per diskSnapshotIntervalMillis
+    @Nullable
+    private DiskSnapshot diskSnapshot;
+    private long diskSnapshotIntervalMillis = 2000;
+    private boolean isDiskSnapshotScheduled = false;
+    private final Runnable writeDiskSnapshotRunnable = new Runnable() {
+        @Override
+        public void run() {
+            isDiskSnapshotScheduled = false;
+            if (diskSnapshot != null && isListComplete) diskSnapshot.write(ref, list);
+        }
+    };
+    // documentIds read from diskSnapshot until the first snapshot arrives, those missing from it are removed
+    @Nullable
+    private HashSet<String> hydratedIds;
 
     public CollectionManager(Class<T> itemClass) {
         super(itemClass);
@@ -75,59 +93,213 @@ public class CollectionManager<T extends Document> extends DocumentsManager<T> {
     }
 
     private void setCollectionListener(Query query, boolean autoRetry) {
-        setCollectionListener(query, autoRetry ? 1000 : 0);
+        initialRetryInterval = autoRetry ? 1000 : 0;
+        setCollectionListener(query, initialRetryInterval);
     }
 
     private void setCollectionListener(final Query query, final int retryInterval) {
-        if (listenerRegistration != null) listenerRegistration.remove();
+        removeListenerRegistration();
         isListening = true;
-        listenerRegistration = query.addSnapshotListener(new EventListener<QuerySnapshot>() {
+        listeningQuery = query;
+        final int version = ++listenerVersion;
+        // the first snapshot of a listener holds every Document of query
+        final boolean[] isFirstSnapshot = {true};
+        DocumentStore.Listener listener = new DocumentStore.Listener() {
             @Override
-            public void onEvent(@Nullable QuerySnapshot queryDocumentSnapshots, @Nullable FirebaseFirestoreException e) {
-                if (e != null) {
-                    Log.e(TAG, String.format("[Retry in %d ms] Listen %s failed reason: %s", retryInterval, ref.getId(), e.getMessage()));
-                    isListening = false;
-                    if (retryInterval > 0 && retryInterval < 10000) {
-                        new Handler().postDelayed(new Runnable() {
-                            @Override
-                            public void run() {
-                                setCollectionListener(query, retryInterval * 2);
-                            }
-                        }, retryInterval);
+            public void onSnapshot(@NonNull List<StoredDocument> changes) {
+                Metrics.snapshotReceived(metricsName, changes.size());
+                // decode on the listener thread, which is the executor thread if there is one
+                long startTime = Metrics.start();
+                final ArrayList<T> puts = new ArrayList<>();
+                final ArrayList<String> removedIds = new ArrayList<>();
+                for (StoredDocument storedDocument : changes) {
+                    if (storedDocument.exists()) {
+                        T data = storedDocument.toDocument(itemClass);
+                        data.setListening(true);
+                        puts.add(data);
                     } else {
-                        Log.e(TAG, String.format("[TIMEOUT] Listen %s failed reason: %s", ref.getId(), e.getMessage()));
+                        removedIds.add(storedDocument.getReference().getId());
                     }
-                    return;
                 }
-                if (queryDocumentSnapshots != null) {
-                    for (DocumentChange documentChange : queryDocumentSnapshots.getDocumentChanges()) {
-                        DocumentSnapshot documentSnapshot = documentChange.getDocument();
-                        if (documentChange.getType() != DocumentChange.Type.REMOVED) {
-                            T data = T.newInstance(itemClass, documentSnapshot);
-                            data.setListening(true);
-                            put(data);
+                Metrics.decoded(metricsName, puts.size(), startTime);
+                runOnMainThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (version != listenerVersion) return;
+                        boolean isFirst = isFirstSnapshot[0];
+                        isFirstSnapshot[0] = false;
+                        FrameScheduler scheduler = FrameScheduler.getDefault();
+                        if (isFirst) {
+                            // changes of a previous listener still waiting for a frame are covered by this snapshot
+                            if (scheduler != null) scheduler.discard(CollectionManager.this);
+                            // Documents read from disk or received by a previous listener that are missing
+                            // from the first snapshot were removed meanwhile
+                            HashSet<String> staleIds = hydratedIds != null ? hydratedIds : new HashSet<String>();
+                            if (hydratedIds == null) {
+                                for (T data : list) {
+                                    staleIds.add(data.getId());
+                                }
+                            }
+                            for (T data : puts) {
+                                staleIds.remove(data.getId());
+                            }
+                            staleIds.removeAll(removedIds);
+                            removedIds.addAll(staleIds);
+                            hydratedIds = null;
+                        }
+                        // apply the whole snapshot as one batch so listeners are notified once,
+                        // later snapshots are merged into one batch per frame when a FrameScheduler is set
+                        if (scheduler != null && isListComplete && !isFirst) {
+                            scheduler.scheduleChanges(CollectionManager.this, puts, removedIds);
                         } else {
-                            remove(documentSnapshot.getId());
+                            applyChanges(puts, removedIds);
+                        }
+                        if (!isListComplete) {
+                            isListComplete = true;
+                            onListChanged();
                         }
+                        scheduleDiskSnapshot();
                     }
-                }
-                if (!isListComplete) {
-                    isListComplete = true;
-                    onListChanged();
-                }
+                });
             }
-        });
+
+            @Override
+            public void onError(@NonNull final FirebaseFirestoreException e) {
+                runOnMainThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        // a listener that received snapshots failed on its own, retry it from the initial interval
+                        if (version == listenerVersion)
+                            onListenFailed(query, isFirstSnapshot[0] ? retryInterval : initialRetryInterval, e);
+                    }
+                });
+            }
+        };
+        listenerRegistration = DocumentStores.get().listenQuery(ref, query, executor, listener);
+        Metrics.listenerRegistered(metricsName);
+    }
+
+    private void removeListenerRegistration() {
+        if (listenerRegistration == null) return;
+        listenerRegistration.remove();
+        listenerRegistration = null;
+        Metrics.listenerUnregistered(metricsName);
+    }
+
+    private void onListenFailed(final Query query, final int retryInterval, FirebaseFirestoreException e) {
+        Log.e(TAG, String.format("[Retry in %d ms] Listen %s failed reason: %s", retryInterval, ref.getId(), e.getMessage()));
+        isListening = false;
+        if (retryInterval > 0 && retryInterval < 10000) {
+            Metrics.retry(metricsName);
+            new Handler().postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    setCollectionListener(query, retryInterval * 2);
+                }
+            }, retryInterval);
+        } else {
+            Log.e(TAG, String.format("[TIMEOUT] Listen %s failed reason: %s", ref.getId(), e.getMessage()));
+        }
+    }
+
+    /**
+     * setDiskSnapshot save the Documents of this manager to diskSnapshot after snapshots and, if no snapshot
+     * arrived yet, show the saved Documents at once: they are put synchronously, {@link CollectionManager#isListComplete()}
+     * becomes true and the first snapshot only applies what changed since they were saved.
+     * Call it right after construction, itemClass must be annotated with {@link FirestoreModel}
+     *
+     * @param diskSnapshot DiskSnapshot of this collection, null to stop saving
+     */
+    public void setDiskSnapshot(@Nullable DiskSnapshot diskSnapshot) {
+        MainThread.getHandler().removeCallbacks(writeDiskSnapshotRunnable);
+        isDiskSnapshotScheduled = false;
+        this.diskSnapshot = diskSnapshot;
+        if (diskSnapshot == null || isListComplete || !list.isEmpty()) return;
+        if (DocumentMappers.get(itemClass) == null) {
+            throw new RuntimeException(itemClass.getName() + " has no DocumentMapper, annotate it with @FirestoreModel to read it from disk");
+        }
+        long startTime = Metrics.start();
+        List<T> datas = diskSnapshot.read(itemClass, ref);
+        Metrics.decoded(metricsName, datas.size(), startTime);
+        if (datas.isEmpty()) return;
+        hydratedIds = new HashSet<>();
+        for (T data : datas) {
+            hydratedIds.add(data.getId());
+        }
+        // init complete listeners are called with the saved Documents
+        applyChanges(datas, Collections.<String>emptyList());
+    }
+
+    @Nullable
+    public DiskSnapshot getDiskSnapshot() {
+        return diskSnapshot;
+    }
+
+    /**
+     * setDiskSnapshotInterval bound how often Documents are saved while snapshots keep arriving
+     *
+     * @param diskSnapshotIntervalMillis minimum delay between two saves, default 2000 ms
+     */
+    public void setDiskSnapshotInterval(long diskSnapshotIntervalMillis) {
+        this.diskSnapshotIntervalMillis = diskSnapshotIntervalMillis;
+    }
+
+    /**
+     * @return true while list holds Documents read from disk and no snapshot arrived yet
+     */
+    public boolean isFromDiskSnapshot() {
+        return hydratedIds != null;
+    }
+
+    private void scheduleDiskSnapshot() {
+        if (diskSnapshot == null || isDiskSnapshotScheduled) return;
+        isDiskSnapshotScheduled = true;
+        MainThread.getHandler().postDelayed(writeDiskSnapshotRunnable, diskSnapshotIntervalMillis);
+    }
+
+    /**
+     * setExecutor decode snapshots on executor, the collection is listened again if it is listening
+     *
+     * @param executor Executor for decoding, null to decode on main thread
+     */
+    @Override
+    public void setExecutor(@Nullable Executor executor) {
+        super.setExecutor(executor);
+        if (isListening && listeningQuery != null) setCollectionListener(listeningQuery, initialRetryInterval);
     }
 
     @Override
     public void onClear() {
         super.onClear();
-        if (listenerRegistration != null) listenerRegistration.remove();
+        removeListenerRegistration();
+        // drop snapshots still waiting to be applied on main thread
+        listenerVersion++;
         isListening = false;
+        hydratedIds = null;
+        MainThread.getHandler().removeCallbacks(writeDiskSnapshotRunnable);
+        isDiskSnapshotScheduled = false;
+    }
+
+    /**
+     * setCache is not supported, list holds exactly the Documents of the listened query: an evicted Document would be removed
+     * from list and from its adapter while it still matches the query
+     *
+     * @param cache must be null
+     */
+    @Override
+    public void setCache(@Nullable DocumentsCache<T> cache) {
+        if (cache != null) throw new RuntimeException("CollectionManager keeps every Document of its query, it can not be bounded by a cache");
+        super.setCache(null);
+    }
+
+    @Override
+    protected boolean isMembershipById() {
+        // a filtered query decides which Documents belong to list
+        return query == null || query.equals(ref);
     }
 
     @Override
     public boolean isListComplete() {
-        return isListComplete;
+        return isListComplete || hydratedIds != null;
     }
 }
@@ -0,0 +1,329 @@
+package cf.bautroixa.firestoreodm;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * CounterMetricsSink keeps lock-free counters and latency histograms per source
+ * <p>
+ * read them with {@link CounterMetricsSink#snapshot()} or receive a snapshot periodically
+ * with {@link CounterMetricsSink#startReporting}
+ */
+public class CounterMetricsSink implements MetricsSink {
+    private final ConcurrentHashMap<String, Counters> counters = new ConcurrentHashMap<>();
+    @Nullable
+    private Runnable reporter;
+
+    @Override
+    public void onSnapshotReceived(@NonNull String source, int documentChanges) {
+        Counters counters = get(source);
+        counters.snapshots.incrementAndGet();
+        counters.documentChanges.addAndGet(documentChanges);
+    }
+
+    @Override
+    public void onDecoded(@NonNull String source, int documents, long durationNanos) {
+        Counters counters = get(source);
+        counters.documentsDecoded.addAndGet(documents);
+        counters.decodeLatency.record(durationNanos);
+    }
+
+    @Override
+    public void onPut(@NonNull String source, long durationNanos) {
+        get(source).putLatency.record(durationNanos);
+    }
+
+    @Override
+    public void onRemove(@NonNull String source, long durationNanos) {
+        get(source).removeLatency.record(durationNanos);
+    }
+
+    @Override
+    public void onBatchApplied(@NonNull String source, int puts, int removes, long durationNanos) {
+        Counters counters = get(source);
+        counters.batchPuts.addAndGet(puts);
+        counters.batchRemoves.addAndGet(removes);
+        counters.batchLatency.record(durationNanos);
+    }
+
+    @Override
+    public void onDispatch(@NonNull String source, int listeners, long durationNanos) {
+        Counters counters = get(source);
+        counters.fanOut.addAndGet(listeners);
+        counters.dispatchLatency.record(durationNanos);
+    }
+
+    @Override
+    public void onRetry(@NonNull String source) {
+        get(source).retries.incrementAndGet();
+    }
+
+    @Override
+    public void onListenerRegistered(@NonNull String source) {
+        get(source).liveRegistrations.incrementAndGet();
+    }
+
+    @Override
+    public void onListenerUnregistered(@NonNull String source) {
+        get(source).liveRegistrations.decrementAndGet();
+    }
+
+    private Counters get(String source) {
+        Counters sourceCounters = counters.get(source);
+        if (sourceCounters == null) {
+            Counters newCounters = new Counters();
+            sourceCounters = counters.putIfAbsent(source, newCounters);
+            if (sourceCounters == null) sourceCounters = newCounters;
+        }
+        return sourceCounters;
+    }
+
+    /**
+     * snapshot read current value of every counter, counters keep counting from where they are
+     *
+     * @return snapshot of each source
+     */
+    @NonNull
+    public Map<String, Snapshot> snapshot() {
+        HashMap<String, Snapshot> snapshots = new HashMap<>();
+        for (Map.Entry<String, Counters> entry : counters.entrySet()) {
+            snapshots.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return Collections.unmodifiableMap(snapshots);
+    }
+
+    /**
+     * startReporting post a snapshot on main thread every intervalMillis until {@link CounterMetricsSink#stopReporting()}
+     *
+     * @param intervalMillis   interval between two reports
+     * @param onReportListener receives the snapshots
+     */
+    public synchronized void startReporting(final long intervalMillis, @NonNull final OnReportListener onReportListener) {
+        stopReporting();
+        reporter = new Runnable() {
+            @Override
+            public void run() {
+                onReportListener.onReport(snapshot());
+                synchronized (CounterMetricsSink.this) {
+                    if (reporter == this) MainThread.getHandler().postDelayed(this, intervalMillis);
+                }
+            }
+        };
+        MainThread.getHandler().postDelayed(reporter, intervalMillis);
+    }
+
+    public synchronized void stopReporting() {
+        if (reporter != null) MainThread.getHandler().removeCallbacks(reporter);
+        reporter = null;
+    }
+
+    public interface OnReportListener {
+        void onReport(@NonNull Map<String, Snapshot> snapshots);
+    }
+
+    private static class Counters {
+        final AtomicLong snapshots = new AtomicLong();
+        final AtomicLong documentChanges = new AtomicLong();
+        final AtomicLong documentsDecoded = new AtomicLong();
+        final AtomicLong batchPuts = new AtomicLong();
+        final AtomicLong batchRemoves = new AtomicLong();
+        final AtomicLong fanOut = new AtomicLong();
+        final AtomicLong retries = new AtomicLong();
+        final AtomicLong liveRegistrations = new AtomicLong();
+        final Histogram decodeLatency = new Histogram();
+        final Histogram putLatency = new Histogram();
+        final Histogram removeLatency = new Histogram();
+        final Histogram batchLatency = new Histogram();
+        final Histogram dispatchLatency = new Histogram();
+
+        Snapshot snapshot() {
+            return new Snapshot(snapshots.get(), documentChanges.get(), documentsDecoded.get(),
+                    batchPuts.get(), batchRemoves.get(), fanOut.get(), retries.get(), liveRegistrations.get(),
+                    decodeLatency.snapshot(), putLatency.snapshot(), removeLatency.snapshot(),
+                    batchLatency.snapshot(), dispatchLatency.snapshot());
+        }
+    }
+
+    /**
+     * Histogram count values in power of two buckets, bucket i holds values in [2^(i-1), 2^i)
+     */
+    private static class Histogram {
+        static final int BUCKETS = 64;
+        final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong sum = new AtomicLong();
+        final AtomicLong max = new AtomicLong();
+
+        void record(long value) {
+            if (value < 0) value = 0;
+            buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(value));
+            count.incrementAndGet();
+            sum.addAndGet(value);
+            long currentMax = max.get();
+            while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+                currentMax = max.get();
+            }
+        }
+
+        HistogramSnapshot snapshot() {
+            long[] values = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                values[i] = buckets.get(i);
+            }
+            return new HistogramSnapshot(count.get(), sum.get(), max.get(), values);
+        }
+    }
+
+    public static class HistogramSnapshot {
+        private final long count, sum, max;
+        private final long[] buckets;
+
+        HistogramSnapshot(long count, long sum, long max, long[] buckets) {
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+            this.buckets = buckets;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count > 0 ? (double) sum / count : 0;
+        }
+
+        /**
+         * getPercentile estimate a percentile, the result is the upper bound of the bucket it falls in
+         *
+         * @param percentile between 0 and 100
+         * @return estimated value, never greater than max
+         */
+        public long getPercentile(double percentile) {
+            long total = 0;
+            for (long bucket : buckets) {
+                total += bucket;
+            }
+            if (total == 0) return 0;
+            long rank = (long) Math.ceil(total * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank && seen > 0) {
+                    long upperBound = i == 0 ? 0 : i >= 63 ? Long.MAX_VALUE : (1L << i) - 1;
+                    return Math.min(upperBound, max);
+                }
+            }
+            return max;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format("count=%d mean=%.0f p50=%d p99=%d max=%d", count, getMean(), getPercentile(50), getPercentile(99), max);
+        }
+    }
+
+    public static class Snapshot {
+        private final long snapshots, documentChanges, documentsDecoded, batchPuts, batchRemoves, fanOut, retries, liveRegistrations;
+        private final HistogramSnapshot decodeLatency, putLatency, removeLatency, batchLatency, dispatchLatency;
+
+        Snapshot(long snapshots, long documentChanges, long documentsDecoded, long batchPuts, long batchRemoves,
+                 long fanOut, long retries, long liveRegistrations,
+                 HistogramSnapshot decodeLatency, HistogramSnapshot putLatency, HistogramSnapshot removeLatency,
+                 HistogramSnapshot batchLatency, HistogramSnapshot dispatchLatency) {
+            this.snapshots = snapshots;
+            this.documentChanges = documentChanges;
+            this.documentsDecoded = documentsDecoded;
+            this.batchPuts = batchPuts;
+            this.batchRemoves = batchRemoves;
+            this.fanOut = fanOut;
+            this.retries = retries;
+            this.liveRegistrations = liveRegistrations;
+            this.decodeLatency = decodeLatency;
+            this.putLatency = putLatency;
+            this.removeLatency = removeLatency;
+            this.batchLatency = batchLatency;
+            this.dispatchLatency = dispatchLatency;
+        }
+
+        public long getSnapshots() {
+            return snapshots;
+        }
+
+        public long getDocumentChanges() {
+            return documentChanges;
+        }
+
+        public long getDocumentsDecoded() {
+            return documentsDecoded;
+        }
+
+        public long getBatchPuts() {
+            return batchPuts;
+        }
+
+        public long getBatchRemoves() {
+            return batchRemoves;
+        }
+
+        /**
+         * @return total number of listener notifications
+         */
+        public long getFanOut() {
+            return fanOut;
+        }
+
+        public long getRetries() {
+            return retries;
+        }
+
+        public long getLiveRegistrations() {
+            return liveRegistrations;
+        }
+
+        public HistogramSnapshot getDecodeLatency() {
+            return decodeLatency;
+        }
+
+        public HistogramSnapshot getPutLatency() {
+            return putLatency;
+        }
+
+        public HistogramSnapshot getRemoveLatency() {
+            return removeLatency;
+        }
+
+        public HistogramSnapshot getBatchLatency() {
+            return batchLatency;
+        }
+
+        public HistogramSnapshot getDispatchLatency() {
+            return dispatchLatency;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "snapshots=" + snapshots + " changes=" + documentChanges + " decoded=" + documentsDecoded
+                    + " fanOut=" + fanOut + " retries=" + retries + " live=" + liveRegistrations
+                    + "\n  decode " + decodeLatency + "\n  put " + putLatency + "\n  remove " + removeLatency
+                    + "\n  batch " + batchLatency + "\n  dispatch " + dispatchLatency;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package cf.bautroixa.firestoreodm;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * DeltaPublisher Reactive Streams Publisher of the changes of a DocumentsManager or a Document
+ * <p>
+ * each subscriber first receives the current state, then every change as a {@link DocumentDelta}.
+ * A subscriber only receives as many deltas as it requested, changes arriving while it has no demand
+ * are conflated so that a slow subscriber neither blocks the manager nor misses state:
+ * {@link Conflation#LATEST} keeps only the latest state, {@link Conflation#MERGE} keeps one merged delta per documentId.
+ * Deltas are produced on main thread, they are delivered on the thread that produces them or requests them.
+ *
+ * @param <T> Document type
+ */
+public abstract class DeltaPublisher<T extends Document> implements Publisher<DocumentDelta<T>> {
+    private final Conflation conflation;
+    private final CopyOnWriteArrayList<DeltaSubscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    DeltaPublisher(@NonNull Conflation conflation) {
+        this.conflation = conflation;
+    }
+
+    /**
+     * of publish values of document as frozen copies of its own type
+     *
+     * @param document   Document to publish
+     * @param conflation how values are conflated while a subscriber has no demand
+     * @return DeltaPublisher, it listens to document while it has subscribers
+     */
+    @NonNull
+    public static <T extends Document> DeltaPublisher<T> of(@NonNull T document, @NonNull Conflation conflation) {
+        return new DocumentPublisher<>(document, conflation);
+    }
+
+    @NonNull
+    public Conflation getConflation() {
+        return conflation;
+    }
+
+    /**
+     * @return number of subscribers not cancelled yet
+     */
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    @Override
+    public void subscribe(final Subscriber<? super DocumentDelta<T>> subscriber) {
+        if (subscriber == null) throw new NullPointerException("subscriber must not be null");
+        final DeltaSubscription subscription = new DeltaSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        // the source is only read and listened on main thread
+        MainThread.run(new Runnable() {
+            @Override
+            public void run() {
+                if (subscription.isCancelled()) return;
+                if (subscriptions.isEmpty()) connect();
+                DocumentDelta<T> state = currentState();
+                if (state != null) subscription.offer(state);
+                subscriptions.add(subscription);
+                subscription.drain();
+            }
+        });
+    }
+
+    /**
+     * emit a delta to every subscriber, must be called on main thread
+     */
+    void emit(DocumentDelta<T> delta) {
+        for (DeltaSubscription subscription : subscriptions) {
+            subscription.offer(delta);
+            subscription.drain();
+        }
+    }
+
+    private void onCancelled(final DeltaSubscription subscription) {
+        MainThread.run(new Runnable() {
+            @Override
+            public void run() {
+                if (subscriptions.remove(subscription) && subscriptions.isEmpty()) disconnect();
+            }
+        });
+    }
+
+    /**
+     * @return delta describing the whole current state, null if there is nothing to describe yet
+     */
+    @Nullable
+    abstract DocumentDelta<T> currentState();
+
+    /**
+     * start listening to the source, when the first subscriber comes
+     */
+    abstract void connect();
+
+    /**
+     * stop listening to the source, when the last subscriber cancels
+     */
+    abstract void disconnect();
+
+    public enum Conflation {
+        /**
+         * a lagging subscriber receives only the latest state, a RESET for a DocumentsManager
+         */
+        LATEST,
+        /**
+         * a lagging subscriber receives one merged delta per changed documentId
+         */
+        MERGE
+    }
+
+    private class DeltaSubscription implements Subscription {
+        private final Subscriber<? super DocumentDelta<T>> subscriber;
+        // pending deltas by documentId, RESET is kept under null
+        private final LinkedHashMap<String, DocumentDelta<T>> pending = new LinkedHashMap<>();
+        private long demand = 0;
+        private boolean isCancelled = false, isDraining = false;
+        // error to signal by drain, so that it never overlaps onNext
+        @Nullable
+        private Throwable error;
+
+        DeltaSubscription(Subscriber<? super DocumentDelta<T>> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        synchronized boolean isCancelled() {
+            return isCancelled;
+        }
+
+        synchronized void offer(DocumentDelta<T> delta) {
+            if (isCancelled) return;
+            if (delta.getType() == DocumentDelta.Type.RESET) {
+                pending.clear();
+                pending.put(null, delta);
+            } else if (conflation == Conflation.LATEST && demand == 0 && !pending.isEmpty()) {
+                // the subscriber lags, only the latest state is worth delivering
+                DocumentDelta<T> latest = delta.getSnapshot() != null
+                        ? new DocumentDelta<T>(DocumentDelta.Type.RESET, null, null, delta.getSnapshot()) : delta;
+                pending.clear();
+                pending.put(latest.getId(), latest);
+            } else {
+                DocumentDelta<T> older = pending.remove(delta.getId());
+                DocumentDelta<T> merged = older != null ? older.merge(delta) : delta;
+                if (merged != null) pending.put(merged.getId(), merged);
+            }
+        }
+
+        void drain() {
+            synchronized (this) {
+                if (isDraining) return;
+                isDraining = true;
+            }
+            while (true) {
+                DocumentDelta<T> delta = null;
+                Throwable failure;
+                synchronized (this) {
+                    failure = error;
+                    error = null;
+                    if (failure == null && (isCancelled || demand == 0 || pending.isEmpty())) {
+                        isDraining = false;
+                        return;
+                    }
+                    if (failure != null) {
+                        isDraining = false;
+                    } else {
+                        Iterator<DocumentDelta<T>> iterator = pending.values().iterator();
+                        delta = iterator.next();
+                        iterator.remove();
+                        if (demand != Long.MAX_VALUE) demand--;
+                    }
+                }
+                if (failure != null) {
+                    subscriber.onError(failure);
+                    return;
+                }
+                subscriber.onNext(delta);
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                synchronized (this) {
+                    if (isCancelled) return;
+                    isCancelled = true;
+                    pending.clear();
+                    error = new IllegalArgumentException("request must be positive, got " + n);
+                }
+                onCancelled(this);
+                drain();
+                return;
+            }
+            synchronized (this) {
+                if (isCancelled) return;
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                if (isCancelled) return;
+                isCancelled = true;
+                pending.clear();
+            }
+            onCancelled(this);
+        }
+    }
+
+    /**
+     * ManagerPublisher publish changes of a DocumentsManager, data of deltas come from its snapshot
+     */
+    static class ManagerPublisher<T extends Document> extends DeltaPublisher<T> {
+        private final DocumentsManager<T> manager;
+        private final DocumentsManager.OnListChangedListener<T> listener = new DocumentsManager.OnListChangedListener<T>() {
+            @Override
+            public void onItemInserted(int position, T data) {
+                emit(new DocumentDelta<>(DocumentDelta.Type.ADDED, data.getId(), manager.getSnapshot().get(position), manager.getSnapshot()));
+            }
+
+            @Override
+            public void onItemChanged(int position, T data) {
+                emit(new DocumentDelta<>(DocumentDelta.Type.MODIFIED, data.getId(), manager.getSnapshot().get(position), manager.getSnapshot()));
+            }
+
+            @Override
+            public void onItemRemoved(int position, T data) {
+                emit(new DocumentDelta<T>(DocumentDelta.Type.REMOVED, data.getId(), null, manager.getSnapshot()));
+            }
+
+            @Override
+            public void onItemMoved(int fromPosition, int toPosition, T data) {
+                // deltas are keyed by documentId, the new order is in the snapshot of the next delta
+            }
+
+            @Override
+            public void onDataSetChanged(ArrayList<T> list) {
+                emit(new DocumentDelta<T>(DocumentDelta.Type.RESET, null, null, manager.getSnapshot()));
+            }
+        };
+
+        ManagerPublisher(DocumentsManager<T> manager, Conflation conflation) {
+            super(conflation);
+            this.manager = manager;
+        }
+
+        @Override
+        DocumentDelta<T> currentState() {
+            return new DocumentDelta<T>(DocumentDelta.Type.RESET, null, null, manager.getSnapshot());
+        }
+
+        @Override
+        void connect() {
+            // the snapshot keeper must run before the listener
+            manager.acquireSnapshot();
+            manager.onListChangedListeners.add(listener);
+        }
+
+        @Override
+        void disconnect() {
+            manager.removeOnListChangedListener(listener);
+            manager.releaseSnapshot();
+        }
+    }
+
+    /**
+     * DocumentPublisher publish values of a Document as frozen copies
+     */
+    static class DocumentPublisher<T extends Document> extends DeltaPublisher<T> {
+        private final T document;
+        private final Document.OnValueChangedListener<T> listener = new Document.OnValueChangedListener<T>() {
+            @Override
+            public void onValueChanged(@NonNull T data) {
+                DocumentDelta<T> delta = toDelta();
+                if (delta != null) emit(delta);
+            }
+        };
+
+        DocumentPublisher(T document, Conflation conflation) {
+            super(conflation);
+            this.document = document;
+        }
+
+        @Nullable
+        private DocumentDelta<T> toDelta() {
+            if (document.isRemoved()) return new DocumentDelta<T>(DocumentDelta.Type.REMOVED, document.getId(), null, null);
+            if (!document.isAvailable()) return null;
+            return new DocumentDelta<>(DocumentDelta.Type.MODIFIED, document.getId(), Documents.freeze(document), null);
+        }
+
+        @Override
+        DocumentDelta<T> currentState() {
+            return toDelta();
+        }
+
+        @Override
+        void connect() {
+            document.addOnNewValueListener(listener);
+        }
+
+        @Override
+        void disconnect() {
+            document.removeOnNewValueListener(listener);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package cf.bautroixa.firestoreodm;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * DiskSnapshot keep the raw data of a collection in a binary file, so that a manager shows its last known
+ * Documents synchronously on cold start instead of waiting for the first snapshot
+ * <p>
+ * the file holds a header (magic, format version, schema version, collection path) followed by the documentId
+ * and the fields of every Document, encoded by {@link ValueCodec}. It is read through a memory mapping and written
+ * to a temporary file on a background thread then renamed, so a crash never leaves a half written file.
+ * A file of another format, schema version or collection is ignored, a corrupt file is deleted.
+ * Bump schemaVersion when the persisted fields of the Document class change.
+ */
+public class DiskSnapshot {
+    public static final int FORMAT_VERSION = 1;
+    // "FODM"
+    private static final int MAGIC = 0x464F444D;
+    private static final String TAG = "DiskSnapshot";
+    private static Executor writeExecutor;
+    private final File file;
+    private final int schemaVersion;
+
+    /**
+     * @param file          file of this snapshot, its directory must exist
+     * @param schemaVersion version of the persisted fields, files written with another version are ignored
+     */
+    public DiskSnapshot(@NonNull File file, int schemaVersion) {
+        this.file = file;
+        this.schemaVersion = schemaVersion;
+    }
+
+    private static synchronized Executor getWriteExecutor() {
+        // one thread keeps writes and deletes of every file in order
+        if (writeExecutor == null) writeExecutor = Executors.newSingleThreadExecutor();
+        return writeExecutor;
+    }
+
+    @NonNull
+    public File getFile() {
+        return file;
+    }
+
+    public int getSchemaVersion() {
+        return schemaVersion;
+    }
+
+    /**
+     * read decode the saved Documents of collection, klass must have a generated {@link DocumentMapper}
+     *
+     * @param klass      Document class
+     * @param collection collection the snapshot was written for
+     * @return Documents in saved order, empty if there is no valid snapshot
+     */
+    @NonNull
+    public <T extends Document> List<T> read(@NonNull Class<T> klass, @NonNull CollectionReference collection) {
+        if (!file.exists()) return Collections.emptyList();
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+             FileChannel channel = randomAccessFile.getChannel()) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.remaining() < 12 || in.getInt() != MAGIC || in.getInt() != FORMAT_VERSION || in.getInt() != schemaVersion
+                    || !collection.getPath().equals(ValueCodec.readString(in))) {
+                Log.d(TAG, "Ignore outdated snapshot " + file.getName());
+                return Collections.emptyList();
+            }
+            FirebaseFirestore firestore = collection.getFirestore();
+            int count = ValueCodec.readLength(in);
+            ArrayList<T> datas = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String id = ValueCodec.readString(in);
+                Map<String, Object> snapshotData = ValueCodec.readMap(in, firestore);
+                datas.add(Document.newInstance(klass, collection.document(id), snapshotData));
+            }
+            return datas;
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Delete unreadable snapshot " + file.getName() + " reason: " + e.getMessage());
+            file.delete();
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * write save raw data of documents in background, Documents that have no snapshot data are skipped,
+     * must be called on main thread
+     *
+     * @param collection collection of documents
+     * @param documents  Documents to save, in order
+     */
+    public void write(@NonNull CollectionReference collection, @NonNull List<? extends Document> documents) {
+        // raw data of snapshots is never modified, only the references are taken on main thread
+        final String path = collection.getPath();
+        final ArrayList<String> ids = new ArrayList<>(documents.size());
+        final ArrayList<Map<String, Object>> datas = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            Map<String, Object> snapshotData = document.getSnapshotData();
+            if (snapshotData == null) continue;
+            ids.add(document.getId());
+            datas.add(snapshotData);
+        }
+        getWriteExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                writeFile(path, ids, datas);
+            }
+        });
+    }
+
+    /**
+     * delete remove the file after pending writes, for example when the user signs out
+     */
+    public void delete() {
+        getWriteExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                file.delete();
+            }
+        });
+    }
+
+    private void writeFile(String path, List<String> ids, List<Map<String, Object>> datas) {
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(schemaVersion);
+            ValueCodec.writeString(out, path);
+            ValueCodec.writeVarLong(out, ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                ValueCodec.writeString(out, ids.get(i));
+                ValueCodec.writeMap(out, datas.get(i));
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Write snapshot " + file.getName() + " failed reason: " + e.getMessage());
+            tempFile.delete();
+            return;
+        }
+        if (!tempFile.renameTo(file)) {
+            Log.e(TAG, "Write snapshot " + file.getName() + " failed reason: can not rename " + tempFile.getName());
+            tempFile.delete();
+        }
+    }
+}
@@ -11,19 +11,32 @@ import androidx.lifecycle.LifecycleOwner;
 import androidx.lifecycle.OnLifecycleEvent;
 
 import com.google.android.gms.tasks.Task;
-import com.google.android.gms.tasks.TaskCompletionSource;
 import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.DocumentSnapshot;
-import com.google.firebase.firestore.EventListener;
 import com.google.firebase.firestore.Exclude;
+import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.FirebaseFirestoreException;
 import com.google.firebase.firestore.ListenerRegistration;
 import com.google.firebase.firestore.WriteBatch;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Document base class of every document model
+ * <p>
+ * runtime state is transient, java serialization only keeps the fields of a Document and the path of its
+ * DocumentReference. Prefer {@link DocumentParcel} or {@link DocumentCodec} to pass a Document around,
+ * they write only persisted properties and do not go through java serialization.
+ */
 public abstract class Document implements Serializable {
     @Exclude
     public static final String ID = "id";
@@ -31,19 +44,38 @@ public abstract class Document implements Serializable {
     protected String TAG = "Document";
     @Exclude
     @Nullable
-    protected OnValueChangedListener initListener = null;
+    protected transient OnValueChangedListener initListener = null;
+    // written by its path, see writeObject
     @Exclude
-    protected DocumentReference ref;
+    protected transient DocumentReference ref;
     @Exclude
-    private ListenerRegistration listenerRegistration;
+    private transient ListenerRegistration listenerRegistration;
     @Exclude
     private Class klass;
     @Exclude
-    private ArrayList<OnValueChangedListener> onNewValueListeners = new ArrayList<>();
+    private transient ArrayList<OnValueChangedListener> onNewValueListeners = new ArrayList<>();
     @Exclude
-    private ArrayList<DocumentsManager> documentsManagers = new ArrayList<>();
+    private transient ArrayList<DocumentsManager> documentsManagers = new ArrayList<>();
     @Exclude
     private boolean isListening = false, isRemoved = false, isAvailable = false, isSubManagerAvailable = false;
+    // raw data of the last snapshot, used to detect which fields changed
+    @Exclude
+    private transient Map<String, Object> snapshotData;
+    // snapshot decoded by toObject, its raw data is only read once change detection needs it
+    @Exclude
+    @Nullable
+    private transient DocumentSnapshot documentSnapshot;
+    @Exclude
+    @Nullable
+    private transient Set<String> changedFields;
+    // snapshot listener decodes on this Executor when it is set, values are applied on main thread
+    @Exclude
+    @Nullable
+    private transient Executor executor;
+    @Exclude
+    private transient String metricsName;
+    @Exclude
+    private transient int listenerVersion = 0;
 
     /**
      * empty constructor
@@ -55,6 +87,7 @@ public abstract class Document implements Serializable {
     /**
      * construct new Document with DocumentSnapshot
      * newly constructed object is added its DocumentReference
+     * it is decoded by generated {@link DocumentMapper} if klass is annotated with {@link FirestoreModel}
      *
      * @param klass            Class
      * @param documentSnapshot DocumentSnapshot
@@ -62,12 +95,43 @@ public abstract class Document implements Serializable {
      */
     @Exclude
     public static <T extends Document> T newInstance(Class<T> klass, DocumentSnapshot documentSnapshot) {
-        T data = documentSnapshot.toObject(klass);
+        DocumentMapper<T> mapper = DocumentMappers.get(klass);
+        T data;
+        if (mapper != null) {
+            Map<String, Object> snapshotData = documentSnapshot.getData();
+            data = snapshotData != null ? mapper.decode(snapshotData) : documentSnapshot.toObject(klass);
+            ((Document) data).snapshotData = snapshotData;
+        } else {
+            // toObject already decodes the whole snapshot, getData would decode it a second time
+            data = documentSnapshot.toObject(klass);
+            ((Document) data).documentSnapshot = documentSnapshot;
+        }
         data.withRef(documentSnapshot.getReference()).withClass(klass);
         data.setAvailable(true);
         return data;
     }
 
+    /**
+     * newInstance decode data that does not come from a DocumentSnapshot, klass must have a generated
+     * {@link DocumentMapper}
+     *
+     * @param klass        Document class
+     * @param ref          DocumentReference of data
+     * @param snapshotData fields of document
+     * @return Document object type T
+     */
+    @Exclude
+    public static <T extends Document> T newInstance(Class<T> klass, DocumentReference ref, Map<String, Object> snapshotData) {
+        DocumentMapper<T> mapper = DocumentMappers.get(klass);
+        if (mapper == null)
+            throw new RuntimeException(klass.getName() + " has no DocumentMapper, annotate it with @FirestoreModel to decode it from data");
+        T data = mapper.decode(snapshotData);
+        data.withRef(ref).withClass(klass);
+        data.setAvailable(true);
+        ((Document) data).snapshotData = snapshotData;
+        return data;
+    }
+
     /**
      * withClass add Class to object
      *
@@ -109,54 +173,193 @@ public abstract class Document implements Serializable {
             cancelListenerRegistration();
         }
         this.initListener = initListener;
-        final Document thisDocument = this;
-        this.listenerRegistration = this.ref.addSnapshotListener(new EventListener<DocumentSnapshot>() {
+        final int version = ++listenerVersion;
+        DocumentStore.Listener listener = new DocumentStore.Listener() {
             @Override
-            public void onEvent(@Nullable DocumentSnapshot documentSnapshot, @Nullable FirebaseFirestoreException e) {
-                if (e != null) {
-                    Log.e(TAG, String.format("[Retry in %d ms] Listen %s failed reason: %s", retryInterval, ref.getId(), e.getMessage()));
-                    isListening = false;
-                    if (retryInterval >= 0 && retryInterval < 60 * 1000) {
-                        new Handler().postDelayed(new Runnable() {
-                            @Override
-                            public void run() {
-                                setListenerRegistration(retryInterval * 2, initListener);
-                            }
-                        }, retryInterval);
-                    } else {
-                        Log.e(TAG, String.format("[TIMEOUT] Listen %s failed reason: %s", ref.getId(), e.getMessage()));
+            public void onSnapshot(@NonNull List<StoredDocument> changes) {
+                StoredDocument storedDocument = changes.get(0);
+                Metrics.snapshotReceived(getMetricsName(), 1);
+                // decode on the listener thread, which is the executor thread if there is one
+                long startTime = Metrics.start();
+                final Document newValue = storedDocument.exists() ? storedDocument.toDocument(klass) : null;
+                Metrics.decoded(getMetricsName(), newValue != null ? 1 : 0, startTime);
+                runOnMainThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (version == listenerVersion) deliverValue(newValue);
                     }
-                    return;
-                }
-                isListening = true;
-                if (documentSnapshot != null) {
-                    if (documentSnapshot.exists()) {
-                        isAvailable = true;
-                        update(newInstance(klass, documentSnapshot));
-                        for (DocumentsManager documentsManager : documentsManagers) {
-                            documentsManager.put(thisDocument);
-                        }
-                    } else {
-                        for (DocumentsManager documentsManager : documentsManagers) {
-                            documentsManager.remove(thisDocument);
-                        }
-                        onRemove();
-                    }
-                    if (initListener != null) {
-                        initListener.onValueChanged(thisDocument);
-                    }
-                    for (OnValueChangedListener listener : onNewValueListeners) {
-                        listener.onValueChanged(thisDocument);
+                });
+            }
+
+            @Override
+            public void onError(@NonNull final FirebaseFirestoreException e) {
+                runOnMainThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (version == listenerVersion) onListenFailed(retryInterval, initListener, e);
                     }
+                });
+            }
+        };
+        this.listenerRegistration = DocumentStores.get().listenDocument(this.ref, executor, listener);
+        Metrics.listenerRegistered(getMetricsName());
+    }
+
+    private void onListenFailed(final long retryInterval, @Nullable final OnValueChangedListener initListener, FirebaseFirestoreException e) {
+        Log.e(TAG, String.format("[Retry in %d ms] Listen %s failed reason: %s", retryInterval, ref.getId(), e.getMessage()));
+        isListening = false;
+        if (retryInterval >= 0 && retryInterval < 60 * 1000) {
+            Metrics.retry(getMetricsName());
+            final int version = listenerVersion;
+            new Handler().postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    // removed, released or listened again meanwhile, nobody owns this retry anymore
+                    if (version != listenerVersion || isRemoved) return;
+                    setListenerRegistration(retryInterval * 2, initListener);
                 }
+            }, retryInterval);
+        } else {
+            Log.e(TAG, String.format("[TIMEOUT] Listen %s failed reason: %s", ref.getId(), e.getMessage()));
+        }
+    }
+
+    private void runOnMainThread(Runnable runnable) {
+        if (executor == null) {
+            runnable.run();
+        } else {
+            MainThread.post(runnable);
+        }
+    }
+
+    /**
+     * applySnapshot update this Document with new value from its own listener
+     * or from a query listener that listens to many Documents at once
+     *
+     * @param documentSnapshot new value, null if Document does not exist anymore
+     */
+    @Exclude
+    void applySnapshot(@Nullable DocumentSnapshot documentSnapshot) {
+        deliverValue(documentSnapshot != null ? newInstance(klass, documentSnapshot) : null);
+    }
+
+    /**
+     * deliverValue apply a value from a listener now, or at the next frame when a {@link FrameScheduler} is set
+     *
+     * @param newValue new value, null if Document does not exist anymore
+     */
+    private void deliverValue(@Nullable Document newValue) {
+        FrameScheduler scheduler = FrameScheduler.getDefault();
+        // the first value is applied at once so that init listeners are not delayed
+        if (scheduler != null && isAvailable) {
+            scheduler.scheduleValue(this, newValue, listenerVersion);
+        } else {
+            applyValue(newValue);
+        }
+    }
+
+    /**
+     * applyScheduledValue apply a value queued by {@link FrameScheduler}, unless this Document listened again since
+     */
+    void applyScheduledValue(@Nullable Document newValue, int version) {
+        if (version == listenerVersion) applyValue(newValue);
+    }
+
+    /**
+     * applyValue update this Document with a decoded value, must be called on main thread
+     *
+     * @param newValue new value, null if Document does not exist anymore
+     */
+    private void applyValue(@Nullable Document newValue) {
+        isListening = true;
+        if (newValue != null) {
+            // skip metadata-only and echo events that do not change any field
+            if (isAvailable && !detectChanges(newValue)) return;
+            isAvailable = true;
+            update(newValue);
+            applyChanges(newValue);
+            // put may evict this Document from a bounded manager, which releases it from documentsManagers
+            for (DocumentsManager documentsManager : new ArrayList<>(documentsManagers)) {
+                documentsManager.put(this);
             }
-        });
+        } else {
+            for (DocumentsManager documentsManager : new ArrayList<>(documentsManagers)) {
+                documentsManager.remove(this);
+            }
+            // the last manager may have released a shared Document, which already removed it
+            if (!isRemoved) onRemove();
+        }
+        long dispatchStartTime = Metrics.start();
+        if (initListener != null) {
+            initListener.onValueChanged(this);
+        }
+        for (OnValueChangedListener listener : onNewValueListeners) {
+            listener.onValueChanged(this);
+        }
+        Metrics.dispatched(getMetricsName(), onNewValueListeners.size() + (initListener != null ? 1 : 0), dispatchStartTime);
+    }
+
+    private String getMetricsName() {
+        if (metricsName == null) metricsName = "Document/" + getClass().getSimpleName();
+        return metricsName;
+    }
+
+    /**
+     * detectChanges compare fields of newValue with this Document,
+     * changed field names are kept in newValue until {@link Document#applyChanges(Document)}
+     *
+     * @param newValue new value of this Document
+     * @return false if no field changed
+     */
+    @Exclude
+    boolean detectChanges(Document newValue) {
+        if (!isAvailable) {
+            newValue.changedFields = null;
+            return true;
+        }
+        newValue.changedFields = Documents.getChangedFields(getSnapshotData(), newValue.getSnapshotData());
+        return newValue.changedFields == null || !newValue.changedFields.isEmpty();
+    }
+
+    /**
+     * applyChanges keep snapshot data and changed fields of newValue after it is updated into this Document
+     *
+     * @param newValue new value of this Document
+     */
+    @Exclude
+    void applyChanges(Document newValue) {
+        synchronized (newValue) {
+            snapshotData = newValue.snapshotData;
+            documentSnapshot = newValue.documentSnapshot;
+        }
+        changedFields = newValue.changedFields;
+    }
+
+    /**
+     * getSnapshotData read raw data of the last snapshot, from its DocumentSnapshot the first time if it was
+     * decoded by toObject. Frozen copies call it from background threads, so it is synchronized
+     *
+     * @return raw data of the last snapshot, null if unknown
+     */
+    @Exclude
+    @Nullable
+    synchronized Map<String, Object> getSnapshotData() {
+        if (snapshotData == null && documentSnapshot != null) {
+            snapshotData = documentSnapshot.getData();
+            documentSnapshot = null;
+        }
+        return snapshotData;
     }
 
     @Exclude
     public void cancelListenerRegistration() {
-        if (listenerRegistration != null) listenerRegistration.remove();
+        if (listenerRegistration != null) {
+            listenerRegistration.remove();
+            Metrics.listenerUnregistered(getMetricsName());
+        }
         listenerRegistration = null;
+        // drop values still waiting to be applied on main thread
+        listenerVersion++;
     }
 
     @Exclude
@@ -174,36 +377,48 @@ public abstract class Document implements Serializable {
 
     /**
      * Update document to Firebase cloud firestore
+     * without batch, the update goes through {@link WriteCoalescer#getDefault()} if there is one
      *
-     * @param batch               Writebatch (optional)
+     * @param batch               Writebatch (optional), wait for the Task of batch commit instead
      * @param field               field name (property name) to update
      * @param value               value of field to update
      * @param moreFieldsAndValues more field and value
-     * @return Task
+     * @return Task, null if batch is given
+     * @deprecated with a batch, a WriteCoalescer batches writes and completes the Task of each write,
+     * pass a null batch after {@link WriteCoalescer#setDefault} or call {@link WriteCoalescer#update}
      */
+    @Deprecated
     @Exclude
+    @Nullable
     public Task<Void> sendUpdate(@Nullable WriteBatch batch, @NonNull String field, @Nullable Object value, Object... moreFieldsAndValues) {
         if (batch != null) {
             batch.update(this.ref, field, value, moreFieldsAndValues);
-            TaskCompletionSource<Void> source = new TaskCompletionSource<Void>();
-            return source.getTask();
+            return null;
         }
+        WriteCoalescer coalescer = WriteCoalescer.getDefault();
+        if (coalescer != null) return coalescer.update(this.ref, field, value, moreFieldsAndValues);
         return this.ref.update(field, value, moreFieldsAndValues);
     }
 
     /**
      * Delete document from Firebase cloud firestore
+     * without batch, the delete goes through {@link WriteCoalescer#getDefault()} if there is one
      *
-     * @param batch Writebatch (optional)
-     * @return Task
+     * @param batch Writebatch (optional), wait for the Task of batch commit instead
+     * @return Task, null if batch is given
+     * @deprecated with a batch, a WriteCoalescer batches writes and completes the Task of each write,
+     * pass a null batch after {@link WriteCoalescer#setDefault} or call {@link WriteCoalescer#delete}
      */
+    @Deprecated
     @Exclude
+    @Nullable
     public Task<Void> sendDelete(@Nullable WriteBatch batch) {
         if (batch != null) {
             batch.delete(this.ref);
-            TaskCompletionSource<Void> source = new TaskCompletionSource<Void>();
-            return source.getTask();
+            return null;
         }
+        WriteCoalescer coalescer = WriteCoalescer.getDefault();
+        if (coalescer != null) return coalescer.delete(this.ref);
         return this.ref.delete();
     }
 
@@ -219,6 +434,27 @@ public abstract class Document implements Serializable {
         this.onNewValueListeners.remove(listener);
     }
 
+    /**
+     * publish values of this Document as a Reactive Streams Publisher of deltas with backpressure
+     *
+     * @param conflation how values are conflated while a subscriber has no demand
+     * @return DeltaPublisher, it listens to this Document while it has subscribers,
+     * use {@link DeltaPublisher#of(Document, DeltaPublisher.Conflation)} for deltas of the subclass type
+     */
+    @Exclude
+    @NonNull
+    public DeltaPublisher<? extends Document> publish(@NonNull DeltaPublisher.Conflation conflation) {
+        return DeltaPublisher.of(this, conflation);
+    }
+
+    /**
+     * @return true if someone is still listening to value of this Document
+     */
+    @Exclude
+    public boolean hasValueListeners() {
+        return !onNewValueListeners.isEmpty();
+    }
+
     @Exclude
     public void attachListener(LifecycleOwner lifecycleOwner, final OnValueChangedListener listener) {
         lifecycleOwner.getLifecycle().addObserver(new LifecycleObserver() {
@@ -245,6 +481,34 @@ public abstract class Document implements Serializable {
         return ref;
     }
 
+    /**
+     * getChangedFields get names of fields changed by the last update
+     *
+     * @return changed field names, null if unknown or this is the first value
+     */
+    @Exclude
+    @Nullable
+    public Set<String> getChangedFields() {
+        return changedFields;
+    }
+
+    @Exclude
+    @Nullable
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * setExecutor decode snapshots of this Document on executor instead of main thread,
+     * new value is still applied and notified on main thread, takes effect on next {@link Document#setListenerRegistration}
+     *
+     * @param executor Executor for decoding, null to decode on main thread
+     */
+    @Exclude
+    public void setExecutor(@Nullable Executor executor) {
+        this.executor = executor;
+    }
+
     @Exclude
     public Class getKlass() {
         return klass;
@@ -320,6 +584,19 @@ public abstract class Document implements Serializable {
         documentsManagers.remove(documentsManager);
     }
 
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeObject(ref != null ? ref.getPath() : null);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        String path = (String) in.readObject();
+        if (path != null) ref = FirebaseFirestore.getInstance().document(path);
+        onNewValueListeners = new ArrayList<>();
+        documentsManagers = new ArrayList<>();
+    }
+
     public interface OnValueChangedListener<T extends Document> {
         /**
          * onNewData
@@ -0,0 +1,90 @@
+package cf.bautroixa.firestoreodm;
+
+import androidx.annotation.NonNull;
+
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * DocumentCodec encode a Document into compact bytes to pass it between screens or processes
+ * <p>
+ * only the document path and the persisted properties are written, runtime state such as listeners and managers
+ * is not. Properties are read and written by the generated {@link DocumentMapper}, so the Document class must be
+ * annotated with {@link FirestoreModel}. Values are encoded by {@link ValueCodec}, the same encoding as
+ * {@link DiskSnapshot}. Use {@link DocumentParcel} to put a Document into a Bundle or an Intent.
+ */
+public class DocumentCodec {
+    public static final int FORMAT_VERSION = 1;
+
+    /**
+     * encode document into bytes
+     *
+     * @param document Document with a DocumentReference
+     * @return bytes readable by {@link DocumentCodec#decode(Class, ByteBuffer)}
+     */
+    @NonNull
+    @SuppressWarnings("unchecked")
+    public static <T extends Document> byte[] encode(@NonNull T document) {
+        Map<String, Object> data = getMapper((Class<T>) document.getClass()).encode(document);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + data.size() * 16);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(FORMAT_VERSION);
+            ValueCodec.writeString(out, document.getRef().getPath());
+            ValueCodec.writeMap(out, data);
+            out.flush();
+        } catch (IOException e) {
+            // ByteArrayOutputStream does not throw
+            throw new RuntimeException("Can not encode " + document.getClass().getSimpleName(), e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * decode a Document from bytes written by {@link DocumentCodec#encode(Document)},
+     * DocumentReferences belong to the default FirebaseFirestore
+     */
+    @NonNull
+    public static <T extends Document> T decode(@NonNull Class<T> klass, @NonNull byte[] bytes) {
+        return decode(klass, ByteBuffer.wrap(bytes), FirebaseFirestore.getInstance());
+    }
+
+    /**
+     * decode a Document from bytes written by {@link DocumentCodec#encode(Document)},
+     * DocumentReferences belong to the default FirebaseFirestore
+     */
+    @NonNull
+    public static <T extends Document> T decode(@NonNull Class<T> klass, @NonNull ByteBuffer in) {
+        return decode(klass, in, FirebaseFirestore.getInstance());
+    }
+
+    /**
+     * decode a Document in place, a heap or memory mapped buffer is read without copying it first
+     *
+     * @param klass     Document class
+     * @param in        input, its position is moved after the Document
+     * @param firestore FirebaseFirestore of the Document and of its DocumentReferences
+     * @return new Document, like one decoded from a snapshot
+     */
+    @NonNull
+    public static <T extends Document> T decode(@NonNull Class<T> klass, @NonNull ByteBuffer in, @NonNull FirebaseFirestore firestore) {
+        getMapper(klass);
+        int version = in.get();
+        if (version != FORMAT_VERSION) throw new RuntimeException("Unsupported DocumentCodec format version " + version);
+        String path = ValueCodec.readString(in);
+        Map<String, Object> data = ValueCodec.readMap(in, firestore);
+        return Document.newInstance(klass, firestore.document(path), data);
+    }
+
+    private static <T extends Document> DocumentMapper<T> getMapper(Class<T> klass) {
+        DocumentMapper<T> mapper = DocumentMappers.get(klass);
+        if (mapper == null)
+            throw new RuntimeException(klass.getName() + " has no DocumentMapper, annotate it with @FirestoreModel and use only property types the compiler supports to encode it");
+        return mapper;
+    }
+}
@@ -0,0 +1,92 @@
+package cf.bautroixa.firestoreodm;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import cf.bautroixa.firestoreodm.core.PersistentList;
+
+/**
+ * DocumentDelta one change of a DocumentsManager or a Document, emitted by {@link DeltaPublisher}
+ * <p>
+ * data is a frozen copy, it never changes after the delta is emitted so it can be read on any thread.
+ *
+ * @param <T> Document type
+ */
+public class DocumentDelta<T extends Document> {
+    private final Type type;
+    @Nullable
+    private final String id;
+    @Nullable
+    private final T data;
+    @Nullable
+    private final PersistentList<T> snapshot;
+
+    DocumentDelta(@NonNull Type type, @Nullable String id, @Nullable T data, @Nullable PersistentList<T> snapshot) {
+        this.type = type;
+        this.id = id;
+        this.data = data;
+        this.snapshot = snapshot;
+    }
+
+    @NonNull
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return documentId, null for {@link Type#RESET}
+     */
+    @Nullable
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return frozen value, null for {@link Type#REMOVED} and {@link Type#RESET}
+     */
+    @Nullable
+    public T getData() {
+        return data;
+    }
+
+    /**
+     * @return whole list after this delta for deltas of a DocumentsManager, null for deltas of a Document
+     */
+    @Nullable
+    public PersistentList<T> getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * merge this pending delta with a newer delta of the same documentId
+     *
+     * @return merged delta, null if they cancel each other
+     */
+    @Nullable
+    DocumentDelta<T> merge(DocumentDelta<T> newer) {
+        if (type == Type.ADDED) {
+            if (newer.type == Type.REMOVED) return null;
+            // still new to the subscriber
+            return new DocumentDelta<>(Type.ADDED, id, newer.data, newer.snapshot);
+        }
+        if (type == Type.REMOVED && newer.type == Type.ADDED) {
+            return new DocumentDelta<>(Type.MODIFIED, id, newer.data, newer.snapshot);
+        }
+        return newer;
+    }
+
+    @Override
+    public String toString() {
+        return "DocumentDelta{" + type + (id != null ? " " + id : "") + "}";
+    }
+
+    public enum Type {
+        ADDED,
+        MODIFIED,
+        REMOVED,
+        /**
+         * the whole state is replaced, read it from {@link DocumentDelta#getSnapshot()}
+         */
+        RESET
+    }
+}
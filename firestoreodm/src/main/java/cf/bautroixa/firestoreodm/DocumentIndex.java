@@ -0,0 +1,137 @@
+package cf.bautroixa.firestoreodm;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * DocumentIndex secondary index of the Documents kept by a DocumentsManager, by a key extracted from each Document
+ * <p>
+ * it is updated when a Document is added, updated, removed or cleared from the manager,
+ * so lookups only see Documents the manager currently holds and never read Firestore.
+ * Documents with a null key are not indexed. Use {@link DocumentsManager#addIndex(DocumentIndex)} to enable it.
+ *
+ * @param <T> Document type
+ * @param <K> key type
+ */
+public abstract class DocumentIndex<T extends Document, K> {
+    private final FieldExtractor<T, K> extractor;
+    // documentId -> key it is indexed under, Documents are updated in place so the old key is kept here
+    private final HashMap<String, K> keys = new HashMap<>();
+
+    DocumentIndex(@NonNull FieldExtractor<T, K> extractor) {
+        this.extractor = extractor;
+    }
+
+    void onPut(T data) {
+        String id = data.getId();
+        K key = extractor.extract(data);
+        if (keys.containsKey(id)) {
+            K oldKey = keys.get(id);
+            if (Objects.equals(oldKey, key)) {
+                // the same id may come with a new instance
+                entriesOf(key).put(id, data);
+                return;
+            }
+            removeEntry(oldKey, id);
+        }
+        if (key == null) {
+            keys.remove(id);
+            return;
+        }
+        keys.put(id, key);
+        entriesOf(key).put(id, data);
+    }
+
+    void onRemove(String id) {
+        if (!keys.containsKey(id)) return;
+        removeEntry(keys.remove(id), id);
+    }
+
+    void onClear() {
+        keys.clear();
+        getEntries().clear();
+    }
+
+    private void removeEntry(K key, String id) {
+        Map<K, LinkedHashMap<String, T>> entries = getEntries();
+        LinkedHashMap<String, T> documents = entries.get(key);
+        if (documents == null) return;
+        documents.remove(id);
+        if (documents.isEmpty()) entries.remove(key);
+    }
+
+    private LinkedHashMap<String, T> entriesOf(K key) {
+        Map<K, LinkedHashMap<String, T>> entries = getEntries();
+        LinkedHashMap<String, T> documents = entries.get(key);
+        if (documents == null) {
+            documents = new LinkedHashMap<>();
+            entries.put(key, documents);
+        }
+        return documents;
+    }
+
+    /**
+     * @return key -> Documents indexed under it by documentId
+     */
+    abstract Map<K, LinkedHashMap<String, T>> getEntries();
+
+    /**
+     * get Documents whose key equals key
+     *
+     * @param key key to look up
+     * @return Documents in order of indexing, empty if none
+     */
+    @NonNull
+    public List<T> get(@NonNull K key) {
+        LinkedHashMap<String, T> documents = getEntries().get(key);
+        return documents != null ? new ArrayList<>(documents.values()) : new ArrayList<T>();
+    }
+
+    /**
+     * getFirst get the first Document indexed under key
+     *
+     * @param key key to look up
+     * @return Document, null if none
+     */
+    @Nullable
+    public T getFirst(@NonNull K key) {
+        LinkedHashMap<String, T> documents = getEntries().get(key);
+        return documents != null && !documents.isEmpty() ? documents.values().iterator().next() : null;
+    }
+
+    public boolean contains(@NonNull K key) {
+        return getEntries().containsKey(key);
+    }
+
+    /**
+     * @return number of indexed Documents
+     */
+    public int size() {
+        return keys.size();
+    }
+
+    static <T> List<T> flatten(Collection<LinkedHashMap<String, T>> groups) {
+        ArrayList<T> result = new ArrayList<>();
+        for (LinkedHashMap<String, T> documents : groups) {
+            result.addAll(documents.values());
+        }
+        return result;
+    }
+
+    public interface FieldExtractor<T extends Document, K> {
+        /**
+         * @param data Document to index
+         * @return key of data, null to not index it
+         */
+        @Nullable
+        K extract(@NonNull T data);
+    }
+}
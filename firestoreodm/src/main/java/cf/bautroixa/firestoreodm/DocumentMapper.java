@@ -0,0 +1,54 @@
+package cf.bautroixa.firestoreodm;
+
+import androidx.annotation.NonNull;
+
+import java.util.Map;
+
+/**
+ * DocumentMapper decode and copy a Document type without reflection
+ * implementations are generated for classes annotated with {@link FirestoreModel}
+ *
+ * @param <T> Document type
+ */
+public interface DocumentMapper<T extends Document> {
+    /**
+     * @return new empty Document
+     */
+    @NonNull
+    T newInstance();
+
+    /**
+     * decode Document from data of a DocumentSnapshot
+     *
+     * @param data {@link com.google.firebase.firestore.DocumentSnapshot#getData()}
+     * @return new Document contains data
+     */
+    @NonNull
+    T decode(@NonNull Map<String, Object> data);
+
+    /**
+     * encode every persisted property of document into Firestore values, the reverse of decode
+     *
+     * @param document Document to encode
+     * @return data readable by {@link DocumentMapper#decode(Map)}
+     */
+    @NonNull
+    Map<String, Object> encode(@NonNull T document);
+
+    /**
+     * update copy every persisted property of from into target
+     *
+     * @param target Document to update
+     * @param from   Document contains new value
+     */
+    void update(@NonNull T target, @NonNull T from);
+
+    /**
+     * copy create new Document with every persisted property of from
+     *
+     * @param from Document to copy
+     * @return new Document
+     */
+    @NonNull
+    T copy(@NonNull T from);
+}
@@ -0,0 +1,97 @@
+package cf.bautroixa.firestoreodm;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * DocumentMappers find generated {@link DocumentMapper} of a Document class
+ * generated mapper of class a.b.User is a.b.User_Mapper, lookup is done once per class
+ */
+public class DocumentMappers {
+    public static final String SUFFIX = "_Mapper";
+    private static final Object NO_MAPPER = new Object();
+    private static final ConcurrentHashMap<Class<?>, Object> mappers = new ConcurrentHashMap<>();
+
+    /**
+     * get generated mapper of klass
+     *
+     * @param klass Document class
+     * @return mapper or null if klass is not annotated with {@link FirestoreModel}
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public static <T extends Document> DocumentMapper<T> get(Class<T> klass) {
+        Object mapper = mappers.get(klass);
+        if (mapper == null) {
+            mapper = find(klass);
+            mappers.put(klass, mapper);
+        }
+        return mapper != NO_MAPPER ? (DocumentMapper<T>) mapper : null;
+    }
+
+    /**
+     * toLongs copy a List or Map value of getData with every number converted to Long, used by generated mappers
+     *
+     * @param value List, Map or number, nested in any depth
+     * @return converted copy
+     */
+    @Nullable
+    public static Object toLongs(@Nullable Object value) {
+        return convertNumbers(value, false);
+    }
+
+    /**
+     * toDoubles copy a List or Map value of getData with every number converted to Double, used by generated mappers
+     * whole numbers are Long in getData, so a List&lt;Double&gt; can not be cast as it is
+     *
+     * @param value List, Map or number, nested in any depth
+     * @return converted copy
+     */
+    @Nullable
+    public static Object toDoubles(@Nullable Object value) {
+        return convertNumbers(value, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object convertNumbers(Object value, boolean toDouble) {
+        if (value instanceof Number) {
+            return toDouble ? (Object) ((Number) value).doubleValue() : (Object) ((Number) value).longValue();
+        }
+        if (value instanceof List) {
+            List<Object> list = (List<Object>) value;
+            ArrayList<Object> converted = new ArrayList<>(list.size());
+            for (Object item : list) {
+                converted.add(convertNumbers(item, toDouble));
+            }
+            return converted;
+        }
+        if (value instanceof Map) {
+            Map<String, Object> map = (Map<String, Object>) value;
+            HashMap<String, Object> converted = new HashMap<>(map.size() * 4 / 3 + 1);
+            for (Map.Entry<String, Object> entry : map.entrySet()) {
+                converted.put(entry.getKey(), convertNumbers(entry.getValue(), toDouble));
+            }
+            return converted;
+        }
+        return value;
+    }
+
+    private static Object find(Class<?> klass) {
+        String name = klass.getName();
+        int packageEnd = name.lastIndexOf('.');
+        String mapperName = name.substring(0, packageEnd + 1) + name.substring(packageEnd + 1).replace('$', '_') + SUFFIX;
+        try {
+            return Class.forName(mapperName, true, klass.getClassLoader()).newInstance();
+        } catch (ClassNotFoundException e) {
+            return NO_MAPPER;
+        } catch (IllegalAccessException | InstantiationException e) {
+            e.printStackTrace();
+            return NO_MAPPER;
+        }
+    }
+}
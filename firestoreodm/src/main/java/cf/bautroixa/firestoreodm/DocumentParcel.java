@@ -0,0 +1,85 @@
+package cf.bautroixa.firestoreodm;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * DocumentParcel Parcelable holder of a Document encoded by {@link DocumentCodec}
+ * <p>
+ * the Document is encoded once when the holder is created and decoded when {@link DocumentParcel#get(Class)}
+ * is called, the parcel only carries the class name and the encoded bytes.
+ * <pre>
+ * intent.putExtra("user", DocumentParcel.of(user));
+ * User user = intent.&lt;DocumentParcel&gt;getParcelableExtra("user").get(User.class);
+ * </pre>
+ */
+public class DocumentParcel implements Parcelable {
+    public static final Creator<DocumentParcel> CREATOR = new Creator<DocumentParcel>() {
+        @Override
+        public DocumentParcel createFromParcel(Parcel source) {
+            return new DocumentParcel(source.readString(), source.createByteArray());
+        }
+
+        @Override
+        public DocumentParcel[] newArray(int size) {
+            return new DocumentParcel[size];
+        }
+    };
+    private final String className;
+    private final byte[] bytes;
+
+    private DocumentParcel(String className, byte[] bytes) {
+        this.className = className;
+        this.bytes = bytes;
+    }
+
+    /**
+     * of encode document into a new DocumentParcel
+     *
+     * @param document Document to pass
+     * @return DocumentParcel
+     */
+    @NonNull
+    public static DocumentParcel of(@NonNull Document document) {
+        return new DocumentParcel(document.getClass().getName(), DocumentCodec.encode(document));
+    }
+
+    /**
+     * get decode the Document
+     *
+     * @param klass class of the encoded Document
+     * @return new Document
+     */
+    @NonNull
+    public <T extends Document> T get(@NonNull Class<T> klass) {
+        if (!klass.getName().equals(className)) throw new RuntimeException("DocumentParcel holds " + className + ", not " + klass.getName());
+        return DocumentCodec.decode(klass, ByteBuffer.wrap(bytes));
+    }
+
+    @NonNull
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * @return size of the encoded Document in bytes
+     */
+    public int getSize() {
+        return bytes.length;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeString(className);
+        dest.writeByteArray(bytes);
+    }
+}
@@ -0,0 +1,104 @@
+package cf.bautroixa.firestoreodm;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.firebase.firestore.DocumentReference;
+
+import java.util.HashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * DocumentRegistry share one listening Document per document path across all DocumentsManagers
+ * <p>
+ * every {@link DocumentRegistry#acquire} must be balanced by a {@link DocumentRegistry#release},
+ * the snapshot listener is removed when the last holder releases the Document.
+ * It must be used on main thread, like every DocumentsManager.
+ */
+public class DocumentRegistry {
+    private static DocumentRegistry mInstance = null;
+    private final HashMap<String, Entry> entries = new HashMap<>();
+
+    private DocumentRegistry() {
+    }
+
+    public static DocumentRegistry getInstance() {
+        if (mInstance == null) {
+            synchronized (DocumentRegistry.class) {
+                if (mInstance == null) {
+                    mInstance = new DocumentRegistry();
+                }
+            }
+        }
+        return mInstance;
+    }
+
+    /**
+     * acquire get the shared Document of ref, it starts listening when it is acquired for the first time
+     *
+     * @param itemClass Document class
+     * @param ref       DocumentReference
+     * @param executor  Executor to decode snapshots on if the Document is created, null for main thread
+     * @return shared Document
+     */
+    @NonNull
+    @SuppressWarnings("unchecked")
+    public <T extends Document> T acquire(Class<T> itemClass, DocumentReference ref, @Nullable Executor executor) {
+        String key = keyOf(itemClass, ref);
+        Entry entry = entries.get(key);
+        // a Document that does not exist anymore has stopped listening, start over with a new one
+        if (entry == null || entry.document.isRemoved()) {
+            T data = Documents.newDocument(itemClass, ref);
+            data.setExecutor(executor);
+            data.setListenerRegistration(1000, null);
+            entry = new Entry(data);
+            entries.put(key, entry);
+        }
+        entry.holderCount++;
+        return (T) entry.document;
+    }
+
+    /**
+     * release give back a Document got from {@link DocumentRegistry#acquire},
+     * it stops listening when no one holds it anymore
+     *
+     * @param document shared Document
+     */
+    public void release(Document document) {
+        String key = keyOf(document.getKlass(), document.getRef());
+        Entry entry = entries.get(key);
+        if (entry == null || entry.document != document) return;
+        if (--entry.holderCount > 0) return;
+        entries.remove(key);
+        document.onRemove();
+    }
+
+    /**
+     * @param document shared Document
+     * @return number of holders of document, 0 if it is not shared
+     */
+    public int getHolderCount(Document document) {
+        Entry entry = entries.get(keyOf(document.getKlass(), document.getRef()));
+        return entry != null && entry.document == document ? entry.holderCount : 0;
+    }
+
+    /**
+     * @return number of shared Documents, which is also the number of their snapshot listeners
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private static String keyOf(Class klass, DocumentReference ref) {
+        return klass.getName() + "|" + ref.getPath();
+    }
+
+    private static class Entry {
+        final Document document;
+        int holderCount = 0;
+
+        Entry(Document document) {
+            this.document = document;
+        }
+    }
+}
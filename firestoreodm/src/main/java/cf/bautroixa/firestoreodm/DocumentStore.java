@@ -0,0 +1,70 @@
+package cf.bautroixa.firestoreodm;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * DocumentStore is where Documents and CollectionManagers listen to their data and where
+ * {@link DocumentsManager#requestGet(String)} reads it, {@link FirestoreDocumentStore} is used
+ * unless another one is set with {@link DocumentStores#set}
+ * <p>
+ * listener callbacks are called on executor, or on main thread when executor is null.
+ * {@link DocumentsManager#queryGet}, {@link PagedCollectionManager} and chunked listening of
+ * {@link RefsArrayManager} need filters, cursors and limits, they always read from Firestore.
+ */
+public interface DocumentStore {
+    /**
+     * listenDocument listen to a single document
+     *
+     * @param ref      DocumentReference
+     * @param executor Executor to call listener on, null for main thread
+     * @param listener receives a list with one StoredDocument per snapshot
+     * @return ListenerRegistration to stop listening
+     */
+    @NonNull
+    ListenerRegistration listenDocument(@NonNull DocumentReference ref, @Nullable Executor executor, @NonNull Listener listener);
+
+    /**
+     * listenQuery listen to documents of collection that match query
+     *
+     * @param collection collection query belongs to
+     * @param query      query, may be collection itself
+     * @param executor   Executor to call listener on, null for main thread
+     * @param listener   receives changed documents of each snapshot, removed ones do not exist
+     * @return ListenerRegistration to stop listening
+     */
+    @NonNull
+    ListenerRegistration listenQuery(@NonNull CollectionReference collection, @NonNull Query query, @Nullable Executor executor, @NonNull Listener listener);
+
+    /**
+     * getDocuments read documents of collection once
+     *
+     * @param collection collection documents belong to
+     * @param ids        documentIds to read
+     * @return Task of the existing documents, documents that do not exist are left out
+     */
+    @NonNull
+    Task<List<StoredDocument>> getDocuments(@NonNull CollectionReference collection, @NonNull List<String> ids);
+
+    interface Listener {
+        /**
+         * @param changes changed documents, in snapshot order
+         */
+        void onSnapshot(@NonNull List<StoredDocument> changes);
+
+        /**
+         * listening stopped because of e, nothing is received after it
+         */
+        void onError(@NonNull FirebaseFirestoreException e);
+    }
+}
@@ -0,0 +1,35 @@
+package cf.bautroixa.firestoreodm;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * DocumentStores hold the DocumentStore used by every Document and CollectionManager
+ */
+public class DocumentStores {
+    private static volatile DocumentStore store;
+
+    private DocumentStores() {
+    }
+
+    @NonNull
+    public static DocumentStore get() {
+        DocumentStore current = store;
+        if (current == null) {
+            synchronized (DocumentStores.class) {
+                if (store == null) store = new FirestoreDocumentStore();
+                current = store;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * set DocumentStore for listeners started after this call
+     *
+     * @param store DocumentStore, null to use Firestore
+     */
+    public static void set(@Nullable DocumentStore store) {
+        DocumentStores.store = store;
+    }
+}
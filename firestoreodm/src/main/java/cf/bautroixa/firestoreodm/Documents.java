@@ -1,11 +1,40 @@
 package cf.bautroixa.firestoreodm;
 
+import androidx.annotation.Nullable;
+
+import com.google.firebase.firestore.DocumentReference;
+
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 public class Documents {
+    /**
+     * newDocument create an empty Document of klass with its DocumentReference
+     * generated {@link DocumentMapper} is used if klass is annotated with {@link FirestoreModel}
+     *
+     * @param klass class of Document
+     * @param ref   DocumentReference of new Document
+     * @return new Document
+     */
+    public static <T extends Document> T newDocument(Class<T> klass, DocumentReference ref) {
+        try {
+            DocumentMapper<T> mapper = DocumentMappers.get(klass);
+            T data = mapper != null ? mapper.newInstance() : klass.newInstance();
+            data.withRef(ref).withClass(klass);
+            return data;
+        } catch (IllegalAccessException | InstantiationException e) {
+            e.printStackTrace();
+            throw new RuntimeException("Failed to create new Document: klass#newInstance throw exception");
+        }
+    }
+
     /**
      * dumpValue dump value from document into static data-Document object
+     * generated {@link DocumentMapper} is used if klass is annotated with {@link FirestoreModel}
      *
      * @param from  Document to dump
      * @param klass class of Document
@@ -14,12 +43,35 @@ public class Documents {
      * @throws InstantiationException by klass.newInstance
      */
     public static <T extends Document> T dumpValue(Class<T> klass, T from) throws InstantiationException, IllegalAccessException {
+        DocumentMapper<T> mapper = DocumentMappers.get(klass);
+        if (mapper != null) {
+            T data = mapper.copy(from);
+            data.withClass(klass).withRef(from.getRef());
+            return data;
+        }
         T data = klass.newInstance();
         data.withClass(klass).withRef(from.getRef());
         data.update(from);
         return data;
     }
 
+    /**
+     * freeze copy data into a Document that is never updated, raw snapshot data is kept to compare copies
+     *
+     * @param data Document to copy
+     * @return frozen copy
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends Document> T freeze(T data) {
+        try {
+            T frozen = dumpValue((Class<T>) data.getClass(), data);
+            frozen.applyChanges(data);
+            return frozen;
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new RuntimeException("Can not copy " + data.getClass().getSimpleName(), e);
+        }
+    }
+
     /**
      * dumpArrayValue dump value from List <Document> into List of <static data-Document object>
      *
@@ -38,4 +90,26 @@ public class Documents {
         }
         return dumpList;
     }
+
+    /**
+     * getChangedFields compare raw data of two snapshots of a Document
+     *
+     * @param from old data
+     * @param to   new data
+     * @return names of fields added, removed or changed, null if any data is unknown
+     */
+    @Nullable
+    public static Set<String> getChangedFields(@Nullable Map<String, Object> from, @Nullable Map<String, Object> to) {
+        if (from == null || to == null) return null;
+        Set<String> changedFields = new HashSet<>();
+        for (Map.Entry<String, Object> entry : from.entrySet()) {
+            if (!to.containsKey(entry.getKey()) || !Objects.equals(entry.getValue(), to.get(entry.getKey()))) {
+                changedFields.add(entry.getKey());
+            }
+        }
+        for (String field : to.keySet()) {
+            if (!from.containsKey(field)) changedFields.add(field);
+        }
+        return changedFields;
+    }
 }
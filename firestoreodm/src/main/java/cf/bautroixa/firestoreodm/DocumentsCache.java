@@ -0,0 +1,153 @@
+package cf.bautroixa.firestoreodm;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DocumentsCache bound the number or the estimated size of Documents kept by a DocumentsManager
+ * <p>
+ * least recently accessed Documents are evicted first, a Document that still has
+ * value listeners (for example attached to a lifecycle with {@link Document#attachListener}) is never evicted.
+ * Use {@link DocumentsManager#setCache(DocumentsCache)} to enable it, managers whose list is defined by references or a query
+ * ({@link RefsArrayManager}, {@link CollectionManager}, {@link PagedCollectionManager}, {@link LiveQueryManager}) can not be bounded
+ * because an evicted Document would disappear from their list while it still belongs to it.
+ *
+ * @param <T> Document type
+ */
+public class DocumentsCache<T extends Document> {
+    private final long capacity;
+    private final SizeEstimator<T> sizeEstimator;
+    // access ordered, eldest first
+    private final LinkedHashMap<String, Entry<T>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    @Nullable
+    private OnEvictedListener<T> onEvictedListener;
+    private long size = 0;
+    private long hitCount = 0, missCount = 0, evictionCount = 0;
+
+    /**
+     * construct cache bounded by number of Documents
+     *
+     * @param maxCount maximum number of Documents
+     */
+    public DocumentsCache(int maxCount) {
+        this(maxCount, new SizeEstimator<T>() {
+            @Override
+            public long estimateSize(@NonNull T data) {
+                return 1;
+            }
+        });
+    }
+
+    /**
+     * construct cache bounded by estimated size of Documents
+     *
+     * @param maxSize       maximum total size
+     * @param sizeEstimator estimate size of a Document, in the same unit as maxSize
+     */
+    public DocumentsCache(long maxSize, @NonNull SizeEstimator<T> sizeEstimator) {
+        this.capacity = maxSize;
+        this.sizeEstimator = sizeEstimator;
+    }
+
+    public void setOnEvictedListener(@Nullable OnEvictedListener<T> onEvictedListener) {
+        this.onEvictedListener = onEvictedListener;
+    }
+
+    void onHit(String id) {
+        hitCount++;
+        entries.get(id);
+    }
+
+    void onMiss() {
+        missCount++;
+    }
+
+    void onPut(T data) {
+        long dataSize = sizeEstimator.estimateSize(data);
+        Entry<T> old = entries.put(data.getId(), new Entry<>(data, dataSize));
+        size += dataSize - (old != null ? old.size : 0);
+    }
+
+    void onRemove(String id) {
+        Entry<T> old = entries.remove(id);
+        if (old != null) size -= old.size;
+    }
+
+    void onClear() {
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * @return Documents to evict, least recently accessed first
+     */
+    List<T> findEvictions() {
+        List<T> evictions = new ArrayList<>();
+        long remainingSize = size;
+        for (Map.Entry<String, Entry<T>> entry : entries.entrySet()) {
+            if (remainingSize <= capacity) break;
+            Entry<T> cacheEntry = entry.getValue();
+            if (cacheEntry.data.hasValueListeners()) continue;
+            evictions.add(cacheEntry.data);
+            remainingSize -= cacheEntry.size;
+        }
+        return evictions;
+    }
+
+    void onEvicted(T data) {
+        evictionCount++;
+        if (onEvictedListener != null) onEvictedListener.onEvicted(data);
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public interface SizeEstimator<T extends Document> {
+        /**
+         * @param data Document
+         * @return estimated size of data, must not change while data is unchanged
+         */
+        long estimateSize(@NonNull T data);
+    }
+
+    public interface OnEvictedListener<T extends Document> {
+        /**
+         * onEvicted is called after data is removed from its DocumentsManager to free space
+         *
+         * @param data evicted Document
+         */
+        void onEvicted(@NonNull T data);
+    }
+
+    private static class Entry<T> {
+        final T data;
+        final long size;
+
+        Entry(T data, long size) {
+            this.data = data;
+            this.size = size;
+        }
+    }
+}
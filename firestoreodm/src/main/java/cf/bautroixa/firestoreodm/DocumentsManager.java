@@ -1,6 +1,5 @@
 package cf.bautroixa.firestoreodm;
 
-import android.os.Handler;
 import android.util.Log;
 
 import androidx.annotation.CallSuper;
@@ -13,7 +12,12 @@ import androidx.lifecycle.OnLifecycleEvent;
 import androidx.recyclerview.widget.RecyclerView;
 import androidx.recyclerview.widget.SortedList;
 
+import cf.bautroixa.firestoreodm.core.IndexedList;
+import cf.bautroixa.firestoreodm.core.ItemRange;
+import cf.bautroixa.firestoreodm.core.PersistentList;
+
 import com.google.android.gms.tasks.Continuation;
+import com.google.android.gms.tasks.OnCompleteListener;
 import com.google.android.gms.tasks.Task;
 import com.google.android.gms.tasks.TaskCompletionSource;
 import com.google.firebase.firestore.CollectionReference;
@@ -24,8 +28,15 @@ import com.google.firebase.firestore.QuerySnapshot;
 import com.google.firebase.firestore.WriteBatch;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executor;
 
 /**
  * DocumentsManager class
@@ -36,16 +47,87 @@ import java.util.List;
  * @since 2020/07/07
  */
 public abstract class DocumentsManager<T extends Document> {
+    /**
+     * maximum number of values of a whereIn query
+     */
+    public static final int MAX_WHERE_IN = 10;
     protected Document parentDocument;
     protected CollectionReference ref;
     protected Class<T> itemClass;
-    protected HashMap<String, Integer> mapIdWithIndex;
+    // list of Documents indexed by documentId, list and mapIdWithIndex are its read-only views
+    protected IndexedList<T> items;
     protected ArrayList<T> list;
+    /**
+     * @deprecated read-only, use {@link DocumentsManager#indexOf(String)} or {@link DocumentsManager#contains(String)}
+     */
+    @Deprecated
+    protected HashMap<String, Integer> mapIdWithIndex;
     protected ArrayList<OnListChangedListener<T>> onListChangedListeners;
     protected ArrayList<OnInitCompleteListener<T>> onInitCompleteListeners;
+    // bound the Documents kept in list when it is set
+    @Nullable
+    protected DocumentsCache<T> cache;
+    // waitGet and attachListen subscribers by documentId, notified by put and remove without scanning listeners
+    private final HashMap<String, ArrayList<IdSubscriber<T>>> idSubscribers = new HashMap<>();
+    protected long waitTimeoutMillis = 10000;
+    // requestGet misses: documentId -> shared Task source, and ids not read yet
+    private final HashMap<String, TaskCompletionSource<T>> inFlightGets = new HashMap<>();
+    private final LinkedHashSet<String> pendingGetIds = new LinkedHashSet<>();
+    private final Runnable flushGetsRunnable = new Runnable() {
+        @Override
+        public void run() {
+            isGetBatchScheduled = false;
+            flushGets();
+        }
+    };
+    private boolean isGetBatchScheduled = false;
+    // incremented by clear, reads started before are neither put nor shared with later requestGet
+    private int getGeneration = 0;
+    protected long getBatchWindowMillis = 10;
+    // secondary indexes kept in sync with list
+    protected ArrayList<DocumentIndex<T, ?>> indexes = new ArrayList<>();
+    // Documents this manager acquired from DocumentRegistry, released when they leave this manager
+    protected HashMap<String, T> sharedDocuments = new HashMap<>();
     protected boolean isListening = true;
     protected boolean isListComplete = false;
+    // decode snapshots on this Executor when it is set, changes are applied on main thread
+    @Nullable
+    protected Executor executor;
     private String TAG = "Manager";
+    // source reported to Metrics
+    protected String metricsName;
+    // frozen copies of list, maintained by snapshotKeeper while snapshotConsumers > 0
+    @Nullable
+    private PersistentList<T> snapshot;
+    private int snapshotConsumers = 0;
+    private final OnListChangedListener<T> snapshotKeeper = new OnListChangedListener<T>() {
+        @Override
+        public void onItemInserted(int position, T data) {
+            snapshot = snapshot.plus(position, freeze(data));
+        }
+
+        @Override
+        public void onItemChanged(int position, T data) {
+            snapshot = snapshot.with(position, freeze(data));
+        }
+
+        @Override
+        public void onItemRemoved(int position, T data) {
+            snapshot = snapshot.minus(position);
+        }
+
+        @Override
+        public void onItemMoved(int fromPosition, int toPosition, T data) {
+            // the frozen value did not change, only its position
+            T frozen = snapshot.get(fromPosition);
+            snapshot = snapshot.minus(fromPosition).plus(toPosition, frozen);
+        }
+
+        @Override
+        public void onDataSetChanged(ArrayList<T> list) {
+            snapshot = freezeAll(list);
+        }
+    };
 
     /**
      * construct new empty,boring,useless DocumentsManager
@@ -84,8 +166,17 @@ public abstract class DocumentsManager<T extends Document> {
     private void constructor(Class<T> itemClass) {
         this.itemClass = itemClass;
         TAG = itemClass.getSimpleName() + TAG;
-        this.mapIdWithIndex = new HashMap<>();
-        this.list = new ArrayList<>();
+        Class<?> managerClass = getClass();
+        while (managerClass.getSimpleName().isEmpty()) managerClass = managerClass.getSuperclass();
+        this.metricsName = managerClass.getSimpleName() + "/" + itemClass.getSimpleName();
+        this.items = new IndexedList<>(new IndexedList.IdOf<T>() {
+            @Override
+            public String idOf(T item) {
+                return item.getId();
+            }
+        });
+        this.list = items.getList();
+        this.mapIdWithIndex = items.getPositionMap();
         this.onListChangedListeners = new ArrayList<>();
         this.onInitCompleteListeners = new ArrayList<>();
     }
@@ -106,6 +197,113 @@ public abstract class DocumentsManager<T extends Document> {
         return parentDocument;
     }
 
+    @Nullable
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * setExecutor decode snapshots and task results on executor instead of main thread,
+     * only the decoded changes are posted to main thread to update {@link DocumentsManager#list}
+     * and notify listeners, Documents created by this manager decode on it too
+     *
+     * @param executor Executor for decoding, null to decode on main thread
+     */
+    public void setExecutor(@Nullable Executor executor) {
+        this.executor = executor;
+    }
+
+    @Nullable
+    public DocumentsCache<T> getCache() {
+        return cache;
+    }
+
+    /**
+     * setCache bound the Documents kept by this manager, least recently accessed Documents
+     * are removed once the cache is full and their listeners are released
+     *
+     * @param cache DocumentsCache, null to keep every Document
+     */
+    public void setCache(@Nullable DocumentsCache<T> cache) {
+        this.cache = cache;
+        if (cache == null) return;
+        for (T data : list) {
+            cache.onPut(data);
+        }
+        trimCache();
+    }
+
+    /**
+     * addIndex index the Documents of this manager, the index is filled with the current list
+     * and kept up to date on every add, update, remove and clear
+     *
+     * @param index HashIndex or SortedIndex
+     * @return index
+     */
+    public <I extends DocumentIndex<T, ?>> I addIndex(@NonNull I index) {
+        index.onClear();
+        for (T data : list) {
+            index.onPut(data);
+        }
+        indexes.add(index);
+        return index;
+    }
+
+    public void removeIndex(@NonNull DocumentIndex<T, ?> index) {
+        indexes.remove(index);
+    }
+
+    /**
+     * query run a LocalQuery once on the Documents of this manager
+     *
+     * @param query LocalQuery
+     * @return matched Documents, ordered and limited
+     */
+    @NonNull
+    public List<T> query(@NonNull LocalQuery<T> query) {
+        return query.run(list);
+    }
+
+    /**
+     * liveQuery keep the result of a LocalQuery on this manager up to date
+     *
+     * @param query LocalQuery
+     * @return LiveQueryManager, stop it with {@link LiveQueryManager#stopListening()}
+     */
+    @NonNull
+    public LiveQueryManager<T> liveQuery(@NonNull LocalQuery<T> query) {
+        return new LiveQueryManager<>(this, query);
+    }
+
+    /**
+     * trimCache evict least recently accessed Documents until the cache is not over capacity
+     */
+    protected void trimCache() {
+        if (cache == null) return;
+        for (T data : cache.findEvictions()) {
+            remove(data.getId());
+            cache.onEvicted(data);
+        }
+    }
+
+    /**
+     * run on main thread, directly if this manager does not decode on an Executor
+     */
+    protected void runOnMainThread(Runnable runnable) {
+        if (executor == null) {
+            runnable.run();
+        } else {
+            MainThread.post(runnable);
+        }
+    }
+
+    /**
+     * continueWith on {@link DocumentsManager#executor} if it is set
+     */
+    protected <R, S> Task<S> continueWith(Task<R> task, Continuation<R, S> continuation) {
+        return executor != null ? task.continueWith(executor, continuation) : task.continueWith(continuation);
+    }
+
     /**
      * get DocumentReference to specified document id
      *
@@ -149,7 +347,7 @@ public abstract class DocumentsManager<T extends Document> {
      */
     public Task<DocumentReference> create(T data) {
         final DocumentReference newDataRef = data.getId() != null ? ref.document(data.getId()) : ref.document();
-        return newDataRef.set(data).continueWith(new Continuation<Void, DocumentReference>() {
+        return continueWith(newDataRef.set(data), new Continuation<Void, DocumentReference>() {
             @Override
             public DocumentReference then(@NonNull Task<Void> task) throws Exception {
                 if (!task.isSuccessful()) throw task.getException();
@@ -180,26 +378,204 @@ public abstract class DocumentsManager<T extends Document> {
         return dataRef.delete();
     }
 
+    /**
+     * createAll create many documents in WriteBatches, see {@link BulkWriter}
+     *
+     * @param data Documents to create, Documents without ref get a new documentId
+     * @return Task of Result, with the batches that failed
+     */
+    public Task<BulkWriter.Result> createAll(@NonNull Collection<T> data) {
+        return importFrom(data.iterator(), new BulkWriter(), null);
+    }
+
+    /**
+     * importFrom create documents read from an Iterator, Documents are pulled only when their batch is built
+     *
+     * @param data               Documents to create, Documents without ref get a new documentId
+     * @param bulkWriter         batching and rate policy
+     * @param onProgressListener notified after each batch, may be null
+     * @return Task of Result, with the batches that failed
+     */
+    public Task<BulkWriter.Result> importFrom(@NonNull final Iterator<T> data, @NonNull BulkWriter bulkWriter,
+                                              @Nullable BulkWriter.OnProgressListener onProgressListener) {
+        return bulkWriter.write(ref.getFirestore(), new Iterator<BulkWriter.Operation>() {
+            @Override
+            public boolean hasNext() {
+                return data.hasNext();
+            }
+
+            @Override
+            public BulkWriter.Operation next() {
+                final T item = data.next();
+                final DocumentReference newDataRef = item.getId() != null ? ref.document(item.getId()) : ref.document();
+                return new BulkWriter.Operation() {
+                    @NonNull
+                    @Override
+                    public String addTo(@NonNull WriteBatch batch) {
+                        batch.set(newDataRef, item);
+                        return newDataRef.getId();
+                    }
+                };
+            }
+        }, onProgressListener);
+    }
+
+    /**
+     * deleteAll delete many documents in WriteBatches, see {@link BulkWriter}
+     *
+     * @param documentIds documentIds to delete
+     * @return Task of Result, with the batches that failed
+     */
+    public Task<BulkWriter.Result> deleteAll(@NonNull Collection<String> documentIds) {
+        return deleteAll(documentIds, new BulkWriter(), null);
+    }
+
+    /**
+     * deleteAll delete many documents in WriteBatches
+     *
+     * @param documentIds        documentIds to delete
+     * @param bulkWriter         batching and rate policy
+     * @param onProgressListener notified after each batch, may be null
+     * @return Task of Result, with the batches that failed
+     */
+    public Task<BulkWriter.Result> deleteAll(@NonNull Collection<String> documentIds, @NonNull BulkWriter bulkWriter,
+                                             @Nullable BulkWriter.OnProgressListener onProgressListener) {
+        final Iterator<String> ids = documentIds.iterator();
+        return bulkWriter.write(ref.getFirestore(), new Iterator<BulkWriter.Operation>() {
+            @Override
+            public boolean hasNext() {
+                return ids.hasNext();
+            }
+
+            @Override
+            public BulkWriter.Operation next() {
+                final String documentId = ids.next();
+                return new BulkWriter.Operation() {
+                    @NonNull
+                    @Override
+                    public String addTo(@NonNull WriteBatch batch) {
+                        delete(batch, documentId);
+                        return documentId;
+                    }
+                };
+            }
+        }, onProgressListener);
+    }
+
+    /**
+     * setGetBatchWindow change how long {@link DocumentsManager#requestGet(String)} collects misses before reading them
+     *
+     * @param getBatchWindowMillis window in milliseconds, 0 to read the misses of one main loop turn together
+     */
+    public void setGetBatchWindow(long getBatchWindowMillis) {
+        this.getBatchWindowMillis = getBatchWindowMillis;
+    }
+
     /**
      * requestGet get a document with documentId
+     * concurrent calls for the same documentId share one Task, misses of a short window are read together
+     * with whereIn queries of at most {@link DocumentsManager#MAX_WHERE_IN} ids, read Documents are put into this manager
+     * if {@link DocumentsManager#isMembershipById()}. It must be called on main thread.
      *
      * @param documentId documentId to get
-     * @return Task contains Document value
+     * @return Task contains Document value, fails if Document does not exist
      */
     public Task<T> requestGet(String documentId) {
         T data = get(documentId);
         if (data != null) {
             return TaskHelper.getCompletedTask(data);
         }
-        return ref.document(documentId).get().continueWith(new Continuation<DocumentSnapshot, T>() {
+        TaskCompletionSource<T> source = inFlightGets.get(documentId);
+        if (source != null) return source.getTask();
+        source = new TaskCompletionSource<>();
+        inFlightGets.put(documentId, source);
+        pendingGetIds.add(documentId);
+        if (!isGetBatchScheduled) {
+            isGetBatchScheduled = true;
+            MainThread.getHandler().postDelayed(flushGetsRunnable, getBatchWindowMillis);
+        }
+        return source.getTask();
+    }
+
+    /**
+     * flushGets read every pending miss now, in chunks of at most {@link DocumentsManager#MAX_WHERE_IN} ids
+     */
+    protected void flushGets() {
+        if (isGetBatchScheduled) {
+            MainThread.getHandler().removeCallbacks(flushGetsRunnable);
+            isGetBatchScheduled = false;
+        }
+        ArrayList<String> ids = new ArrayList<>(pendingGetIds);
+        pendingGetIds.clear();
+        for (int start = 0; start < ids.size(); start += MAX_WHERE_IN) {
+            readChunk(new ArrayList<>(ids.subList(start, Math.min(start + MAX_WHERE_IN, ids.size()))));
+        }
+    }
+
+    private void readChunk(final List<String> ids) {
+        final int generation = getGeneration;
+        final HashMap<String, TaskCompletionSource<T>> sources = new HashMap<>();
+        for (String id : ids) {
+            sources.put(id, inFlightGets.get(id));
+        }
+        Task<List<T>> task = continueWith(DocumentStores.get().getDocuments(ref, ids), new Continuation<List<StoredDocument>, List<T>>() {
             @Override
-            public T then(@NonNull Task<DocumentSnapshot> task) throws Exception {
+            public List<T> then(@NonNull Task<List<StoredDocument>> task) throws Exception {
                 if (!task.isSuccessful()) throw task.getException();
-                if (task.getResult() == null)
-                    throw new Exception("requestGet Failed, result is null");
-                return Document.newInstance(itemClass, task.getResult());
+                ArrayList<T> datas = new ArrayList<>(ids.size());
+                if (task.getResult() == null) return datas;
+                for (StoredDocument storedDocument : task.getResult()) {
+                    datas.add(storedDocument.toDocument(itemClass));
+                }
+                return datas;
             }
         });
+        task.addOnCompleteListener(new OnCompleteListener<List<T>>() {
+            @Override
+            public void onComplete(@NonNull Task<List<T>> task) {
+                if (!task.isSuccessful()) {
+                    Exception e = task.getException() != null ? task.getException() : new RuntimeException("requestGet failed");
+                    Log.e(TAG, String.format("Read %d documents failed reason: %s", ids.size(), e.getMessage()));
+                    for (String id : ids) {
+                        TaskCompletionSource<T> source = takeGet(generation, sources, id);
+                        if (source != null) source.trySetException(e);
+                    }
+                    return;
+                }
+                boolean isCurrent = generation == getGeneration;
+                for (T data : task.getResult()) {
+                    // a listener may have delivered a newer value meanwhile
+                    if (isCurrent && isMembershipById() && !contains(data.getId())) put(data);
+                    TaskCompletionSource<T> source = takeGet(generation, sources, data.getId());
+                    T current = isCurrent ? items.get(data.getId()) : null;
+                    if (source != null) source.trySetResult(current != null ? current : data);
+                }
+                for (String id : ids) {
+                    TaskCompletionSource<T> source = takeGet(generation, sources, id);
+                    if (source != null)
+                        source.trySetException(new RuntimeException("requestGet failed, document " + id + " does not exist"));
+                }
+            }
+        });
+    }
+
+    /**
+     * takeGet remove the Task source of a read, it is in flight only if this manager was not cleared since
+     */
+    private TaskCompletionSource<T> takeGet(int generation, HashMap<String, TaskCompletionSource<T>> sources, String id) {
+        if (generation == getGeneration) inFlightGets.remove(id);
+        return sources.remove(id);
+    }
+
+    /**
+     * isMembershipById
+     * whether any Document of {@link DocumentsManager#ref} belongs to this manager, so that Documents read by
+     * {@link DocumentsManager#requestGet(String)} can be put, managers filled by a query or references return false
+     *
+     * @return true by default
+     */
+    protected boolean isMembershipById() {
+        return true;
     }
 
     /**
@@ -215,75 +591,120 @@ public abstract class DocumentsManager<T extends Document> {
             onValueChangedListener.onValueChanged(data);
             return;
         }
-        attachListener(lifecycleOwner, new OnListChangedListener<T>() {
+        final IdSubscriber<T> subscriber = new IdSubscriber<T>() {
             @Override
-            public void onItemInserted(int position, T data) {
-                if (data.getId().equals(documentId)) onValueChangedListener.onValueChanged(data);
+            void onPut(T data) {
+                onValueChangedListener.onValueChanged(data);
             }
 
             @Override
-            public void onItemChanged(int position, T data) {
-                if (data.getId().equals(documentId)) onValueChangedListener.onValueChanged(data);
+            void onRemove(T data) {
+                onValueChangedListener.onValueChanged(data);
             }
-
-            @Override
-            public void onItemRemoved(int position, T data) {
-                if (data.getId().equals(documentId)) onValueChangedListener.onValueChanged(data);
+        };
+        lifecycleOwner.getLifecycle().addObserver(new LifecycleObserver() {
+            @OnLifecycleEvent(Lifecycle.Event.ON_RESUME)
+            public void connectListener() {
+                subscribe(documentId, subscriber);
+                T document = get(documentId);
+                if (document != null) onValueChangedListener.onValueChanged(document);
             }
 
-            @Override
-            public void onDataSetChanged(ArrayList<T> list) {
-                Integer index = mapIdWithIndex.get(documentId);
-                if (index != null) {
-                    T document = list.get(index);
-                    if (document != null) onValueChangedListener.onValueChanged(document);
-                }
+            @OnLifecycleEvent(Lifecycle.Event.ON_PAUSE)
+            public void disconnectListener() {
+                unsubscribe(documentId, subscriber);
             }
         });
     }
 
+    /**
+     * setWaitTimeout change how long {@link DocumentsManager#waitGet(String)} waits
+     *
+     * @param waitTimeoutMillis timeout in milliseconds
+     */
+    public void setWaitTimeout(long waitTimeoutMillis) {
+        this.waitTimeoutMillis = waitTimeoutMillis;
+    }
+
     /**
      * waitGet wait until Document with documentId is added to {@link DocumentsManager#list}
-     * waitGet never return null and there are cases that waitGet never complete, use your own risk
+     * waitGet never return null, it fails after the wait timeout (10 seconds by default)
      *
      * @param id documentId
-     * @return
+     * @return Task of Document
      */
     public Task<T> waitGet(final String id) {
+        return waitGet(id, waitTimeoutMillis);
+    }
+
+    /**
+     * waitGet wait until Document with documentId is added to {@link DocumentsManager#list}
+     *
+     * @param id            documentId
+     * @param timeoutMillis Task fails after timeoutMillis if Document is still not added
+     * @return Task of Document
+     */
+    public Task<T> waitGet(final String id, final long timeoutMillis) {
         T data = get(id);
         if (data != null) {
             return TaskHelper.getCompletedTask(data);
         }
         final TaskCompletionSource<T> taskCompletionSource = new TaskCompletionSource<>();
-        final OnListChangedListener<T> onListChangedListener = new OnListChangedListener<T>() {
-            @Override
-            public void onItemInserted(int position, T data) {
-                if (data.getId().equals(id)) {
-                    removeOnListChangedListener(this);
-                    taskCompletionSource.setResult(data);
-                }
-            }
-
+        final IdSubscriber<T> subscriber = new IdSubscriber<T>() {
             @Override
-            public void onDataSetChanged(ArrayList<T> list) {
-                if (mapIdWithIndex.get(id) != null) {
-                    removeOnListChangedListener(this);
-                    taskCompletionSource.setResult(get(id));
-                }
+            void onPut(T data) {
+                unsubscribe(id, this);
+                if (timeout != null) timeout.cancel();
+                taskCompletionSource.trySetResult(data);
             }
         };
-        addOnListChangedListener(onListChangedListener);
-        new Handler().postDelayed(new Runnable() {
+        subscribe(id, subscriber);
+        subscriber.timeout = TimerWheel.getInstance().schedule(new Runnable() {
             @Override
             public void run() {
-                removeOnListChangedListener(onListChangedListener);
-                taskCompletionSource.setException(new RuntimeException("waitGet timeout! no response for 10 seconds"));
-                Log.d(TAG, "[TIMEOUT] waitGet timeout after 10 seconds without any response");
+                unsubscribe(id, subscriber);
+                taskCompletionSource.trySetException(new RuntimeException("waitGet timeout! no response for " + timeoutMillis + " ms"));
+                Log.d(TAG, "[TIMEOUT] waitGet timeout after " + timeoutMillis + " ms without any response");
             }
-        }, 10000);
+        }, timeoutMillis);
         return taskCompletionSource.getTask();
     }
 
+    private void subscribe(String id, IdSubscriber<T> subscriber) {
+        ArrayList<IdSubscriber<T>> subscribers = idSubscribers.get(id);
+        if (subscribers == null) {
+            subscribers = new ArrayList<>(1);
+            idSubscribers.put(id, subscribers);
+        }
+        subscribers.add(subscriber);
+    }
+
+    private void unsubscribe(String id, IdSubscriber<T> subscriber) {
+        ArrayList<IdSubscriber<T>> subscribers = idSubscribers.get(id);
+        if (subscribers == null) return;
+        subscribers.remove(subscriber);
+        if (subscribers.isEmpty()) idSubscribers.remove(id);
+    }
+
+    /**
+     * notifySubscribers notify subscribers of one documentId, in O(1) of the number of other subscribers
+     *
+     * @param data      put or removed Document
+     * @param isRemoved true if data is removed
+     */
+    protected void notifySubscribers(T data, boolean isRemoved) {
+        if (idSubscribers.isEmpty()) return;
+        ArrayList<IdSubscriber<T>> subscribers = idSubscribers.get(data.getId());
+        if (subscribers == null) return;
+        for (IdSubscriber<T> subscriber : new ArrayList<>(subscribers)) {
+            if (isRemoved) {
+                subscriber.onRemove(data);
+            } else {
+                subscriber.onPut(data);
+            }
+        }
+    }
+
     /**
      * query data to get
      * should only be called in baseDocumentsManager
@@ -293,7 +714,7 @@ public abstract class DocumentsManager<T extends Document> {
      */
     public Task<List<T>> queryGet(QueryCreator queryCreator) {
         Query query = queryCreator.create(ref);
-        return query.get().continueWith(new Continuation<QuerySnapshot, List<T>>() {
+        return continueWith(query.get(), new Continuation<QuerySnapshot, List<T>>() {
             @Override
             public List<T> then(@NonNull Task<QuerySnapshot> task) throws Exception {
                 if (task.isSuccessful() && task.getResult() != null) {
@@ -322,16 +743,29 @@ public abstract class DocumentsManager<T extends Document> {
     // LISTEN API
     @Nullable
     protected T listenNewDocument(DocumentReference ref) {
-        try {
-            T data = itemClass.newInstance();
-            data.withRef(ref).withClass(itemClass);
-            data.addDocumentsManager(this);
-            data.setListenerRegistration(1000, null);
-            return data;
-        } catch (IllegalAccessException | InstantiationException e) {
-            e.printStackTrace();
-            throw new RuntimeException("Failed to listenNewDocument: itemClass#newInstance throw exception");
-        }
+        T data = sharedDocuments.get(ref.getId());
+        if (data != null && !data.isRemoved()) return data;
+        // a shared Document that does not exist anymore is given back before listening again
+        if (data != null) releaseDocument(data);
+        // the same document listened by many managers is listened and decoded only once
+        data = DocumentRegistry.getInstance().acquire(itemClass, ref, executor);
+        sharedDocuments.put(ref.getId(), data);
+        data.addDocumentsManager(this);
+        return data;
+    }
+
+    /**
+     * create an empty Document managed by this manager, it is added to {@link DocumentsManager#list}
+     * when it receives its value
+     *
+     * @param ref DocumentReference of new Document
+     * @return new Document
+     */
+    protected T newDocument(DocumentReference ref) {
+        T data = Documents.newDocument(itemClass, ref);
+        data.setExecutor(executor);
+        data.addDocumentsManager(this);
+        return data;
     }
 
     // LIST API
@@ -344,24 +778,38 @@ public abstract class DocumentsManager<T extends Document> {
      */
     @CallSuper
     public void put(T data) {
+        long startTime = Metrics.start();
         String id = data.getId();
-        Integer index = mapIdWithIndex.get(id);
+        int index = items.indexOf(id);
 
-        if (index != null) {
+        if (index >= 0) {
+            T current = list.get(index);
+            // a new instance with the same fields does not change anything
+            if (current != data && !current.detectChanges(data)) return;
             update(index, data);
             onListChanged();
-            for (OnListChangedListener<T> onListChangedListener : onListChangedListeners) {
-                onListChangedListener.onItemChanged(index, data);
+            long dispatchStartTime = Metrics.start();
+            for (OnListChangedListener<T> onListChangedListener : new ArrayList<>(onListChangedListeners)) {
+                onListChangedListener.onItemChanged(index, current, current.getChangedFields());
             }
+            Metrics.dispatched(metricsName, onListChangedListeners.size(), dispatchStartTime);
+            notifySubscribers(current, false);
+            if (cache != null) cache.onPut(current);
         } else {
             add(id, data);
+            int position = items.indexOf(id);
             onListChanged();
+            long dispatchStartTime = Metrics.start();
             for (int i = 0; i < onListChangedListeners.size(); i++) {
                 OnListChangedListener<T> onListChangedListener = onListChangedListeners.get(i);
-                onListChangedListener.onItemInserted(list.size() - 1, data);
+                onListChangedListener.onItemInserted(position, data);
                 onListChangedListener.onListSizeChanged(list, list.size());
             }
+            Metrics.dispatched(metricsName, onListChangedListeners.size(), dispatchStartTime);
+            notifySubscribers(data, false);
+            trimCache();
         }
+        Metrics.put(metricsName, startTime);
     }
 
     /**
@@ -373,8 +821,53 @@ public abstract class DocumentsManager<T extends Document> {
      */
     @CallSuper
     public void add(String id, T data) {
-        list.add(data);
-        mapIdWithIndex.put(id, list.size() - 1);
+        items.insert(getInsertPosition(data), data);
+        if (cache != null) cache.onPut(data);
+        for (DocumentIndex<T, ?> index : indexes) {
+            index.onPut(data);
+        }
+    }
+
+    /**
+     * getInsertPosition
+     * decide where a new Document is inserted to {@link DocumentsManager#list}, default is the end of list
+     *
+     * @param data new Document to add
+     * @return position to insert
+     */
+    protected int getInsertPosition(T data) {
+        return list.size();
+    }
+
+    /**
+     * move a Document to another position in {@link DocumentsManager#list}
+     *
+     * @param id         documentId of Document
+     * @param toPosition new position of Document
+     */
+    protected void move(String id, int toPosition) {
+        int fromPosition = items.move(id, toPosition);
+        if (fromPosition < 0 || fromPosition == toPosition) return;
+        T data = list.get(toPosition);
+        for (OnListChangedListener<T> onListChangedListener : new ArrayList<>(onListChangedListeners)) {
+            onListChangedListener.onItemMoved(fromPosition, toPosition, data);
+        }
+    }
+
+    /**
+     * releaseDocument
+     * is called when a Document is removed from {@link DocumentsManager#list}
+     *
+     * @param data removed Document
+     */
+    @CallSuper
+    protected void releaseDocument(T data) {
+        data.removeDocumentsManager(this);
+        if (cache != null) cache.onRemove(data.getId());
+        for (DocumentIndex<T, ?> index : indexes) {
+            index.onRemove(data.getId());
+        }
+        if (sharedDocuments.remove(data.getId()) == data) DocumentRegistry.getInstance().release(data);
     }
 
     /**
@@ -386,49 +879,163 @@ public abstract class DocumentsManager<T extends Document> {
      */
     @CallSuper
     public void update(int index, T data) {
-        list.get(index).update(data);
+        T current = list.get(index);
+        // a Document updated in place is put again as itself, its keys may still have changed
+        if (current != data) {
+            current.update(data);
+            current.applyChanges(data);
+        }
+        for (DocumentIndex<T, ?> documentIndex : indexes) {
+            documentIndex.onPut(current);
+        }
     }
 
     @Nullable
     public T get(String id) {
-        Integer index = mapIdWithIndex.get(id);
-        if (index != null) {
-            return list.get(index);
+        T data = items.get(id);
+        if (cache != null) {
+            if (data != null) {
+                cache.onHit(id);
+            } else {
+                cache.onMiss();
+            }
         }
-        return null;
+        return data;
     }
 
     @Nullable
-    public T remove(T document){
-        int index = list.indexOf(document);
-        return remove(list.get(index));
+    public T remove(T document) {
+        return remove(document.getId());
     }
 
     @Nullable
     public T remove(String id) {
-        Integer index = mapIdWithIndex.get(id);
-        if (index != null) {
-            T data = list.get(index);
-            data.removeDocumentsManager(this);
-            list.remove(index.intValue());
-            mapIdWithIndex.remove(id);
-            for (int i = index; i < list.size(); i++) {
-                mapIdWithIndex.put(list.get(i).getId(), i);
-            }
+        long startTime = Metrics.start();
+        T data = items.get(id);
+        int index = items.remove(id);
+        if (index >= 0) {
+            releaseDocument(data);
             onListChanged();
+            long dispatchStartTime = Metrics.start();
             for (OnListChangedListener<T> onListChangedListener : onListChangedListeners) {
                 onListChangedListener.onItemRemoved(index, data);
                 onListChangedListener.onListSizeChanged(list, list.size());
             }
+            Metrics.dispatched(metricsName, onListChangedListeners.size(), dispatchStartTime);
+            notifySubscribers(data, true);
+            Metrics.remove(metricsName, startTime);
             return data;
         }
+        // a shared Document that never received a value is not in list, it is still given back
+        T shared = sharedDocuments.get(id);
+        if (shared != null) releaseDocument(shared);
         return null;
     }
 
+    /**
+     * applyChanges
+     * is called when a whole batch of Documents is added, updated or removed at once,
+     * every listener is notified once with range callbacks instead of once per Document
+     *
+     * @param puts       Documents to add or update
+     * @param removedIds documentIds of Documents to remove
+     */
+    @CallSuper
+    public void applyChanges(List<T> puts, Collection<String> removedIds) {
+        long startTime = Metrics.start();
+        ArrayList<ItemRange<T>> removedRanges = items.removeAll(removedIds);
+        for (ItemRange<T> range : removedRanges) {
+            for (T data : range.items) {
+                releaseDocument(data);
+            }
+        }
+
+        HashSet<String> insertedIds = new HashSet<>();
+        ArrayList<String> changedIds = new ArrayList<>();
+        for (T data : puts) {
+            String id = data.getId();
+            int index = items.indexOf(id);
+            if (index >= 0) {
+                T current = list.get(index);
+                if (current != data && !current.detectChanges(data)) continue;
+                update(index, data);
+                // Documents inserted in this batch are already covered by the inserted ranges
+                if (!insertedIds.contains(id)) changedIds.add(id);
+            } else {
+                add(id, data);
+                insertedIds.add(id);
+            }
+        }
+        if (removedRanges.isEmpty() && changedIds.isEmpty() && insertedIds.isEmpty()) return;
+
+        // positions are resolved after every insertion so that all ranges refer to the final list
+        ArrayList<ItemRange<T>> insertedRanges = items.rangesOf(insertedIds);
+        ArrayList<ItemRange<T>> changedRanges = items.rangesOf(changedIds);
+        boolean isSizeChanged = !removedRanges.isEmpty() || !insertedIds.isEmpty();
+        onListChanged();
+        long dispatchStartTime = Metrics.start();
+        for (OnListChangedListener<T> onListChangedListener : new ArrayList<>(onListChangedListeners)) {
+            // removed ranges are in descending order so every position is valid at the time it is dispatched
+            for (ItemRange<T> range : removedRanges) {
+                onListChangedListener.onItemRangeRemoved(range.positionStart, range.items);
+            }
+            // inserted ranges are in ascending order, each one lands after all items inserted before it
+            for (ItemRange<T> range : insertedRanges) {
+                onListChangedListener.onItemRangeInserted(range.positionStart, range.items);
+            }
+            for (ItemRange<T> range : changedRanges) {
+                onListChangedListener.onItemRangeChanged(range.positionStart, range.items);
+            }
+            if (isSizeChanged) {
+                onListChangedListener.onListSizeChanged(list, list.size());
+            }
+            onListChangedListener.onBatchApplied();
+        }
+        Metrics.dispatched(metricsName, onListChangedListeners.size(), dispatchStartTime);
+        if (!idSubscribers.isEmpty()) {
+            for (ItemRange<T> range : removedRanges) {
+                for (T data : range.items) {
+                    notifySubscribers(data, true);
+                }
+            }
+            for (ItemRange<T> range : insertedRanges) {
+                for (T data : range.items) {
+                    notifySubscribers(data, false);
+                }
+            }
+            for (ItemRange<T> range : changedRanges) {
+                for (T data : range.items) {
+                    notifySubscribers(data, false);
+                }
+            }
+        }
+        if (cache != null) {
+            for (String id : changedIds) {
+                cache.onPut(items.get(id));
+            }
+            trimCache();
+        }
+        Metrics.batchApplied(metricsName, puts.size(), removedIds.size(), startTime);
+    }
+
     public void clear() {
-        list.clear();
-        mapIdWithIndex.clear();
+        FrameScheduler scheduler = FrameScheduler.getDefault();
+        if (scheduler != null) scheduler.discard(this);
+        // pending misses are still read for their callers, but nothing read before clear is put
+        flushGets();
+        getGeneration++;
+        inFlightGets.clear();
+        items.clear();
+        if (cache != null) cache.onClear();
+        for (DocumentIndex<T, ?> index : indexes) {
+            index.onClear();
+        }
         onClear();
+        for (T data : sharedDocuments.values()) {
+            data.removeDocumentsManager(this);
+            DocumentRegistry.getInstance().release(data);
+        }
+        sharedDocuments.clear();
         for (OnListChangedListener<T> onListChangedListener : onListChangedListeners) {
             onListChangedListener.onDataSetChanged(list);
             onListChangedListener.onListSizeChanged(list, 0);
@@ -436,12 +1043,11 @@ public abstract class DocumentsManager<T extends Document> {
     }
 
     public boolean contains(String documentId) {
-        return mapIdWithIndex.get(documentId) != null;
+        return items.contains(documentId);
     }
 
     public int indexOf(String id) {
-        Integer index = mapIdWithIndex.get(id);
-        return index != null ? index : -1;
+        return items.indexOf(id);
     }
 
     public int indexOf(T document) {
@@ -464,60 +1070,145 @@ public abstract class DocumentsManager<T extends Document> {
         this.onListChangedListeners.remove(listener);
     }
 
+    /**
+     * getSnapshot
+     * immutable copy of {@link DocumentsManager#list}, every item is a frozen copy of its Document.
+     * While the snapshot is acquired by {@link DocumentsManager#acquireSnapshot()} a change copies only the changed
+     * Document and O(log n) nodes, otherwise every Document is copied. A returned snapshot never changes
+     * so it can be kept or shared by any number of consumers.
+     *
+     * @return PersistentList of frozen Documents, in order of list
+     */
+    @NonNull
+    public PersistentList<T> getSnapshot() {
+        if (snapshot != null) return snapshot;
+        return freezeAll(list);
+    }
+
+    /**
+     * acquireSnapshot keep the snapshot in step with list until {@link DocumentsManager#releaseSnapshot()} is called
+     * the same number of times
+     *
+     * @return current snapshot
+     */
+    @NonNull
+    public PersistentList<T> acquireSnapshot() {
+        if (snapshotConsumers++ == 0) {
+            snapshot = freezeAll(list);
+            // the keeper runs before other listeners so they read the snapshot of the current change
+            onListChangedListeners.add(0, snapshotKeeper);
+        }
+        return snapshot;
+    }
+
+    /**
+     * releaseSnapshot release a snapshot acquired by {@link DocumentsManager#acquireSnapshot()},
+     * the snapshot is no longer maintained once the last consumer releases it
+     */
+    public void releaseSnapshot() {
+        if (snapshotConsumers == 0) throw new RuntimeException("snapshot is not acquired");
+        if (--snapshotConsumers == 0) {
+            onListChangedListeners.remove(snapshotKeeper);
+            snapshot = null;
+        }
+    }
+
+    private T freeze(T data) {
+        return Documents.freeze(data);
+    }
+
+    private PersistentList<T> freezeAll(List<T> datas) {
+        ArrayList<T> frozen = new ArrayList<>(datas.size());
+        for (T data : datas) {
+            frozen.add(freeze(data));
+        }
+        return PersistentList.from(frozen);
+    }
+
+    /**
+     * publish changes of this manager as a Reactive Streams Publisher of deltas with backpressure
+     *
+     * @param conflation how changes are conflated while a subscriber has no demand
+     * @return DeltaPublisher, it listens to this manager while it has subscribers
+     */
+    @NonNull
+    public DeltaPublisher<T> publish(@NonNull DeltaPublisher.Conflation conflation) {
+        return new DeltaPublisher.ManagerPublisher<>(this, conflation);
+    }
+
+    /**
+     * attachSortedList keep sortedList filled with frozen copies from {@link DocumentsManager#getSnapshot()}
+     *
+     * @param lifecycleOwner sortedList is updated between ON_RESUME and ON_PAUSE
+     * @param sortedList     SortedList to fill
+     */
     public void attachSortedList(LifecycleOwner lifecycleOwner, final SortedList<T> sortedList) {
         final OnListChangedListener<T> listener = new OnListChangedListener<T>() {
+            // documentId -> frozen copy currently in sortedList
+            private final HashMap<String, T> added = new HashMap<>();
+
             @Override
             public void onItemInserted(int position, T data) {
-                try {
-                    T dumpData = Documents.dumpValue(itemClass, data);
-                    sortedList.add(dumpData);
-                } catch (InstantiationException | IllegalAccessException e) {
-                    e.printStackTrace();
-                }
+                T frozen = snapshot.get(position);
+                added.put(data.getId(), frozen);
+                sortedList.add(frozen);
             }
 
             @Override
             public void onItemChanged(int position, T data) {
-                try {
-                    T dumpData = Documents.dumpValue(itemClass, data);
-                    sortedList.add(dumpData);
-                } catch (InstantiationException | IllegalAccessException e) {
-                    e.printStackTrace();
+                T frozen = snapshot.get(position);
+                T current = added.put(data.getId(), frozen);
+                int index = current != null ? sortedList.indexOf(current) : SortedList.INVALID_POSITION;
+                if (index != SortedList.INVALID_POSITION) {
+                    sortedList.updateItemAt(index, frozen);
+                } else {
+                    sortedList.add(frozen);
                 }
             }
 
             @Override
             public void onItemRemoved(int position, T data) {
-                try {
-                    T dumpData = Documents.dumpValue(itemClass, data);
-                    sortedList.remove(dumpData);
-                } catch (InstantiationException | IllegalAccessException e) {
-                    e.printStackTrace();
-                }
+                T current = added.remove(data.getId());
+                if (current != null) sortedList.remove(current);
             }
 
             @Override
-            public void onDataSetChanged(ArrayList<T> list) {
-                if (list.size() == 0) sortedList.clear();
-                try {
-                    sortedList.addAll(Documents.dumpArrayValue(itemClass, list));
-                } catch (IllegalAccessException | InstantiationException e) {
-                    e.printStackTrace();
-                }
+            public void onItemMoved(int fromPosition, int toPosition, T data) {
+                // sortedList keeps its own order
             }
-        };
-        lifecycleOwner.getLifecycle().addObserver(new LifecycleObserver() {
-            @OnLifecycleEvent(Lifecycle.Event.ON_RESUME)
-            public void connectListener() {
-                addOnListChangedListener(listener);
-                listener.onDataSetChanged(list);
+
+            @Override
+            public void onItemRangeInserted(int positionStart, List<T> items) {
+                sortedList.beginBatchedUpdates();
+                super.onItemRangeInserted(positionStart, items);
+                sortedList.endBatchedUpdates();
             }
 
-            @OnLifecycleEvent(Lifecycle.Event.ON_PAUSE)
-            public void disconnectListener() {
-                removeOnListChangedListener(listener);
+            @Override
+            public void onItemRangeChanged(int positionStart, List<T> items) {
+                sortedList.beginBatchedUpdates();
+                super.onItemRangeChanged(positionStart, items);
+                sortedList.endBatchedUpdates();
             }
-        });
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, List<T> items) {
+                sortedList.beginBatchedUpdates();
+                super.onItemRangeRemoved(positionStart, items);
+                sortedList.endBatchedUpdates();
+            }
+
+            @Override
+            public void onDataSetChanged(ArrayList<T> list) {
+                PersistentList<T> frozenList = getSnapshot();
+                added.clear();
+                for (T frozen : frozenList) {
+                    added.put(frozen.getId(), frozen);
+                }
+                sortedList.replaceAll(frozenList);
+            }
+        };
+        attachSnapshotListener(lifecycleOwner, listener);
     }
 
     public void attachAdapter(LifecycleOwner lifecycleOwner, final RecyclerView.Adapter adapter) {
@@ -528,8 +1219,9 @@ public abstract class DocumentsManager<T extends Document> {
             }
 
             @Override
-            public void onItemChanged(int position, T data) {
-                adapter.notifyItemChanged(position);
+            public void onItemChanged(int position, T data, @Nullable Set<String> changedFields) {
+                // changed field names are passed as payload so that a ViewHolder can rebind only them
+                adapter.notifyItemChanged(position, changedFields);
             }
 
             @Override
@@ -537,6 +1229,34 @@ public abstract class DocumentsManager<T extends Document> {
                 adapter.notifyItemRemoved(position);
             }
 
+            @Override
+            public void onItemRangeInserted(int positionStart, List<T> items) {
+                adapter.notifyItemRangeInserted(positionStart, items.size());
+            }
+
+            @Override
+            public void onItemRangeChanged(int positionStart, List<T> items) {
+                // notify consecutive items with the same changed fields together
+                int start = 0;
+                for (int i = 1; i <= items.size(); i++) {
+                    Set<String> changedFields = items.get(start).getChangedFields();
+                    if (i < items.size() && Objects.equals(changedFields, items.get(i).getChangedFields()))
+                        continue;
+                    adapter.notifyItemRangeChanged(positionStart + start, i - start, changedFields);
+                    start = i;
+                }
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, List<T> items) {
+                adapter.notifyItemRangeRemoved(positionStart, items.size());
+            }
+
+            @Override
+            public void onItemMoved(int fromPosition, int toPosition, T data) {
+                adapter.notifyItemMoved(fromPosition, toPosition);
+            }
+
             @Override
             public void onDataSetChanged(ArrayList<T> datas) {
                 adapter.notifyDataSetChanged();
@@ -545,6 +1265,97 @@ public abstract class DocumentsManager<T extends Document> {
         attachListener(lifecycleOwner, listener);
     }
 
+    /**
+     * attachDiffedAdapter bind adapter to an {@link AsyncDocumentsDiffer} of this manager,
+     * changes made during one main loop turn are diffed together on a background thread
+     * and adapter receives only the minimal range notifications, also when lifecycleOwner resumes
+     *
+     * @param lifecycleOwner changes are submitted between ON_RESUME and ON_PAUSE
+     * @param adapter        adapter that reads items from the returned differ
+     * @return AsyncDocumentsDiffer holding the list shown by adapter
+     */
+    public AsyncDocumentsDiffer<T> attachDiffedAdapter(LifecycleOwner lifecycleOwner, RecyclerView.Adapter adapter) {
+        final AsyncDocumentsDiffer<T> differ = new AsyncDocumentsDiffer<>(adapter);
+        final OnListChangedListener<T> listener = new OnListChangedListener<T>() {
+            private boolean isSubmitScheduled = false;
+            private final Runnable scheduledSubmit = new Runnable() {
+                @Override
+                public void run() {
+                    isSubmitScheduled = false;
+                    // the latest snapshot covers every change of the turn
+                    differ.submitList(getSnapshot());
+                }
+            };
+
+            private void scheduleSubmit() {
+                if (isSubmitScheduled) return;
+                isSubmitScheduled = true;
+                MainThread.post(scheduledSubmit);
+            }
+
+            @Override
+            public void onItemInserted(int position, T data) {
+                scheduleSubmit();
+            }
+
+            @Override
+            public void onItemChanged(int position, T data) {
+                scheduleSubmit();
+            }
+
+            @Override
+            public void onItemRemoved(int position, T data) {
+                scheduleSubmit();
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, List<T> items) {
+                scheduleSubmit();
+            }
+
+            @Override
+            public void onItemRangeChanged(int positionStart, List<T> items) {
+                scheduleSubmit();
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, List<T> items) {
+                scheduleSubmit();
+            }
+
+            @Override
+            public void onItemMoved(int fromPosition, int toPosition, T data) {
+                scheduleSubmit();
+            }
+
+            @Override
+            public void onDataSetChanged(ArrayList<T> list) {
+                scheduleSubmit();
+            }
+        };
+        attachSnapshotListener(lifecycleOwner, listener);
+        return differ;
+    }
+
+    /**
+     * attachSnapshotListener like {@link DocumentsManager#attachListener}, the snapshot is acquired while listener is connected
+     */
+    private void attachSnapshotListener(LifecycleOwner lifecycleOwner, @NonNull final OnListChangedListener<T> onListChangedListener) {
+        lifecycleOwner.getLifecycle().addObserver(new LifecycleObserver() {
+            @OnLifecycleEvent(Lifecycle.Event.ON_RESUME)
+            public void connectListener() {
+                acquireSnapshot();
+                addOnListChangedListener(onListChangedListener);
+            }
+
+            @OnLifecycleEvent(Lifecycle.Event.ON_PAUSE)
+            public void disconnectListener() {
+                removeOnListChangedListener(onListChangedListener);
+                releaseSnapshot();
+            }
+        });
+    }
+
     public void attachListener(LifecycleOwner lifecycleOwner, @NonNull final OnListChangedListener<T> onListChangedListener) {
         lifecycleOwner.getLifecycle().addObserver(new LifecycleObserver() {
             @OnLifecycleEvent(Lifecycle.Event.ON_RESUME)
@@ -566,13 +1377,8 @@ public abstract class DocumentsManager<T extends Document> {
             onInitCompleteListener.onComplete(list);
             return;
         }
-        this.onInitCompleteListeners.add(new OnInitCompleteListener<T>() {
-            @Override
-            public void onComplete(ArrayList list) {
-                onInitCompleteListener.onComplete(list);
-                removeOnInitCompleteListener(onInitCompleteListener);
-            }
-        });
+        // listeners are removed by onListChanged once they are called
+        this.onInitCompleteListeners.add(onInitCompleteListener);
     }
 
     public void removeOnInitCompleteListener(OnInitCompleteListener<T> onInitCompleteListener) {
@@ -585,10 +1391,12 @@ public abstract class DocumentsManager<T extends Document> {
     }
 
     protected void onListChanged() {
-        if (!isListComplete()) return;
-        for (OnInitCompleteListener<T> onInitCompleteListener : onInitCompleteListeners) {
+        if (!isListComplete() || onInitCompleteListeners.isEmpty()) return;
+        // a listener may add or remove listeners while it is called
+        ArrayList<OnInitCompleteListener<T>> listeners = new ArrayList<>(onInitCompleteListeners);
+        onInitCompleteListeners.clear();
+        for (OnInitCompleteListener<T> onInitCompleteListener : listeners) {
             onInitCompleteListener.onComplete(list);
-            removeOnInitCompleteListener(onInitCompleteListener);
         }
     }
 
@@ -602,6 +1410,20 @@ public abstract class DocumentsManager<T extends Document> {
         void onGot(T data);
     }
 
+    /**
+     * IdSubscriber is notified of the Document with one documentId
+     */
+    abstract static class IdSubscriber<T extends Document> {
+        @Nullable
+        TimerWheel.Timeout timeout;
+
+        void onPut(T data) {
+        }
+
+        void onRemove(T data) {
+        }
+    }
+
     public interface QueryCreator {
         Query create(CollectionReference collectionReference);
     }
@@ -617,6 +1439,18 @@ public abstract class DocumentsManager<T extends Document> {
         public void onItemChanged(int position, T data) {
         }
 
+        /**
+         * onItemChanged with names of changed fields,
+         * by default it calls {@link OnListChangedListener#onItemChanged(int, Document)}
+         *
+         * @param position      position of changed item
+         * @param data          changed item
+         * @param changedFields names of changed fields, null if unknown
+         */
+        public void onItemChanged(int position, T data, @Nullable Set<String> changedFields) {
+            onItemChanged(position, data);
+        }
+
         public void onItemRemoved(int position, T data) {
         }
 
@@ -625,5 +1459,69 @@ public abstract class DocumentsManager<T extends Document> {
 
         public void onListSizeChanged(ArrayList<T> list, int size) {
         }
+
+        /**
+         * onItemRangeInserted
+         * is called once for consecutive Documents inserted in a batch,
+         * by default it calls {@link OnListChangedListener#onItemInserted(int, Document)} for each item
+         *
+         * @param positionStart position of the first inserted item
+         * @param items         inserted items
+         */
+        public void onItemRangeInserted(int positionStart, List<T> items) {
+            for (int i = 0; i < items.size(); i++) {
+                onItemInserted(positionStart + i, items.get(i));
+            }
+        }
+
+        /**
+         * onItemRangeChanged
+         * is called once for consecutive Documents changed in a batch,
+         * by default it calls {@link OnListChangedListener#onItemChanged(int, Document, Set)} for each item
+         *
+         * @param positionStart position of the first changed item
+         * @param items         changed items
+         */
+        public void onItemRangeChanged(int positionStart, List<T> items) {
+            for (int i = 0; i < items.size(); i++) {
+                T data = items.get(i);
+                onItemChanged(positionStart + i, data, data.getChangedFields());
+            }
+        }
+
+        /**
+         * onItemRangeRemoved
+         * is called once for consecutive Documents removed in a batch,
+         * by default it calls {@link OnListChangedListener#onItemRemoved(int, Document)} for each item
+         *
+         * @param positionStart position of the first removed item
+         * @param items         removed items
+         */
+        public void onItemRangeRemoved(int positionStart, List<T> items) {
+            for (int i = 0; i < items.size(); i++) {
+                onItemRemoved(positionStart, items.get(i));
+            }
+        }
+
+        /**
+         * onItemMoved
+         * is called when a Document is moved inside the list,
+         * by default it is treated as a removal followed by an insertion
+         *
+         * @param fromPosition previous position of the item
+         * @param toPosition   new position of the item
+         * @param data         moved item
+         */
+        public void onItemMoved(int fromPosition, int toPosition, T data) {
+            onItemRemoved(fromPosition, data);
+            onItemInserted(toPosition, data);
+        }
+
+        /**
+         * onBatchApplied
+         * is called after every range callback of one batch, to handle the batch as a whole
+         */
+        public void onBatchApplied() {
+        }
     }
 }
@@ -0,0 +1,122 @@
+package cf.bautroixa.firestoreodm;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.Continuation;
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.EventListener;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * FirestoreDocumentStore listens with Firestore snapshot listeners
+ */
+public class FirestoreDocumentStore implements DocumentStore {
+    @NonNull
+    @Override
+    public ListenerRegistration listenDocument(@NonNull DocumentReference ref, @Nullable Executor executor, @NonNull final Listener listener) {
+        EventListener<DocumentSnapshot> eventListener = new EventListener<DocumentSnapshot>() {
+            @Override
+            public void onEvent(@Nullable DocumentSnapshot documentSnapshot, @Nullable FirebaseFirestoreException e) {
+                if (e != null) {
+                    listener.onError(e);
+                    return;
+                }
+                if (documentSnapshot == null) return;
+                listener.onSnapshot(Collections.<StoredDocument>singletonList(new SnapshotDocument(documentSnapshot, documentSnapshot.exists())));
+            }
+        };
+        return executor != null ? ref.addSnapshotListener(executor, eventListener) : ref.addSnapshotListener(eventListener);
+    }
+
+    @NonNull
+    @Override
+    public ListenerRegistration listenQuery(@NonNull CollectionReference collection, @NonNull Query query, @Nullable Executor executor, @NonNull final Listener listener) {
+        EventListener<QuerySnapshot> eventListener = new EventListener<QuerySnapshot>() {
+            @Override
+            public void onEvent(@Nullable QuerySnapshot querySnapshot, @Nullable FirebaseFirestoreException e) {
+                if (e != null) {
+                    listener.onError(e);
+                    return;
+                }
+                if (querySnapshot == null) return;
+                List<DocumentChange> documentChanges = querySnapshot.getDocumentChanges();
+                ArrayList<StoredDocument> changes = new ArrayList<>(documentChanges.size());
+                for (DocumentChange documentChange : documentChanges) {
+                    changes.add(new SnapshotDocument(documentChange.getDocument(), documentChange.getType() != DocumentChange.Type.REMOVED));
+                }
+                listener.onSnapshot(changes);
+            }
+        };
+        return executor != null ? query.addSnapshotListener(executor, eventListener) : query.addSnapshotListener(eventListener);
+    }
+
+    @NonNull
+    @Override
+    public Task<List<StoredDocument>> getDocuments(@NonNull CollectionReference collection, @NonNull List<String> ids) {
+        if (ids.size() == 1) {
+            return collection.document(ids.get(0)).get().continueWith(new Continuation<DocumentSnapshot, List<StoredDocument>>() {
+                @Override
+                public List<StoredDocument> then(@NonNull Task<DocumentSnapshot> task) throws Exception {
+                    if (!task.isSuccessful()) throw task.getException();
+                    DocumentSnapshot snapshot = task.getResult();
+                    ArrayList<StoredDocument> documents = new ArrayList<>(1);
+                    if (snapshot != null && snapshot.exists()) documents.add(new SnapshotDocument(snapshot, true));
+                    return documents;
+                }
+            });
+        }
+        return collection.whereIn(FieldPath.documentId(), ids).get().continueWith(new Continuation<QuerySnapshot, List<StoredDocument>>() {
+            @Override
+            public List<StoredDocument> then(@NonNull Task<QuerySnapshot> task) throws Exception {
+                if (!task.isSuccessful()) throw task.getException();
+                ArrayList<StoredDocument> documents = new ArrayList<>();
+                if (task.getResult() == null) return documents;
+                for (DocumentSnapshot snapshot : task.getResult().getDocuments()) {
+                    documents.add(new SnapshotDocument(snapshot, true));
+                }
+                return documents;
+            }
+        });
+    }
+
+    private static class SnapshotDocument implements StoredDocument {
+        private final DocumentSnapshot documentSnapshot;
+        private final boolean exists;
+
+        SnapshotDocument(DocumentSnapshot documentSnapshot, boolean exists) {
+            this.documentSnapshot = documentSnapshot;
+            this.exists = exists;
+        }
+
+        @NonNull
+        @Override
+        public DocumentReference getReference() {
+            return documentSnapshot.getReference();
+        }
+
+        @Override
+        public boolean exists() {
+            return exists;
+        }
+
+        @NonNull
+        @Override
+        public <T extends Document> T toDocument(@NonNull Class<T> klass) {
+            return Document.newInstance(klass, documentSnapshot);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package cf.bautroixa.firestoreodm;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * FirestoreModel mark a {@link Document} subclass to generate its {@link DocumentMapper} at compile time
+ * add firestoreodm-compiler as annotationProcessor to your module to use it
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface FirestoreModel {
+}
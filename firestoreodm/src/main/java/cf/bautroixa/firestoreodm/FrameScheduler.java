@@ -0,0 +1,163 @@
+package cf.bautroixa.firestoreodm;
+
+import android.view.Choreographer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * FrameScheduler queue snapshot changes of every Document and CollectionManager and apply them once per display frame
+ * <p>
+ * repeated values of a Document and repeated changes of a documentId in a manager are merged, so listeners run
+ * at most once per frame for each item and a burst of snapshots causes one layout pass instead of many.
+ * The first value of a Document and the first snapshot of a manager are applied at once so that
+ * init listeners are not delayed. It is opt-in with {@link FrameScheduler#setDefault(FrameScheduler)}
+ * and must be used on main thread.
+ */
+public class FrameScheduler {
+    @Nullable
+    private static FrameScheduler defaultScheduler;
+    // Documents compare equal by reference, pending values are kept by instance
+    private IdentityHashMap<Document, PendingValue> pendingValues = new IdentityHashMap<>();
+    private ArrayList<Document> pendingDocuments = new ArrayList<>();
+    private LinkedHashMap<DocumentsManager<?>, PendingChanges<?>> pendingChanges = new LinkedHashMap<>();
+    private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            isFrameScheduled = false;
+            flush();
+        }
+    };
+    private boolean isFrameScheduled = false;
+
+    @Nullable
+    public static FrameScheduler getDefault() {
+        return defaultScheduler;
+    }
+
+    /**
+     * setDefault apply snapshot changes once per frame
+     *
+     * @param scheduler FrameScheduler, null to apply every snapshot at once
+     */
+    public static void setDefault(@Nullable FrameScheduler scheduler) {
+        if (defaultScheduler != null && defaultScheduler != scheduler) defaultScheduler.flush();
+        defaultScheduler = scheduler;
+    }
+
+    /**
+     * scheduleValue apply newValue to document at the next frame, replacing a value still pending
+     *
+     * @param document Document to update
+     * @param newValue new value, null if Document does not exist anymore
+     * @param version  listener version of document, the value is dropped if document listens again before the frame
+     */
+    void scheduleValue(Document document, @Nullable Document newValue, int version) {
+        PendingValue old = pendingValues.put(document, new PendingValue(newValue, version));
+        if (old == null) pendingDocuments.add(document);
+        scheduleFrame();
+    }
+
+    /**
+     * scheduleChanges apply a batch of changes to manager at the next frame, merged with its pending changes
+     *
+     * @param manager    DocumentsManager to change
+     * @param puts       Documents to add or update
+     * @param removedIds documentIds to remove
+     */
+    @SuppressWarnings("unchecked")
+    <T extends Document> void scheduleChanges(DocumentsManager<T> manager, List<T> puts, Collection<String> removedIds) {
+        PendingChanges<T> changes = (PendingChanges<T>) pendingChanges.get(manager);
+        if (changes == null) {
+            changes = new PendingChanges<>(manager);
+            pendingChanges.put(manager, changes);
+        }
+        for (String id : removedIds) {
+            changes.puts.remove(id);
+            changes.removedIds.add(id);
+        }
+        for (T data : puts) {
+            // a Document removed and added again within a frame is only updated
+            changes.removedIds.remove(data.getId());
+            changes.puts.put(data.getId(), data);
+        }
+        scheduleFrame();
+    }
+
+    /**
+     * discard drop pending changes of manager, when it is cleared
+     */
+    void discard(DocumentsManager<?> manager) {
+        pendingChanges.remove(manager);
+    }
+
+    /**
+     * @return number of Documents and managers with pending changes
+     */
+    public int getPendingCount() {
+        return pendingDocuments.size() + pendingChanges.size();
+    }
+
+    /**
+     * flush apply every pending change now
+     */
+    public void flush() {
+        if (isFrameScheduled) {
+            Choreographer.getInstance().removeFrameCallback(frameCallback);
+            isFrameScheduled = false;
+        }
+        // changes scheduled by listeners during the flush wait for the next frame
+        IdentityHashMap<Document, PendingValue> values = pendingValues;
+        ArrayList<Document> documents = pendingDocuments;
+        LinkedHashMap<DocumentsManager<?>, PendingChanges<?>> changes = pendingChanges;
+        pendingValues = new IdentityHashMap<>();
+        pendingDocuments = new ArrayList<>();
+        pendingChanges = new LinkedHashMap<>();
+        for (Document document : documents) {
+            PendingValue value = values.get(document);
+            document.applyScheduledValue(value.newValue, value.version);
+        }
+        for (Map.Entry<DocumentsManager<?>, PendingChanges<?>> entry : changes.entrySet()) {
+            entry.getValue().apply();
+        }
+    }
+
+    private void scheduleFrame() {
+        if (isFrameScheduled) return;
+        isFrameScheduled = true;
+        Choreographer.getInstance().postFrameCallback(frameCallback);
+    }
+
+    private static class PendingValue {
+        @Nullable
+        final Document newValue;
+        final int version;
+
+        PendingValue(@Nullable Document newValue, int version) {
+            this.newValue = newValue;
+            this.version = version;
+        }
+    }
+
+    private static class PendingChanges<T extends Document> {
+        final DocumentsManager<T> manager;
+        final LinkedHashMap<String, T> puts = new LinkedHashMap<>();
+        final LinkedHashSet<String> removedIds = new LinkedHashSet<>();
+
+        PendingChanges(@NonNull DocumentsManager<T> manager) {
+            this.manager = manager;
+        }
+
+        void apply() {
+            manager.applyChanges(new ArrayList<>(puts.values()), removedIds);
+        }
+    }
+}
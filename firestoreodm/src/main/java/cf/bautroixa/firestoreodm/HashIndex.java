@@ -0,0 +1,29 @@
+package cf.bautroixa.firestoreodm;
+
+import androidx.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * HashIndex index Documents by key for equality lookups in O(1)
+ *
+ * @param <T> Document type
+ * @param <K> key type, with equals and hashCode
+ */
+public class HashIndex<T extends Document, K> extends DocumentIndex<T, K> {
+    private final HashMap<K, LinkedHashMap<String, T>> entries = new HashMap<>();
+
+    /**
+     * @param extractor extract key of each Document
+     */
+    public HashIndex(@NonNull FieldExtractor<T, K> extractor) {
+        super(extractor);
+    }
+
+    @Override
+    Map<K, LinkedHashMap<String, T>> getEntries() {
+        return entries;
+    }
+}
@@ -0,0 +1,452 @@
+package cf.bautroixa.firestoreodm;
+
+import android.os.Handler;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * InMemoryDocumentStore keeps documents in memory and produces snapshots without network,
+ * for load, churn and failure testing of managers
+ * <p>
+ * a query listener receives every document of its collection, filters, orders and limits
+ * of the query are not evaluated. Reads of {@link DocumentStore#getDocuments} fail and are delayed
+ * like new listeners. Documents are decoded by their generated {@link DocumentMapper},
+ * so listened classes must be annotated with {@link FirestoreModel}.
+ * Install it with {@link DocumentStores#set} before managers start listening.
+ * <p>
+ * delayed deliveries and churn run on a background thread, or on a Handler given to the constructor:
+ * with a Handler of a paused main Looper a test drives the store by advancing the clock of the Looper only.
+ */
+public class InMemoryDocumentStore implements DocumentStore {
+    private final HashMap<String, LinkedHashMap<String, Entry>> collections = new HashMap<>();
+    private final HashMap<String, ArrayList<Listen>> documentListens = new HashMap<>();
+    private final HashMap<String, ArrayList<Listen>> queryListens = new HashMap<>();
+    // delays and churn run on handler if there is one, otherwise on scheduler
+    @Nullable
+    private final Handler handler;
+    @Nullable
+    private final ScheduledExecutorService scheduler;
+    private volatile boolean isShutdown = false;
+    private final Random random = new Random();
+    private volatile long latencyMillis = 0;
+    private volatile double failureRate = 0;
+    private int pendingFailures = 0;
+    private long deliveredSnapshots = 0;
+
+    public InMemoryDocumentStore() {
+        this.handler = null;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    /**
+     * construct InMemoryDocumentStore whose delayed deliveries and churn are posted to handler
+     *
+     * @param handler Handler to run delays and churn on, for example of the main Looper
+     */
+    public InMemoryDocumentStore(@NonNull Handler handler) {
+        this.handler = handler;
+        this.scheduler = null;
+    }
+
+    /**
+     * setLatency delay every snapshot and error by latencyMillis
+     */
+    public void setLatency(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * setFailureRate make new listeners and reads fail with probability failureRate
+     *
+     * @param failureRate between 0 and 1
+     */
+    public void setFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    /**
+     * failNextListens make the next count new listeners or reads fail
+     */
+    public synchronized void failNextListens(int count) {
+        pendingFailures += count;
+    }
+
+    /**
+     * failActiveListeners stop every active listener with an UNAVAILABLE error, like a dropped connection
+     */
+    public synchronized void failActiveListeners() {
+        for (Listen listen : activeListens()) {
+            fail(listen);
+        }
+    }
+
+    /**
+     * set create or replace a document, listeners of it and of its collection are notified
+     *
+     * @param ref  DocumentReference
+     * @param data fields of document
+     */
+    public synchronized void set(@NonNull DocumentReference ref, @NonNull Map<String, Object> data) {
+        Entry entry = new Entry(ref, new HashMap<>(data));
+        getCollection(ref.getParent().getPath()).put(ref.getId(), entry);
+        notifyListens(entry);
+    }
+
+    /**
+     * delete a document, listeners of it and of its collection are notified
+     *
+     * @param ref DocumentReference
+     */
+    public synchronized void delete(@NonNull DocumentReference ref) {
+        LinkedHashMap<String, Entry> collection = collections.get(ref.getParent().getPath());
+        if (collection == null || collection.remove(ref.getId()) == null) return;
+        notifyListens(new Entry(ref, null));
+    }
+
+    @Nullable
+    public synchronized Map<String, Object> get(@NonNull DocumentReference ref) {
+        LinkedHashMap<String, Entry> collection = collections.get(ref.getParent().getPath());
+        Entry entry = collection != null ? collection.get(ref.getId()) : null;
+        return entry != null ? Collections.unmodifiableMap(entry.data) : null;
+    }
+
+    /**
+     * @return number of listeners that are not removed yet, to find listener leaks
+     */
+    public synchronized int getActiveListenerCount() {
+        return activeListens().size();
+    }
+
+    public synchronized long getDeliveredSnapshotCount() {
+        return deliveredSnapshots;
+    }
+
+    /**
+     * startChurn keep writing random documents of collection at a fixed rate until the returned Churn is stopped
+     *
+     * @param collection        collection to write to
+     * @param documentCount     documents are named 0 until documentCount - 1
+     * @param changesPerSecond  number of writes per second
+     * @param deleteProbability probability that a write deletes the document instead of setting it
+     * @param generator         create fields of each written document
+     * @return Churn to stop writing
+     */
+    @NonNull
+    public Churn startChurn(@NonNull final CollectionReference collection, final int documentCount, double changesPerSecond,
+                            final double deleteProbability, @NonNull final DataGenerator generator) {
+        final Runnable write = new Runnable() {
+            private int sequence = 0;
+
+            @Override
+            public void run() {
+                DocumentReference ref = collection.document(String.valueOf(random.nextInt(documentCount)));
+                if (random.nextDouble() < deleteProbability) {
+                    delete(ref);
+                } else {
+                    set(ref, generator.generate(ref.getId(), sequence++));
+                }
+            }
+        };
+        if (scheduler != null) {
+            long periodNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / changesPerSecond));
+            return new Churn(scheduler.scheduleAtFixedRate(write, 0, periodNanos, TimeUnit.NANOSECONDS));
+        }
+        // a Handler ticks at most once per millisecond, faster churns write several documents per tick
+        final long periodMillis = Math.max(1, (long) (1000 / changesPerSecond));
+        final int writesPerTick = (int) Math.max(1, Math.round(changesPerSecond * periodMillis / 1000));
+        final Churn churn = new Churn(null);
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (churn.isStopped || isShutdown) return;
+                for (int i = 0; i < writesPerTick; i++) {
+                    write.run();
+                }
+                handler.postDelayed(this, periodMillis);
+            }
+        });
+        return churn;
+    }
+
+    /**
+     * shutdown stop churns and delayed deliveries
+     */
+    public void shutdown() {
+        isShutdown = true;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        } else {
+            handler.removeCallbacksAndMessages(null);
+        }
+    }
+
+    @NonNull
+    @Override
+    public synchronized ListenerRegistration listenDocument(@NonNull DocumentReference ref, @Nullable Executor executor, @NonNull Listener listener) {
+        Listen listen = new Listen(ref.getPath(), executor, listener, documentListens);
+        if (shouldFail()) {
+            fail(listen);
+            return listen;
+        }
+        getListens(documentListens, ref.getPath()).add(listen);
+        LinkedHashMap<String, Entry> collection = collections.get(ref.getParent().getPath());
+        Entry entry = collection != null ? collection.get(ref.getId()) : null;
+        deliver(listen, Collections.<StoredDocument>singletonList(entry != null ? entry : new Entry(ref, null)));
+        return listen;
+    }
+
+    @NonNull
+    @Override
+    public synchronized ListenerRegistration listenQuery(@NonNull CollectionReference collection, @NonNull Query query, @Nullable Executor executor, @NonNull Listener listener) {
+        Listen listen = new Listen(collection.getPath(), executor, listener, queryListens);
+        if (shouldFail()) {
+            fail(listen);
+            return listen;
+        }
+        getListens(queryListens, collection.getPath()).add(listen);
+        deliver(listen, new ArrayList<StoredDocument>(getCollection(collection.getPath()).values()));
+        return listen;
+    }
+
+    @NonNull
+    @Override
+    public synchronized Task<List<StoredDocument>> getDocuments(@NonNull CollectionReference collection, @NonNull List<String> ids) {
+        final TaskCompletionSource<List<StoredDocument>> source = new TaskCompletionSource<>();
+        Runnable complete;
+        if (shouldFail()) {
+            complete = new Runnable() {
+                @Override
+                public void run() {
+                    source.trySetException(new FirebaseFirestoreException("injected failure", FirebaseFirestoreException.Code.UNAVAILABLE));
+                }
+            };
+        } else {
+            LinkedHashMap<String, Entry> entries = getCollection(collection.getPath());
+            final ArrayList<StoredDocument> documents = new ArrayList<>(ids.size());
+            for (String id : ids) {
+                Entry entry = entries.get(id);
+                if (entry != null) documents.add(entry);
+            }
+            complete = new Runnable() {
+                @Override
+                public void run() {
+                    source.trySetResult(documents);
+                }
+            };
+        }
+        schedule(complete, latencyMillis);
+        return source.getTask();
+    }
+
+    private boolean shouldFail() {
+        if (pendingFailures > 0) {
+            pendingFailures--;
+            return true;
+        }
+        return failureRate > 0 && random.nextDouble() < failureRate;
+    }
+
+    private void notifyListens(Entry entry) {
+        List<StoredDocument> changes = Collections.<StoredDocument>singletonList(entry);
+        ArrayList<Listen> listens = documentListens.get(entry.ref.getPath());
+        if (listens != null) {
+            for (Listen listen : new ArrayList<>(listens)) {
+                deliver(listen, changes);
+            }
+        }
+        listens = queryListens.get(entry.ref.getParent().getPath());
+        if (listens != null) {
+            for (Listen listen : new ArrayList<>(listens)) {
+                deliver(listen, changes);
+            }
+        }
+    }
+
+    private void deliver(final Listen listen, final List<StoredDocument> changes) {
+        deliveredSnapshots++;
+        dispatch(listen, new Runnable() {
+            @Override
+            public void run() {
+                if (!listen.isRemoved) listen.listener.onSnapshot(changes);
+            }
+        });
+    }
+
+    private void fail(final Listen listen) {
+        listen.unregister();
+        dispatch(listen, new Runnable() {
+            @Override
+            public void run() {
+                listen.listener.onError(new FirebaseFirestoreException("injected failure", FirebaseFirestoreException.Code.UNAVAILABLE));
+            }
+        });
+    }
+
+    private void dispatch(final Listen listen, final Runnable runnable) {
+        final Runnable onTarget = new Runnable() {
+            @Override
+            public void run() {
+                if (listen.executor != null) {
+                    listen.executor.execute(runnable);
+                } else {
+                    MainThread.post(runnable);
+                }
+            }
+        };
+        schedule(onTarget, latencyMillis);
+    }
+
+    /**
+     * schedule run runnable after delayMillis on handler or scheduler, or now if there is no delay
+     */
+    private void schedule(final Runnable runnable, long delayMillis) {
+        if (delayMillis <= 0) {
+            runnable.run();
+        } else if (scheduler != null) {
+            scheduler.schedule(runnable, delayMillis, TimeUnit.MILLISECONDS);
+        } else {
+            handler.postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    if (!isShutdown) runnable.run();
+                }
+            }, delayMillis);
+        }
+    }
+
+    private List<Listen> activeListens() {
+        ArrayList<Listen> listens = new ArrayList<>();
+        for (ArrayList<Listen> pathListens : documentListens.values()) {
+            listens.addAll(pathListens);
+        }
+        for (ArrayList<Listen> pathListens : queryListens.values()) {
+            listens.addAll(pathListens);
+        }
+        return listens;
+    }
+
+    private LinkedHashMap<String, Entry> getCollection(String path) {
+        LinkedHashMap<String, Entry> collection = collections.get(path);
+        if (collection == null) {
+            collection = new LinkedHashMap<>();
+            collections.put(path, collection);
+        }
+        return collection;
+    }
+
+    private static ArrayList<Listen> getListens(HashMap<String, ArrayList<Listen>> listensByPath, String path) {
+        ArrayList<Listen> listens = listensByPath.get(path);
+        if (listens == null) {
+            listens = new ArrayList<>();
+            listensByPath.put(path, listens);
+        }
+        return listens;
+    }
+
+    public interface DataGenerator {
+        /**
+         * @param id       documentId being written
+         * @param sequence number of writes done by the churn before this one
+         * @return fields of document
+         */
+        @NonNull
+        Map<String, Object> generate(@NonNull String id, int sequence);
+    }
+
+    public static class Churn {
+        @Nullable
+        private final ScheduledFuture<?> future;
+        volatile boolean isStopped = false;
+
+        Churn(@Nullable ScheduledFuture<?> future) {
+            this.future = future;
+        }
+
+        public void stop() {
+            isStopped = true;
+            if (future != null) future.cancel(false);
+        }
+    }
+
+    private class Listen implements ListenerRegistration {
+        final String path;
+        @Nullable
+        final Executor executor;
+        final Listener listener;
+        final HashMap<String, ArrayList<Listen>> listensByPath;
+        volatile boolean isRemoved = false;
+
+        Listen(String path, @Nullable Executor executor, Listener listener, HashMap<String, ArrayList<Listen>> listensByPath) {
+            this.path = path;
+            this.executor = executor;
+            this.listener = listener;
+            this.listensByPath = listensByPath;
+        }
+
+        @Override
+        public void remove() {
+            synchronized (InMemoryDocumentStore.this) {
+                unregister();
+            }
+        }
+
+        void unregister() {
+            isRemoved = true;
+            ArrayList<Listen> listens = listensByPath.get(path);
+            if (listens == null) return;
+            listens.remove(this);
+            if (listens.isEmpty()) listensByPath.remove(path);
+        }
+    }
+
+    private static class Entry implements StoredDocument {
+        final DocumentReference ref;
+        @Nullable
+        final Map<String, Object> data;
+
+        Entry(DocumentReference ref, @Nullable Map<String, Object> data) {
+            this.ref = ref;
+            this.data = data;
+        }
+
+        @NonNull
+        @Override
+        public DocumentReference getReference() {
+            return ref;
+        }
+
+        @Override
+        public boolean exists() {
+            return data != null;
+        }
+
+        @NonNull
+        @Override
+        public <T extends Document> T toDocument(@NonNull Class<T> klass) {
+            if (data == null) throw new RuntimeException("Document " + ref.getPath() + " does not exist");
+            return Document.newInstance(klass, ref, new HashMap<>(data));
+        }
+    }
+}
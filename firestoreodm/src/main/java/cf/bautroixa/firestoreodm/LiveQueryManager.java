@@ -0,0 +1,309 @@
+package cf.bautroixa.firestoreodm;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import cf.bautroixa.firestoreodm.core.IndexedList;
+import cf.bautroixa.firestoreodm.core.ListDiff;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * LiveQueryManager keep the result of a {@link LocalQuery} over the Documents of a source manager up to date
+ * <p>
+ * every change event of source only re-evaluates the changed Documents: they are matched again, placed by binary search
+ * and the list is fixed around the limit, nothing is recomputed. It holds the same Document instances as source
+ * and notifies its own listeners, so it can be used like any manager, for example with attachAdapter.
+ * It does not read Firestore, call {@link LiveQueryManager#stopListening()} when it is not needed anymore.
+ *
+ * @param <T> Document type
+ */
+public class LiveQueryManager<T extends Document> extends DocumentsManager<T> {
+    private final DocumentsManager<T> source;
+    private final LocalQuery<T> query;
+    private final Comparator<T> order;
+    // every matched Document of source in query order, list holds the first limit of them
+    private final IndexedList<T> matches;
+    // Documents of range callbacks, applied together once the batch of source is applied
+    private final LinkedHashMap<String, T> pendingPuts = new LinkedHashMap<>();
+    private final LinkedHashMap<String, T> pendingRemoves = new LinkedHashMap<>();
+    private final OnListChangedListener<T> sourceListener = new OnListChangedListener<T>() {
+        @Override
+        public void onItemInserted(int position, T data) {
+            pendingRemoves.remove(data.getId());
+            pendingPuts.put(data.getId(), data);
+            applyPending();
+        }
+
+        @Override
+        public void onItemChanged(int position, T data) {
+            pendingPuts.put(data.getId(), data);
+            applyPending();
+        }
+
+        @Override
+        public void onItemRemoved(int position, T data) {
+            pendingRemoves.put(data.getId(), data);
+            applyPending();
+        }
+
+        @Override
+        public void onItemMoved(int fromPosition, int toPosition, T data) {
+            // only the order of source matters without orderBy
+            if (query.getComparator() == null) reposition(Collections.singletonList(data));
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, List<T> items) {
+            for (T data : items) {
+                pendingRemoves.remove(data.getId());
+                pendingPuts.put(data.getId(), data);
+            }
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, List<T> items) {
+            for (T data : items) {
+                pendingRemoves.remove(data.getId());
+                pendingPuts.put(data.getId(), data);
+            }
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, List<T> items) {
+            for (T data : items) {
+                pendingPuts.remove(data.getId());
+                pendingRemoves.put(data.getId(), data);
+            }
+        }
+
+        @Override
+        public void onBatchApplied() {
+            applyPending();
+        }
+
+        @Override
+        public void onDataSetChanged(ArrayList<T> list) {
+            rebuild(list);
+        }
+    };
+
+    /**
+     * construct LiveQueryManager and start listening to source
+     *
+     * @param source manager whose Documents are queried
+     * @param query  LocalQuery
+     */
+    public LiveQueryManager(@NonNull DocumentsManager<T> source, @NonNull LocalQuery<T> query) {
+        super(source.itemClass, source.getRef());
+        this.source = source;
+        this.query = query;
+        this.order = query.getComparator() != null ? LocalQuery.withIdOrder(query.getComparator()) : new Comparator<T>() {
+            @Override
+            public int compare(T o1, T o2) {
+                return Integer.compare(LiveQueryManager.this.source.indexOf(o1), LiveQueryManager.this.source.indexOf(o2));
+            }
+        };
+        this.matches = new IndexedList<>(new IndexedList.IdOf<T>() {
+            @Override
+            public String idOf(T item) {
+                return item.getId();
+            }
+        });
+        source.addOnListChangedListener(sourceListener);
+    }
+
+    @NonNull
+    public LocalQuery<T> getQuery() {
+        return query;
+    }
+
+    /**
+     * @return number of Documents of source matched by the query, before limit
+     */
+    public int getMatchCount() {
+        return matches.size();
+    }
+
+    /**
+     * stopListening stop following source, list keeps its last content
+     */
+    public void stopListening() {
+        source.removeOnListChangedListener(sourceListener);
+        pendingPuts.clear();
+        pendingRemoves.clear();
+        isListening = false;
+    }
+
+    @Override
+    protected int getInsertPosition(T data) {
+        // list is a prefix of matches
+        return Math.min(matches.indexOf(data.getId()), list.size());
+    }
+
+    /**
+     * setCache is not supported, list holds exactly the matches of the query on source: an evicted Document would be removed
+     * from list and from its adapter while it still matches
+     *
+     * @param cache must be null
+     */
+    @Override
+    public void setCache(@Nullable DocumentsCache<T> cache) {
+        if (cache != null) throw new RuntimeException("LiveQueryManager keeps every match of its query, it can not be bounded by a cache");
+        super.setCache(null);
+    }
+
+    @Override
+    protected boolean isMembershipById() {
+        // list follows the query on source
+        return false;
+    }
+
+    @Override
+    public boolean isListComplete() {
+        return source.isListComplete();
+    }
+
+    private void applyPending() {
+        if (pendingPuts.isEmpty() && pendingRemoves.isEmpty()) return;
+        // an id is either in pendingPuts or in pendingRemoves, the last event wins
+        ArrayList<T> affected = new ArrayList<>(pendingRemoves.values());
+        affected.addAll(pendingPuts.values());
+        HashSet<String> changedIds = new HashSet<>(pendingPuts.keySet());
+        // Documents of the batch are taken out first so that the rest of matches stays sorted by their current values
+        for (T data : affected) {
+            matches.remove(data.getId());
+        }
+        for (T data : pendingPuts.values()) {
+            if (query.matches(data)) {
+                matches.insert(findPosition(data), data);
+            }
+        }
+        pendingPuts.clear();
+        pendingRemoves.clear();
+        applyToList(affected, changedIds);
+    }
+
+    /**
+     * reposition place Documents again without reporting them as changed
+     */
+    private void reposition(List<T> datas) {
+        for (T data : datas) {
+            if (matches.remove(data.getId()) >= 0) matches.insert(findPosition(data), data);
+        }
+        applyToList(datas, Collections.<String>emptySet());
+    }
+
+    /**
+     * applyToList make list the first limit Documents of matches again after affected Documents changed in matches,
+     * Documents not affected keep their relative order so only positions around the limit are checked
+     */
+    private void applyToList(List<T> affected, Collection<String> changedIds) {
+        int limit = query.getLimit();
+        List<T> matched = matches.getList();
+        int size = Math.min(limit, matched.size());
+        HashSet<String> removedIds = new HashSet<>();
+        LinkedHashMap<String, T> puts = new LinkedHashMap<>();
+        for (T data : affected) {
+            String id = data.getId();
+            int position = matches.indexOf(id);
+            boolean isIn = position >= 0 && position < limit;
+            if (contains(id)) {
+                if (!isIn) {
+                    removedIds.add(id);
+                } else if (changedIds.contains(id)) {
+                    puts.put(id, data);
+                }
+            } else if (isIn) {
+                puts.put(id, data);
+            }
+        }
+        // Documents that were not affected can only cross the limit by as many positions as affected Documents
+        for (int i = Math.max(0, size - affected.size()); i < size; i++) {
+            T data = matched.get(i);
+            if (!contains(data.getId())) puts.put(data.getId(), data);
+        }
+        for (int i = size; i < Math.min(matched.size(), size + affected.size()); i++) {
+            T data = matched.get(i);
+            if (contains(data.getId())) removedIds.add(data.getId());
+        }
+        // puts are inserted in order of matches so every insert position is valid
+        ArrayList<T> sortedPuts = new ArrayList<>(puts.values());
+        Collections.sort(sortedPuts, new Comparator<T>() {
+            @Override
+            public int compare(T o1, T o2) {
+                return Integer.compare(matches.indexOf(o1.getId()), matches.indexOf(o2.getId()));
+            }
+        });
+        if (!sortedPuts.isEmpty() || !removedIds.isEmpty()) applyChanges(sortedPuts, removedIds);
+        // list has the right Documents and the others kept their order, it is sorted once these are in place
+        for (T data : affected) {
+            if (contains(data.getId()) && indexOf(data.getId()) != matches.indexOf(data.getId())) {
+                reorder();
+                return;
+            }
+        }
+        for (T data : sortedPuts) {
+            if (indexOf(data.getId()) != matches.indexOf(data.getId())) {
+                reorder();
+                return;
+            }
+        }
+    }
+
+    /**
+     * reorder move Documents of list to their position in matches, only Documents out of the
+     * already-ordered subsequence are moved
+     */
+    private void reorder() {
+        ListDiff.reorder(items, new ListDiff.Ordering<T>() {
+            @Override
+            public int orderOf(T item) {
+                return matches.indexOf(item.getId());
+            }
+        }, new ListDiff.Mover<T>() {
+            @Override
+            public void move(String id, int toPosition) {
+                LiveQueryManager.this.move(id, toPosition);
+            }
+        });
+    }
+
+    private void rebuild(List<T> datas) {
+        matches.clear();
+        pendingPuts.clear();
+        pendingRemoves.clear();
+        for (T data : query.runWithoutLimit(datas)) {
+            matches.add(data);
+        }
+        ArrayList<String> removedIds = new ArrayList<>();
+        for (T data : list) {
+            removedIds.add(data.getId());
+        }
+        List<T> matched = matches.getList();
+        applyChanges(new ArrayList<>(matched.subList(0, Math.min(query.getLimit(), matched.size()))), removedIds);
+    }
+
+    /**
+     * findPosition binary search the position of data in matches
+     */
+    private int findPosition(T data) {
+        List<T> matched = matches.getList();
+        int low = 0, high = matched.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (order.compare(matched.get(mid), data) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,115 @@
+package cf.bautroixa.firestoreodm;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * LocalQuery filter, order and limit the Documents a DocumentsManager already holds, without reading Firestore
+ * <p>
+ * run it once with {@link DocumentsManager#query(LocalQuery)} or keep its result up to date with
+ * {@link DocumentsManager#liveQuery(LocalQuery)}. Documents without orderBy keep the order of the manager.
+ *
+ * @param <T> Document type
+ */
+public class LocalQuery<T extends Document> {
+    private final ArrayList<Filter<T>> filters = new ArrayList<>();
+    @Nullable
+    private Comparator<T> comparator;
+    private int limit = Integer.MAX_VALUE;
+
+    /**
+     * where keep only Documents matched by filter, filters of several calls must all match
+     *
+     * @param filter Filter
+     * @return this query
+     */
+    public LocalQuery<T> where(@NonNull Filter<T> filter) {
+        filters.add(filter);
+        return this;
+    }
+
+    /**
+     * orderBy order Documents by comparator, Documents that compare equal are ordered by documentId
+     *
+     * @param comparator Comparator
+     * @return this query
+     */
+    public LocalQuery<T> orderBy(@NonNull Comparator<T> comparator) {
+        this.comparator = comparator;
+        return this;
+    }
+
+    /**
+     * limit keep only the first limit Documents
+     *
+     * @param limit maximum number of Documents
+     * @return this query
+     */
+    public LocalQuery<T> limit(int limit) {
+        if (limit < 0) throw new RuntimeException("limit must not be negative");
+        this.limit = limit;
+        return this;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    @Nullable
+    public Comparator<T> getComparator() {
+        return comparator;
+    }
+
+    public boolean matches(@NonNull T data) {
+        for (Filter<T> filter : filters) {
+            if (!filter.matches(data)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * run this query on Documents
+     *
+     * @param datas Documents in order of their manager
+     * @return matched Documents, ordered and limited
+     */
+    @NonNull
+    public List<T> run(@NonNull List<T> datas) {
+        List<T> result = runWithoutLimit(datas);
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    /**
+     * runWithoutLimit filter and order Documents, every match is kept
+     */
+    List<T> runWithoutLimit(List<T> datas) {
+        ArrayList<T> result = new ArrayList<>();
+        for (T data : datas) {
+            if (matches(data)) result.add(data);
+        }
+        if (comparator != null) Collections.sort(result, withIdOrder(comparator));
+        return result;
+    }
+
+    /**
+     * withIdOrder break ties of comparator by documentId so that every Document has one position
+     */
+    static <T extends Document> Comparator<T> withIdOrder(final Comparator<T> comparator) {
+        return new Comparator<T>() {
+            @Override
+            public int compare(T o1, T o2) {
+                int result = comparator.compare(o1, o2);
+                return result != 0 ? result : o1.getId().compareTo(o2.getId());
+            }
+        };
+    }
+
+    public interface Filter<T extends Document> {
+        boolean matches(@NonNull T data);
+    }
+}
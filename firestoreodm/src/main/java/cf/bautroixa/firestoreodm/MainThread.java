@@ -0,0 +1,35 @@
+package cf.bautroixa.firestoreodm;
+
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * MainThread post results of work done on a background Executor back to the main thread
+ */
+class MainThread {
+    private static Handler handler;
+
+    static synchronized Handler getHandler() {
+        if (handler == null) handler = new Handler(Looper.getMainLooper());
+        return handler;
+    }
+
+    static void post(Runnable runnable) {
+        getHandler().post(runnable);
+    }
+
+    static boolean isMainThread() {
+        return Looper.myLooper() == Looper.getMainLooper();
+    }
+
+    /**
+     * run runnable now if called on main thread, otherwise post it
+     */
+    static void run(Runnable runnable) {
+        if (isMainThread()) {
+            runnable.run();
+        } else {
+            post(runnable);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package cf.bautroixa.firestoreodm;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Metrics forwards measurements of the library to the current {@link MetricsSink}
+ * <p>
+ * nothing is measured while no sink is set, call sites take a start time with {@link Metrics#start()}
+ * and pass it back when the measured work is done, a start time of 0 is ignored.
+ */
+public class Metrics {
+    @Nullable
+    private static volatile MetricsSink sink;
+
+    private Metrics() {
+    }
+
+    @Nullable
+    public static MetricsSink getSink() {
+        return sink;
+    }
+
+    /**
+     * setSink start reporting to sink
+     *
+     * @param sink MetricsSink, null to stop measuring
+     */
+    public static void setSink(@Nullable MetricsSink sink) {
+        Metrics.sink = sink;
+    }
+
+    static long start() {
+        return sink != null ? System.nanoTime() : 0;
+    }
+
+    static void snapshotReceived(String source, int documentChanges) {
+        MetricsSink sink = Metrics.sink;
+        if (sink != null) sink.onSnapshotReceived(source, documentChanges);
+    }
+
+    static void decoded(String source, int documents, long startTime) {
+        MetricsSink sink = Metrics.sink;
+        if (sink != null && startTime != 0) sink.onDecoded(source, documents, System.nanoTime() - startTime);
+    }
+
+    static void put(String source, long startTime) {
+        MetricsSink sink = Metrics.sink;
+        if (sink != null && startTime != 0) sink.onPut(source, System.nanoTime() - startTime);
+    }
+
+    static void remove(String source, long startTime) {
+        MetricsSink sink = Metrics.sink;
+        if (sink != null && startTime != 0) sink.onRemove(source, System.nanoTime() - startTime);
+    }
+
+    static void batchApplied(String source, int puts, int removes, long startTime) {
+        MetricsSink sink = Metrics.sink;
+        if (sink != null && startTime != 0) sink.onBatchApplied(source, puts, removes, System.nanoTime() - startTime);
+    }
+
+    static void dispatched(String source, int listeners, long startTime) {
+        MetricsSink sink = Metrics.sink;
+        if (sink != null && startTime != 0) sink.onDispatch(source, listeners, System.nanoTime() - startTime);
+    }
+
+    static void retry(String source) {
+        MetricsSink sink = Metrics.sink;
+        if (sink != null) sink.onRetry(source);
+    }
+
+    static void listenerRegistered(String source) {
+        MetricsSink sink = Metrics.sink;
+        if (sink != null) sink.onListenerRegistered(source);
+    }
+
+    static void listenerUnregistered(String source) {
+        MetricsSink sink = Metrics.sink;
+        if (sink != null) sink.onListenerUnregistered(source);
+    }
+}
@@ -0,0 +1,61 @@
+package cf.bautroixa.firestoreodm;
+
+import androidx.annotation.NonNull;
+
+/**
+ * MetricsSink receives timings and counters of managers and Documents, set it with {@link Metrics#setSink}
+ * <p>
+ * source identifies who reported, it is "ManagerClass/ItemClass" for managers and "Document/ItemClass" for Documents.
+ * Methods may be called from main thread and from decoding Executors, they must be cheap and thread safe.
+ * Durations are in nanoseconds.
+ */
+public interface MetricsSink {
+    /**
+     * a snapshot event arrived from Firestore
+     *
+     * @param documentChanges number of Documents changed in snapshot
+     */
+    void onSnapshotReceived(@NonNull String source, int documentChanges);
+
+    /**
+     * Documents of a snapshot were decoded
+     */
+    void onDecoded(@NonNull String source, int documents, long durationNanos);
+
+    /**
+     * a single Document was put into a manager, dispatch included
+     */
+    void onPut(@NonNull String source, long durationNanos);
+
+    /**
+     * a single Document was removed from a manager, dispatch included
+     */
+    void onRemove(@NonNull String source, long durationNanos);
+
+    /**
+     * a batch of puts and removes was applied to a manager, dispatch included
+     */
+    void onBatchApplied(@NonNull String source, int puts, int removes, long durationNanos);
+
+    /**
+     * listeners were notified of a change
+     *
+     * @param listeners fan-out, number of listeners notified
+     */
+    void onDispatch(@NonNull String source, int listeners, long durationNanos);
+
+    /**
+     * a failed listener is retried
+     */
+    void onRetry(@NonNull String source);
+
+    /**
+     * a snapshot listener was added to Firestore
+     */
+    void onListenerRegistered(@NonNull String source);
+
+    /**
+     * a snapshot listener was removed from Firestore
+     */
+    void onListenerUnregistered(@NonNull String source);
+}
@@ -0,0 +1,458 @@
+package cf.bautroixa.firestoreodm;
+
+import android.os.Handler;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import cf.bautroixa.firestoreodm.core.ListDiff;
+
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.EventListener;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * PagedCollectionManager holds a window of pages of a large collection instead of the whole collection
+ * <p>
+ * pages are loaded with limit + startAfter / endBefore cursors, only pages in the window are listened,
+ * pages that fall outside the window are evicted. Documents are ordered by page then by query order,
+ * a Document that shows up in two neighbour pages belongs to the first one.
+ * <p>
+ * only the changed Documents of a page are decoded, when the edge of a page moves the cursor
+ * of its neighbour page is moved with it so no Document falls between two pages.
+ *
+ * @param <T> Document type
+ */
+public class PagedCollectionManager<T extends Document> extends DocumentsManager<T> {
+    protected String TAG = "PagedCollectionManager";
+    private final Query query;
+    private final int pageSize;
+    private final int maxPages;
+    // pages in window, ordered by Page#order
+    private final ArrayList<Page> pages = new ArrayList<>();
+    // documentId -> position in window, rebuilt from pages
+    private HashMap<String, Long> ranks = new HashMap<>();
+    private boolean hasPrevious = false;
+    private boolean isListComplete = false;
+
+    /**
+     * construct PagedCollectionManager ordered by documentId
+     *
+     * @param itemClass           Document class of its item
+     * @param collectionReference CollectionReference it manages
+     * @param pageSize            number of Documents per page
+     * @param maxPages            maximum number of pages kept in window
+     */
+    public PagedCollectionManager(Class<T> itemClass, CollectionReference collectionReference, int pageSize, int maxPages) {
+        this(itemClass, collectionReference, collectionReference.orderBy(FieldPath.documentId()), pageSize, maxPages);
+    }
+
+    /**
+     * construct PagedCollectionManager
+     *
+     * @param itemClass           Document class of its item
+     * @param collectionReference CollectionReference it manages
+     * @param query               query to page, must have at least one orderBy clause and no limit
+     * @param pageSize            number of Documents per page
+     * @param maxPages            maximum number of pages kept in window, at least 2
+     */
+    public PagedCollectionManager(Class<T> itemClass, CollectionReference collectionReference, Query query, int pageSize, int maxPages) {
+        super(itemClass, collectionReference);
+        if (pageSize <= 0) throw new RuntimeException("pageSize must be positive");
+        if (maxPages < 2) throw new RuntimeException("maxPages must be at least 2");
+        TAG = itemClass.getSimpleName() + TAG;
+        this.query = query;
+        this.pageSize = pageSize;
+        this.maxPages = maxPages;
+        Page page = new Page(0, null, false);
+        pages.add(page);
+        page.listen(1000);
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public int getMaxPages() {
+        return maxPages;
+    }
+
+    /**
+     * @return number of pages in window
+     */
+    public int getPageCount() {
+        return pages.size();
+    }
+
+    /**
+     * @return true if there may be Documents after the last page
+     */
+    public boolean hasNext() {
+        if (pages.isEmpty()) return false;
+        Page last = pages.get(pages.size() - 1);
+        return !last.isLoaded || last.snapshots.size() >= pageSize;
+    }
+
+    /**
+     * @return true if there may be Documents before the first page
+     */
+    public boolean hasPrevious() {
+        return hasPrevious;
+    }
+
+    /**
+     * loadNext listen to the page after the last page in window,
+     * the first page is evicted if the window is full
+     *
+     * @return false if last page is still loading or there is nothing after it
+     */
+    public boolean loadNext() {
+        if (pages.isEmpty()) return false;
+        Page last = pages.get(pages.size() - 1);
+        if (!last.isLoaded || last.snapshots.size() < pageSize) return false;
+        Page page = new Page(last.order + 1, last.snapshots.get(last.snapshots.size() - 1), false);
+        pages.add(page);
+        page.listen(1000);
+        if (pages.size() > maxPages) {
+            evict(pages.remove(0));
+            hasPrevious = true;
+        }
+        return true;
+    }
+
+    /**
+     * loadPrevious listen to the page before the first page in window,
+     * the last page is evicted if the window is full
+     *
+     * @return false if first page is still loading or there is nothing before it
+     */
+    public boolean loadPrevious() {
+        if (pages.isEmpty() || !hasPrevious) return false;
+        Page first = pages.get(0);
+        if (!first.isLoaded || first.snapshots.isEmpty()) return false;
+        Page page = new Page(first.order - 1, first.snapshots.get(0), true);
+        pages.add(0, page);
+        page.listen(1000);
+        if (pages.size() > maxPages) {
+            evict(pages.remove(pages.size() - 1));
+        }
+        return true;
+    }
+
+    private void evict(Page page) {
+        Log.d(TAG, "evict page " + page.order);
+        page.cancel();
+        rebuildRanks();
+        ArrayList<String> removedIds = new ArrayList<>();
+        for (DocumentSnapshot snapshot : page.snapshots) {
+            if (!ranks.containsKey(snapshot.getId())) removedIds.add(snapshot.getId());
+        }
+        applyChanges(Collections.<T>emptyList(), removedIds);
+    }
+
+    /**
+     * onPageLoaded apply a snapshot of page
+     *
+     * @param page      page the snapshot belongs to
+     * @param snapshots all Documents of page
+     * @param puts      added or modified Documents of page, all Documents after page is listened again
+     */
+    private void onPageLoaded(Page page, List<DocumentSnapshot> snapshots, List<T> puts) {
+        List<DocumentSnapshot> oldSnapshots = page.snapshots;
+        page.snapshots = snapshots;
+        if (!page.isLoaded) {
+            page.isLoaded = true;
+            // a short previous page means it reached the start of the query
+            if (page.isBackward && snapshots.size() < pageSize) hasPrevious = false;
+        }
+        rebuildRanks();
+        // Documents that left page, a page listened again does not report the Documents it lost as removed
+        ArrayList<String> removedIds = new ArrayList<>();
+        for (DocumentSnapshot snapshot : oldSnapshots) {
+            if (!ranks.containsKey(snapshot.getId())) removedIds.add(snapshot.getId());
+        }
+        applyChanges(puts, removedIds);
+        reorder();
+        reanchor(page);
+        if (!isListComplete) {
+            isListComplete = true;
+            onListChanged();
+        }
+    }
+
+    /**
+     * reanchor move the cursor of the pages that start or end at the edge of page,
+     * a forward page starts after the last Document of the page before it,
+     * a backward page ends before the first Document of the page after it
+     *
+     * @param page page whose Documents changed
+     */
+    private void reanchor(Page page) {
+        int index = pages.indexOf(page);
+        if (index < 0 || page.snapshots.isEmpty()) return;
+        ArrayList<Boolean> isBackward = new ArrayList<>();
+        for (Page p : pages) {
+            isBackward.add(p.isBackward);
+        }
+        int[] followers = edgeFollowers(isBackward, index);
+        if (followers[0] >= 0) {
+            Page next = pages.get(followers[0]);
+            // the first page has no cursor, it starts at the start of the query
+            if (next.cursor != null) next.moveCursor(page.snapshots.get(page.snapshots.size() - 1));
+        }
+        if (followers[1] >= 0) {
+            pages.get(followers[1]).moveCursor(page.snapshots.get(0));
+        }
+    }
+
+    /**
+     * edgeFollowers find the pages whose cursor is an edge of the page at index,
+     * the next page if it is a forward page and the previous page if it is a backward page
+     *
+     * @param isBackward isBackward of each page in window
+     * @param index      index of page whose Documents changed
+     * @return index of next page and index of previous page that follow it, -1 if none
+     */
+    static int[] edgeFollowers(List<Boolean> isBackward, int index) {
+        int next = index + 1 < isBackward.size() && !isBackward.get(index + 1) ? index + 1 : -1;
+        int previous = index > 0 && isBackward.get(index - 1) ? index - 1 : -1;
+        return new int[]{next, previous};
+    }
+
+    private void rebuildRanks() {
+        HashMap<String, Long> ranks = new HashMap<>();
+        for (Page page : pages) {
+            for (int i = 0; i < page.snapshots.size(); i++) {
+                String id = page.snapshots.get(i).getId();
+                if (!ranks.containsKey(id)) ranks.put(id, (long) page.order * (pageSize + 1) + i);
+            }
+        }
+        this.ranks = ranks;
+    }
+
+    private long getRank(T data) {
+        Long rank = ranks.get(data.getId());
+        return rank != null ? rank : Long.MAX_VALUE;
+    }
+
+    /**
+     * move Documents that are out of order, only Documents outside the longest
+     * already-ordered subsequence are moved
+     */
+    private void reorder() {
+        // ranks are sparse, compress them to their order in list
+        ArrayList<T> sorted = new ArrayList<>(list);
+        Collections.sort(sorted, new Comparator<T>() {
+            @Override
+            public int compare(T a, T b) {
+                return Long.compare(getRank(a), getRank(b));
+            }
+        });
+        final HashMap<String, Integer> orders = new HashMap<>();
+        for (int i = 0; i < sorted.size(); i++) {
+            orders.put(sorted.get(i).getId(), i);
+        }
+        ListDiff.reorder(items, new ListDiff.Ordering<T>() {
+            @Override
+            public int orderOf(T item) {
+                return orders.get(item.getId());
+            }
+        }, new ListDiff.Mover<T>() {
+            @Override
+            public void move(String id, int toPosition) {
+                PagedCollectionManager.this.move(id, toPosition);
+            }
+        });
+    }
+
+    @Override
+    protected int getInsertPosition(T data) {
+        // list is sorted by rank, find the first Document placed after data
+        long rank = getRank(data);
+        int low = 0, high = list.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getRank(list.get(mid)) <= rank) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * setExecutor decode snapshots on executor, pages in window are listened again
+     *
+     * @param executor Executor for decoding, null to decode on main thread
+     */
+    @Override
+    public void setExecutor(@Nullable Executor executor) {
+        super.setExecutor(executor);
+        for (Page page : pages) {
+            page.listen(1000);
+        }
+    }
+
+    @Override
+    public void onClear() {
+        super.onClear();
+        for (Page page : pages) {
+            page.cancel();
+        }
+        pages.clear();
+        ranks = new HashMap<>();
+        isListening = false;
+    }
+
+    /**
+     * setCache is not supported, list holds exactly the Documents of the listened pages, use maxPages to bound it: an evicted Document would be removed
+     * from list and from its adapter while it still belongs to a listened page
+     *
+     * @param cache must be null
+     */
+    @Override
+    public void setCache(@Nullable DocumentsCache<T> cache) {
+        if (cache != null) throw new RuntimeException("PagedCollectionManager keeps every Document of its listened pages, it can not be bounded by a cache");
+        super.setCache(null);
+    }
+
+    @Override
+    protected boolean isMembershipById() {
+        // list holds only the Documents of listened pages
+        return false;
+    }
+
+    @Override
+    public boolean isListComplete() {
+        return isListComplete;
+    }
+
+    private class Page {
+        final int order;
+        @Nullable
+        DocumentSnapshot cursor;
+        final boolean isBackward;
+        List<DocumentSnapshot> snapshots = new ArrayList<>();
+        ListenerRegistration listenerRegistration;
+        boolean isLoaded = false, isCancelled = false;
+        // bumped on each listen, snapshots of previous listeners are dropped
+        int generation = 0;
+
+        /**
+         * @param order      position of page, pages loaded before it have lower order
+         * @param cursor     first Document of next page when isBackward, last Document of previous page otherwise
+         * @param isBackward true if page ends before cursor
+         */
+        Page(int order, @Nullable DocumentSnapshot cursor, boolean isBackward) {
+            this.order = order;
+            this.cursor = cursor;
+            this.isBackward = isBackward;
+        }
+
+        Query getQuery() {
+            if (cursor == null) return query.limit(pageSize);
+            return isBackward ? query.endBefore(cursor).limitToLast(pageSize) : query.startAfter(cursor).limit(pageSize);
+        }
+
+        /**
+         * moveCursor listen again from cursor if it is not the current cursor
+         *
+         * @param cursor new cursor, compared by id
+         */
+        void moveCursor(DocumentSnapshot cursor) {
+            if (this.cursor != null && this.cursor.getId().equals(cursor.getId())) return;
+            Log.d(TAG, "move cursor of page " + order + " to " + cursor.getId());
+            this.cursor = cursor;
+            listen(1000);
+        }
+
+        void listen(final long retryInterval) {
+            removeListenerRegistration();
+            isCancelled = false;
+            final int generation = ++this.generation;
+            EventListener<QuerySnapshot> eventListener = new EventListener<QuerySnapshot>() {
+                @Override
+                public void onEvent(@Nullable QuerySnapshot querySnapshot, @Nullable final FirebaseFirestoreException e) {
+                    if (e != null) {
+                        runOnMainThread(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (isCurrent(generation)) onListenFailed(retryInterval, e);
+                            }
+                        });
+                        return;
+                    }
+                    if (querySnapshot == null) return;
+                    // decode on the listener thread, which is the executor thread if there is one
+                    Metrics.snapshotReceived(metricsName, querySnapshot.getDocumentChanges().size());
+                    long startTime = Metrics.start();
+                    final List<DocumentSnapshot> snapshots = querySnapshot.getDocuments();
+                    final ArrayList<T> puts = new ArrayList<>();
+                    for (DocumentChange documentChange : querySnapshot.getDocumentChanges()) {
+                        if (documentChange.getType() == DocumentChange.Type.REMOVED) continue;
+                        T data = T.newInstance(itemClass, documentChange.getDocument());
+                        data.setListening(true);
+                        puts.add(data);
+                    }
+                    Metrics.decoded(metricsName, puts.size(), startTime);
+                    runOnMainThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (isCurrent(generation)) onPageLoaded(Page.this, snapshots, puts);
+                        }
+                    });
+                }
+            };
+            listenerRegistration = executor != null
+                    ? getQuery().addSnapshotListener(executor, eventListener)
+                    : getQuery().addSnapshotListener(eventListener);
+            Metrics.listenerRegistered(metricsName);
+        }
+
+        private boolean isCurrent(int generation) {
+            return !isCancelled && generation == this.generation;
+        }
+
+        private void removeListenerRegistration() {
+            if (listenerRegistration == null) return;
+            listenerRegistration.remove();
+            listenerRegistration = null;
+            Metrics.listenerUnregistered(metricsName);
+        }
+
+        private void onListenFailed(final long retryInterval, FirebaseFirestoreException e) {
+            Log.e(TAG, String.format("[Retry in %d ms] Listen page %d of %s failed reason: %s", retryInterval, order, ref.getId(), e.getMessage()));
+            if (retryInterval > 0 && retryInterval < 10000) {
+                Metrics.retry(metricsName);
+                new Handler().postDelayed(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!isCancelled) listen(retryInterval * 2);
+                    }
+                }, retryInterval);
+            } else {
+                Log.e(TAG, String.format("[TIMEOUT] Listen page %d of %s failed reason: %s", order, ref.getId(), e.getMessage()));
+            }
+        }
+
+        void cancel() {
+            isCancelled = true;
+            removeListenerRegistration();
+        }
+    }
+}
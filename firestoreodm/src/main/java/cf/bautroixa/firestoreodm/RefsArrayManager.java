@@ -3,17 +3,32 @@ package cf.bautroixa.firestoreodm;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import cf.bautroixa.firestoreodm.core.ListDiff;
 
 import com.google.firebase.firestore.CollectionReference;
 import com.google.firebase.firestore.DocumentReference;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 
 public class RefsArrayManager<T extends Document> extends DocumentsManager<T> {
     private String TAG = "ArrayManager";
     private DocumentsManager<T> parentDocumentsManager;
     private int requiredListSize = 0;
+    // position of each referenced path in the last array
+    private HashMap<String, Integer> refOrders = new HashMap<>();
+    // Documents referenced by the last array, including those not received yet
+    private HashMap<String, T> referencedDocuments = new HashMap<>();
+    // listens to referenced Documents with whereIn queries when chunked listening is enabled
+    @Nullable
+    private ChunkedRefsListener<T> chunkedRefsListener;
 
     public RefsArrayManager(Class<T> itemClass) {
         super(itemClass);
@@ -36,48 +51,161 @@ public class RefsArrayManager<T extends Document> extends DocumentsManager<T> {
         TAG = itemClass.getSimpleName() + TAG;
     }
 
+    /**
+     * setChunkedListening
+     * when enabled and there is no parent manager, referenced Documents are listened by
+     * whereIn queries of up to {@link ChunkedRefsListener#MAX_CHUNK_SIZE} Documents
+     * instead of one snapshot listener per Document, must be set before {@link RefsArrayManager#updateRefList(List)}
+     *
+     * @param enabled true to listen in chunks
+     */
+    public void setChunkedListening(boolean enabled) {
+        if (!referencedDocuments.isEmpty())
+            throw new RuntimeException("You can not change listening mode after updateRefList");
+        chunkedRefsListener = enabled && parentDocumentsManager == null ? new ChunkedRefsListener<>(itemClass, metricsName) : null;
+    }
+
+    public boolean isChunkedListening() {
+        return chunkedRefsListener != null;
+    }
+
+    /**
+     * setCache is not supported, list holds exactly the referenced Documents: an evicted Document would make
+     * the list incomplete and be listened again by the next {@link RefsArrayManager#updateRefList(List)}
+     *
+     * @param cache must be null
+     */
+    @Override
+    public void setCache(@Nullable DocumentsCache<T> cache) {
+        if (cache != null) throw new RuntimeException("RefsArrayManager keeps every referenced Document, it can not be bounded by a cache");
+        super.setCache(null);
+    }
+
+    /**
+     * updateRefList sync this manager with a Firestore array of DocumentReference
+     * removed references are removed in one batch, remaining Documents are moved to follow
+     * the order of the array and new references are listened or got from parent manager
+     *
+     * @param documentReferences new array of DocumentReference
+     */
     public void updateRefList(List<DocumentReference> documentReferences) {
-        requiredListSize = documentReferences.size();
+        // order of each referenced path in the array, duplicated references keep their first position
+        HashMap<String, Integer> newRefOrders = new HashMap<>();
+        ArrayList<DocumentReference> newRefs = new ArrayList<>();
+        for (DocumentReference ref : documentReferences) {
+            String path = ref.getPath();
+            if (!newRefOrders.containsKey(path)) {
+                newRefOrders.put(path, newRefOrders.size());
+                newRefs.add(ref);
+            }
+        }
+        requiredListSize = newRefOrders.size();
+        refOrders = newRefOrders;
+
         // clean up removed item
-        for (int i = 0; i < list.size(); i++) {
-            T document = list.get(i);
-            if (!documentReferences.contains(document.getRef())) {
-                Log.d(TAG, "delete" + document.getId());
-                remove(document.getId());
-                i--;
+        ArrayList<String> removedIds = new ArrayList<>();
+        Iterator<Map.Entry<String, T>> iterator = referencedDocuments.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, T> entry = iterator.next();
+            if (refOrders.containsKey(entry.getKey())) continue;
+            T document = entry.getValue();
+            iterator.remove();
+            Log.d(TAG, "delete" + document.getId());
+            if (contains(document.getId())) {
+                removedIds.add(document.getId());
+            } else {
+                // not received yet, only stop waiting for it
+                releaseDocument(document);
             }
         }
-        // add or update
-        for (final DocumentReference ref : documentReferences) {
-            if (parentDocumentsManager == null) {
-                final Integer index = mapIdWithIndex.get(ref.getId());
-                if (index == null) { // add
-                    Log.d(TAG, "listen New Document " + ref.getId());
-                    listenNewDocument(ref);
-                }
+        if (!removedIds.isEmpty()) applyChanges(Collections.<T>emptyList(), removedIds);
+
+        // keep order of remaining item in step with the array
+        reorder();
+
+        // add new item
+        for (DocumentReference ref : newRefs) {
+            if (referencedDocuments.containsKey(ref.getPath())) continue;
+            T data;
+            if (chunkedRefsListener != null) {
+                data = newDocument(ref);
+            } else if (parentDocumentsManager == null) {
+                Log.d(TAG, "listen New Document " + ref.getId());
+                data = listenNewDocument(ref);
             } else {
                 Log.d(TAG, "get from parent " + ref.getId());
-                T data = parentDocumentsManager.getFromParent(ref);
-                data.addDocumentsManager(this);
+                data = parentDocumentsManager.getFromParent(ref);
             }
+            if (data == null) continue;
+            referencedDocuments.put(ref.getPath(), data);
+            if (parentDocumentsManager != null) data.addDocumentsManager(this);
         }
+        if (chunkedRefsListener != null) chunkedRefsListener.update(referencedDocuments);
+    }
+
+    /**
+     * move Documents that are out of order, only Documents outside the longest
+     * already-ordered subsequence are moved
+     */
+    private void reorder() {
+        ListDiff.reorder(items, new ListDiff.Ordering<T>() {
+            @Override
+            public int orderOf(T item) {
+                return getRefOrder(item);
+            }
+        }, new ListDiff.Mover<T>() {
+            @Override
+            public void move(String id, int toPosition) {
+                RefsArrayManager.this.move(id, toPosition);
+            }
+        });
+    }
+
+    private int getRefOrder(T data) {
+        Integer order = refOrders.get(data.getRef().getPath());
+        return order != null ? order : Integer.MAX_VALUE;
+    }
+
+    @Override
+    protected int getInsertPosition(T data) {
+        // list is sorted by order in the array, find the first Document placed after data
+        int order = getRefOrder(data);
+        int low = 0, high = list.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getRefOrder(list.get(mid)) <= order) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
     }
 
     @Override
-    public T remove(String id) {
-        T data = super.remove(id);
-        if (parentDocumentsManager == null && data != null) data.onRemove();
-        return data;
+    protected void releaseDocument(T data) {
+        super.releaseDocument(data);
+        referencedDocuments.remove(data.getRef().getPath());
+        // shared Documents are released by DocumentsManager, only Documents of chunked listening are owned here
+        if (chunkedRefsListener != null) data.onRemove();
     }
 
     @Override
     public void onClear() {
-        if (parentDocumentsManager == null) {
-            for (Document document : list) {
+        if (chunkedRefsListener != null) {
+            for (Document document : referencedDocuments.values()) {
                 // remove listener and relate property (like latLng, marker) of each data
                 document.onRemove();
             }
         }
+        referencedDocuments.clear();
+        if (chunkedRefsListener != null) chunkedRefsListener.clear();
+    }
+
+    @Override
+    protected boolean isMembershipById() {
+        // list holds only the referenced Documents
+        return false;
     }
 
     @Override
@@ -0,0 +1,95 @@
+package cf.bautroixa.firestoreodm;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * SortedIndex index Documents by key in order, for equality, range and prefix lookups in O(log n)
+ *
+ * @param <T> Document type
+ * @param <K> key type, Comparable unless a Comparator is given
+ */
+public class SortedIndex<T extends Document, K> extends DocumentIndex<T, K> {
+    private final TreeMap<K, LinkedHashMap<String, T>> entries;
+
+    /**
+     * construct index ordered by natural order of keys
+     *
+     * @param extractor extract key of each Document
+     */
+    public SortedIndex(@NonNull FieldExtractor<T, K> extractor) {
+        super(extractor);
+        this.entries = new TreeMap<>();
+    }
+
+    /**
+     * @param extractor  extract key of each Document
+     * @param comparator order of keys
+     */
+    public SortedIndex(@NonNull FieldExtractor<T, K> extractor, @NonNull Comparator<? super K> comparator) {
+        super(extractor);
+        this.entries = new TreeMap<>(comparator);
+    }
+
+    @Override
+    Map<K, LinkedHashMap<String, T>> getEntries() {
+        return entries;
+    }
+
+    /**
+     * range get Documents whose key is between from and to
+     *
+     * @param from          lower bound, null for no lower bound
+     * @param fromInclusive include Documents whose key equals from
+     * @param to            upper bound, null for no upper bound
+     * @param toInclusive   include Documents whose key equals to
+     * @return Documents in order of key
+     */
+    @NonNull
+    public List<T> range(@Nullable K from, boolean fromInclusive, @Nullable K to, boolean toInclusive) {
+        NavigableMap<K, LinkedHashMap<String, T>> range = entries;
+        if (from != null) range = range.tailMap(from, fromInclusive);
+        if (to != null) range = range.headMap(to, toInclusive);
+        return flatten(range.values());
+    }
+
+    /**
+     * prefix get Documents whose String key starts with prefix, keys must be Strings in natural order
+     *
+     * @param prefix prefix of keys
+     * @return Documents in order of key
+     */
+    @NonNull
+    @SuppressWarnings("unchecked")
+    public List<T> prefix(@NonNull String prefix) {
+        K from = (K) prefix;
+        K to = (K) (prefix + Character.MAX_VALUE);
+        return flatten(entries.subMap(from, true, to, false).values());
+    }
+
+    /**
+     * @return Documents with the lowest key, empty if index is empty
+     */
+    @NonNull
+    public List<T> first() {
+        Map.Entry<K, LinkedHashMap<String, T>> entry = entries.firstEntry();
+        return entry != null ? new ArrayList<>(entry.getValue().values()) : new ArrayList<T>();
+    }
+
+    /**
+     * @return Documents with the highest key, empty if index is empty
+     */
+    @NonNull
+    public List<T> last() {
+        Map.Entry<K, LinkedHashMap<String, T>> entry = entries.lastEntry();
+        return entry != null ? new ArrayList<>(entry.getValue().values()) : new ArrayList<T>();
+    }
+}
@@ -0,0 +1,27 @@
+package cf.bautroixa.firestoreodm;
+
+import androidx.annotation.NonNull;
+
+import com.google.firebase.firestore.DocumentReference;
+
+/**
+ * StoredDocument is a document received from a {@link DocumentStore}
+ */
+public interface StoredDocument {
+    @NonNull
+    DocumentReference getReference();
+
+    /**
+     * @return false if document does not exist or was removed from the listened query
+     */
+    boolean exists();
+
+    /**
+     * toDocument decode this document, it must exist
+     *
+     * @param klass Document class
+     * @return new Document
+     */
+    @NonNull
+    <T extends Document> T toDocument(@NonNull Class<T> klass);
+}
@@ -0,0 +1,182 @@
+package cf.bautroixa.firestoreodm;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+
+/**
+ * TimerWheel run timeouts on main thread from one shared hashed timing wheel
+ * <p>
+ * scheduling and cancelling cost O(1), a timeout fires within one tick after its delay.
+ * The wheel only posts to the main Handler while timeouts are pending, so many pending timeouts
+ * cost one Runnable per tick instead of one Runnable each. It must be used on main thread.
+ */
+public class TimerWheel {
+    private static volatile TimerWheel instance;
+    private final long tickMillis;
+    // head of the doubly linked list of timeouts in each slot
+    private final Timeout[] slots;
+    private final Runnable tickRunnable = new Runnable() {
+        @Override
+        public void run() {
+            isTicking = false;
+            advance();
+        }
+    };
+    // ticks processed since startTime
+    private long tick = 0;
+    private long startTime;
+    private int pendingCount = 0;
+    private boolean isTicking = false;
+
+    /**
+     * @param tickMillis resolution of timeouts
+     * @param wheelSize  number of slots, delays longer than wheelSize ticks take several rounds
+     */
+    public TimerWheel(long tickMillis, int wheelSize) {
+        if (tickMillis <= 0 || wheelSize <= 0) throw new RuntimeException("tickMillis and wheelSize must be positive");
+        this.tickMillis = tickMillis;
+        this.slots = new Timeout[wheelSize];
+    }
+
+    /**
+     * @return shared TimerWheel with 100 ms ticks
+     */
+    public static TimerWheel getInstance() {
+        if (instance == null) {
+            synchronized (TimerWheel.class) {
+                if (instance == null) instance = new TimerWheel(100, 512);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * schedule run task after delayMillis unless the returned Timeout is cancelled before
+     *
+     * @param task        Runnable to run on main thread
+     * @param delayMillis delay, rounded up to a whole tick
+     * @return Timeout to cancel
+     */
+    @NonNull
+    public Timeout schedule(@NonNull Runnable task, long delayMillis) {
+        if (pendingCount == 0) {
+            // the wheel was idle, restart counting ticks from now
+            startTime = SystemClock.elapsedRealtime();
+            tick = 0;
+        }
+        long elapsedTicks = (SystemClock.elapsedRealtime() - startTime) / tickMillis;
+        long deadline = Math.max(elapsedTicks, tick) + Math.max(1, (delayMillis + tickMillis - 1) / tickMillis);
+        Timeout timeout = new Timeout(task, deadline);
+        link(timeout, (int) (deadline % slots.length));
+        pendingCount++;
+        startTicking();
+        return timeout;
+    }
+
+    /**
+     * @return number of timeouts not fired nor cancelled yet
+     */
+    public int getPendingCount() {
+        return pendingCount;
+    }
+
+    private void link(Timeout timeout, int slot) {
+        timeout.slot = slot;
+        timeout.next = slots[slot];
+        if (timeout.next != null) timeout.next.prev = timeout;
+        slots[slot] = timeout;
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            slots[timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) timeout.next.prev = timeout.prev;
+        timeout.prev = timeout.next = null;
+        timeout.slot = -1;
+    }
+
+    private void stopTicking() {
+        if (!isTicking) return;
+        isTicking = false;
+        MainThread.getHandler().removeCallbacks(tickRunnable);
+    }
+
+    private void startTicking() {
+        if (isTicking || pendingCount == 0) return;
+        isTicking = true;
+        long nextTickTime = startTime + (tick + 1) * tickMillis;
+        MainThread.getHandler().postDelayed(tickRunnable, Math.max(0, nextTickTime - SystemClock.elapsedRealtime()));
+    }
+
+    /**
+     * advance fire every timeout of the ticks passed since the last advance
+     */
+    private void advance() {
+        long elapsedTicks = (SystemClock.elapsedRealtime() - startTime) / tickMillis;
+        ArrayList<Timeout> expired = new ArrayList<>();
+        // a late tick processes every slot it missed, each slot at most once per round
+        long lastTick = Math.min(elapsedTicks, tick + slots.length);
+        while (tick < lastTick) {
+            tick++;
+            Timeout timeout = slots[(int) (tick % slots.length)];
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.deadline <= elapsedTicks) {
+                    unlink(timeout);
+                    expired.add(timeout);
+                }
+                timeout = next;
+            }
+        }
+        if (tick < elapsedTicks) tick = elapsedTicks;
+        for (Timeout timeout : expired) {
+            if (timeout.isCancelled) continue;
+            timeout.isExpired = true;
+            pendingCount--;
+            timeout.task.run();
+        }
+        startTicking();
+    }
+
+    public class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private boolean isCancelled = false, isExpired = false;
+        // slot of the wheel holding this timeout, -1 once it is unlinked
+        private int slot = -1;
+        private Timeout prev, next;
+
+        Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * cancel prevent the task from running, it is unlinked from its slot at once
+         *
+         * @return false if the task already ran or was cancelled
+         */
+        public boolean cancel() {
+            if (isCancelled || isExpired) return false;
+            isCancelled = true;
+            if (slot >= 0) unlink(this);
+            // an idle wheel restarts from tick 0, no tick is needed until the next schedule
+            if (--pendingCount == 0) stopTicking();
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return isCancelled;
+        }
+
+        public boolean isExpired() {
+            return isExpired;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package cf.bautroixa.firestoreodm;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.Blob;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.GeoPoint;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ValueCodec encode Firestore values, the values of {@link com.google.firebase.firestore.DocumentSnapshot#getData()},
+ * into a compact binary form without java serialization
+ * <p>
+ * every value is a one byte tag followed by its content, integers and lengths are varints.
+ * Values are read from a ByteBuffer so that a memory mapped file or a byte array is decoded in place.
+ * Decoded values are equal to the values Firestore returns, so raw data of decoded Documents can be compared
+ * with the data of later snapshots. Tags must never be renumbered, add new ones at the end.
+ */
+class ValueCodec {
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int NULL = 0, FALSE = 1, TRUE = 2, LONG = 3, DOUBLE = 4, STRING = 5, TIMESTAMP = 6,
+            GEO_POINT = 7, BLOB = 8, REFERENCE = 9, LIST = 10, MAP = 11;
+
+    /**
+     * writeValue write value with its tag
+     *
+     * @param out   output
+     * @param value Firestore value, integer and floating point numbers are widened like Firestore does
+     * @throws IOException by out
+     */
+    static void writeValue(@NonNull DataOutput out, @Nullable Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte(LONG);
+            writeVarLong(out, zigZag(((Number) value).longValue()));
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Timestamp || value instanceof Date) {
+            Timestamp timestamp = value instanceof Timestamp ? (Timestamp) value : new Timestamp((Date) value);
+            out.writeByte(TIMESTAMP);
+            writeVarLong(out, zigZag(timestamp.getSeconds()));
+            writeVarLong(out, timestamp.getNanoseconds());
+        } else if (value instanceof GeoPoint) {
+            out.writeByte(GEO_POINT);
+            out.writeDouble(((GeoPoint) value).getLatitude());
+            out.writeDouble(((GeoPoint) value).getLongitude());
+        } else if (value instanceof Blob) {
+            byte[] bytes = ((Blob) value).toBytes();
+            out.writeByte(BLOB);
+            writeVarLong(out, bytes.length);
+            out.write(bytes);
+        } else if (value instanceof DocumentReference) {
+            out.writeByte(REFERENCE);
+            writeString(out, ((DocumentReference) value).getPath());
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            out.writeByte(LIST);
+            writeVarLong(out, list.size());
+            for (Object item : list) {
+                writeValue(out, item);
+            }
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(MAP);
+            writeVarLong(out, map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeString(out, (String) entry.getKey());
+                writeValue(out, entry.getValue());
+            }
+        } else {
+            throw new RuntimeException("Can not encode value of type " + value.getClass().getName());
+        }
+    }
+
+    /**
+     * readValue read a value written by {@link ValueCodec#writeValue}
+     *
+     * @param in        input, its position is moved after the value
+     * @param firestore FirebaseFirestore of decoded DocumentReferences
+     * @return Firestore value
+     */
+    @Nullable
+    static Object readValue(@NonNull ByteBuffer in, @NonNull FirebaseFirestore firestore) {
+        int tag = in.get();
+        switch (tag) {
+            case NULL:
+                return null;
+            case FALSE:
+                return false;
+            case TRUE:
+                return true;
+            case LONG:
+                return unZigZag(readVarLong(in));
+            case DOUBLE:
+                return in.getDouble();
+            case STRING:
+                return readString(in);
+            case TIMESTAMP:
+                long seconds = unZigZag(readVarLong(in));
+                return new Timestamp(seconds, (int) readVarLong(in));
+            case GEO_POINT:
+                double latitude = in.getDouble();
+                return new GeoPoint(latitude, in.getDouble());
+            case BLOB:
+                byte[] bytes = new byte[readLength(in)];
+                in.get(bytes);
+                return Blob.fromBytes(bytes);
+            case REFERENCE:
+                return firestore.document(readString(in));
+            case LIST:
+                int size = readLength(in);
+                ArrayList<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in, firestore));
+                }
+                return list;
+            case MAP:
+                return readMap(in, firestore);
+            default:
+                throw new RuntimeException("Unknown value tag " + tag + " at " + (in.position() - 1));
+        }
+    }
+
+    /**
+     * writeMap write fields of a Document without tag
+     */
+    static void writeMap(@NonNull DataOutput out, @NonNull Map<String, Object> map) throws IOException {
+        writeVarLong(out, map.size());
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            writeString(out, entry.getKey());
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    /**
+     * readMap read fields written by {@link ValueCodec#writeMap}
+     */
+    @NonNull
+    static Map<String, Object> readMap(@NonNull ByteBuffer in, @NonNull FirebaseFirestore firestore) {
+        int size = readLength(in);
+        HashMap<String, Object> map = new HashMap<>(size * 4 / 3 + 1);
+        for (int i = 0; i < size; i++) {
+            String key = readString(in);
+            map.put(key, readValue(in, firestore));
+        }
+        return map;
+    }
+
+    static void writeString(@NonNull DataOutput out, @NonNull String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    @NonNull
+    static String readString(@NonNull ByteBuffer in) {
+        int length = readLength(in);
+        if (in.hasArray()) {
+            // heap buffers are decoded without an intermediate copy
+            String value = new String(in.array(), in.arrayOffset() + in.position(), length, UTF_8);
+            in.position(in.position() + length);
+            return value;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    static void writeVarLong(@NonNull DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(@NonNull ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new RuntimeException("Malformed varint at " + in.position());
+    }
+
+    /**
+     * readLength read a varint length, checked against the remaining bytes so that a corrupt input can not
+     * allocate huge arrays
+     */
+    static int readLength(@NonNull ByteBuffer in) {
+        long length = readVarLong(in);
+        if (length < 0 || length > in.remaining()) throw new RuntimeException("Malformed length " + length + " at " + in.position());
+        return (int) length;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
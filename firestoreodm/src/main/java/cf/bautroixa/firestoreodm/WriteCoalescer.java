@@ -0,0 +1,305 @@
+package cf.bautroixa.firestoreodm;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * WriteCoalescer merge updates of the same document within a time window into one update,
+ * the last value of each field wins, and commit updates of different documents together in WriteBatches
+ * <p>
+ * every returned Task completes when the commit that carried its write completes, a write that fails
+ * only fails its own Task. It is opt-in: {@link Document#sendUpdate} and {@link Document#sendDelete} without WriteBatch
+ * use it after {@link WriteCoalescer#setDefault} is called. update and delete can be called from any thread,
+ * they are queued on main thread, other methods must be called on main thread.
+ * Field values are replaced, not combined, so two FieldValue.increment of a field in one window count once.
+ */
+public class WriteCoalescer {
+    /**
+     * maximum number of writes in a WriteBatch
+     */
+    public static final int MAX_BATCH_SIZE = 500;
+    @Nullable
+    private static WriteCoalescer defaultCoalescer;
+    private final long windowMillis;
+    private final int maxPendingDocuments;
+    // path -> pending write, in order of first write
+    private final LinkedHashMap<String, PendingWrite> pendingWrites = new LinkedHashMap<>();
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+    private boolean isFlushScheduled = false;
+
+    /**
+     * @param windowMillis        writes are committed at most windowMillis after the first pending write
+     * @param maxPendingDocuments writes are committed at once when this many documents are pending
+     */
+    public WriteCoalescer(long windowMillis, int maxPendingDocuments) {
+        if (maxPendingDocuments <= 0) throw new RuntimeException("maxPendingDocuments must be positive");
+        this.windowMillis = windowMillis;
+        this.maxPendingDocuments = maxPendingDocuments;
+    }
+
+    @Nullable
+    public static WriteCoalescer getDefault() {
+        return defaultCoalescer;
+    }
+
+    /**
+     * setDefault coalesce writes of Documents sent without WriteBatch
+     *
+     * @param coalescer WriteCoalescer, null to send every write at once
+     */
+    public static void setDefault(@Nullable WriteCoalescer coalescer) {
+        if (defaultCoalescer != null && defaultCoalescer != coalescer) defaultCoalescer.flush();
+        defaultCoalescer = coalescer;
+    }
+
+    /**
+     * update fields of document
+     *
+     * @param ref                 DocumentReference
+     * @param field               field path to update
+     * @param value               new value of field
+     * @param moreFieldsAndValues more field paths and values
+     * @return Task completes when the update is committed
+     */
+    @NonNull
+    public Task<Void> update(@NonNull DocumentReference ref, @NonNull String field, @Nullable Object value, Object... moreFieldsAndValues) {
+        if (moreFieldsAndValues.length % 2 != 0)
+            throw new RuntimeException("moreFieldsAndValues must contain pairs of field and value");
+        LinkedHashMap<String, Object> fields = new LinkedHashMap<>();
+        fields.put(field, value);
+        for (int i = 0; i < moreFieldsAndValues.length; i += 2) {
+            fields.put((String) moreFieldsAndValues[i], moreFieldsAndValues[i + 1]);
+        }
+        return update(ref, fields);
+    }
+
+    /**
+     * update fields of document
+     *
+     * @param ref    DocumentReference
+     * @param fields field path -> new value
+     * @return Task completes when the update is committed
+     */
+    @NonNull
+    public Task<Void> update(@NonNull final DocumentReference ref, @NonNull Map<String, Object> fields) {
+        if (!MainThread.isMainThread()) {
+            // the caller may change its map before main thread runs
+            final LinkedHashMap<String, Object> copy = new LinkedHashMap<>(fields);
+            return onMainThread(new Callable<Task<Void>>() {
+                @Override
+                public Task<Void> call() {
+                    return update(ref, copy);
+                }
+            });
+        }
+        PendingWrite pendingWrite = pendingWrites.get(ref.getPath());
+        // an update can not be merged into a delete, it is sent after the delete
+        if (pendingWrite != null && pendingWrite.isDelete) {
+            flush();
+            pendingWrite = null;
+        }
+        if (pendingWrite == null) {
+            pendingWrite = new PendingWrite(ref);
+            pendingWrites.put(ref.getPath(), pendingWrite);
+        }
+        for (Map.Entry<String, Object> entry : fields.entrySet()) {
+            pendingWrite.put(entry.getKey(), entry.getValue());
+        }
+        Task<Void> task = pendingWrite.source.getTask();
+        onWriteAdded();
+        return task;
+    }
+
+    /**
+     * delete document, pending updates of it are dropped and complete with the delete
+     *
+     * @param ref DocumentReference
+     * @return Task completes when the delete is committed
+     */
+    @NonNull
+    public Task<Void> delete(@NonNull final DocumentReference ref) {
+        if (!MainThread.isMainThread()) {
+            return onMainThread(new Callable<Task<Void>>() {
+                @Override
+                public Task<Void> call() {
+                    return delete(ref);
+                }
+            });
+        }
+        PendingWrite pendingWrite = pendingWrites.get(ref.getPath());
+        if (pendingWrite == null) {
+            pendingWrite = new PendingWrite(ref);
+            pendingWrites.put(ref.getPath(), pendingWrite);
+        }
+        pendingWrite.isDelete = true;
+        pendingWrite.fields.clear();
+        Task<Void> task = pendingWrite.source.getTask();
+        onWriteAdded();
+        return task;
+    }
+
+    /**
+     * @return number of documents waiting to be committed
+     */
+    public int getPendingCount() {
+        return pendingWrites.size();
+    }
+
+    /**
+     * flush commit every pending write now, in WriteBatches of at most {@link WriteCoalescer#MAX_BATCH_SIZE} writes
+     */
+    public void flush() {
+        if (isFlushScheduled) {
+            MainThread.getHandler().removeCallbacks(flushRunnable);
+            isFlushScheduled = false;
+        }
+        if (pendingWrites.isEmpty()) return;
+        // WriteBatch belongs to one FirebaseFirestore instance
+        HashMap<FirebaseFirestore, List<PendingWrite>> writesByFirestore = new HashMap<>();
+        for (PendingWrite pendingWrite : pendingWrites.values()) {
+            FirebaseFirestore firestore = pendingWrite.ref.getFirestore();
+            List<PendingWrite> writes = writesByFirestore.get(firestore);
+            if (writes == null) {
+                writes = new ArrayList<>();
+                writesByFirestore.put(firestore, writes);
+            }
+            writes.add(pendingWrite);
+        }
+        pendingWrites.clear();
+        for (Map.Entry<FirebaseFirestore, List<PendingWrite>> entry : writesByFirestore.entrySet()) {
+            List<PendingWrite> writes = entry.getValue();
+            for (int start = 0; start < writes.size(); start += MAX_BATCH_SIZE) {
+                commit(entry.getKey(), writes.subList(start, Math.min(start + MAX_BATCH_SIZE, writes.size())));
+            }
+        }
+    }
+
+    private void commit(final FirebaseFirestore firestore, List<PendingWrite> writes) {
+        WriteBatch batch = firestore.batch();
+        final ArrayList<PendingWrite> committedWrites = new ArrayList<>(writes);
+        for (PendingWrite pendingWrite : committedWrites) {
+            if (pendingWrite.isDelete) {
+                batch.delete(pendingWrite.ref);
+            } else {
+                batch.update(pendingWrite.ref, pendingWrite.fields);
+            }
+        }
+        batch.commit().addOnCompleteListener(new OnCompleteListener<Void>() {
+            @Override
+            public void onComplete(@NonNull Task<Void> task) {
+                if (task.isSuccessful()) {
+                    for (PendingWrite pendingWrite : committedWrites) {
+                        pendingWrite.source.trySetResult(null);
+                    }
+                } else if (committedWrites.size() > 1) {
+                    // a WriteBatch is atomic, one missing or forbidden document fails every write of it,
+                    // commit each write on its own so that only the writes that really fail fail their Task
+                    for (PendingWrite pendingWrite : committedWrites) {
+                        commit(firestore, Collections.singletonList(pendingWrite));
+                    }
+                } else {
+                    committedWrites.get(0).source.trySetException(task.getException() != null ? task.getException() : new RuntimeException("commit failed"));
+                }
+            }
+        });
+    }
+
+    /**
+     * onMainThread run write on main thread, the returned Task completes with the Task of write
+     */
+    private static Task<Void> onMainThread(final Callable<Task<Void>> write) {
+        final TaskCompletionSource<Void> source = new TaskCompletionSource<>();
+        MainThread.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write.call().addOnCompleteListener(new OnCompleteListener<Void>() {
+                        @Override
+                        public void onComplete(@NonNull Task<Void> task) {
+                            if (task.isSuccessful()) {
+                                source.trySetResult(null);
+                            } else {
+                                source.trySetException(task.getException() != null ? task.getException() : new RuntimeException("commit failed"));
+                            }
+                        }
+                    });
+                } catch (Exception e) {
+                    source.trySetException(e);
+                }
+            }
+        });
+        return source.getTask();
+    }
+
+    private void onWriteAdded() {
+        if (pendingWrites.size() >= maxPendingDocuments) {
+            flush();
+        } else if (!isFlushScheduled) {
+            isFlushScheduled = true;
+            MainThread.getHandler().postDelayed(flushRunnable, windowMillis);
+        }
+    }
+
+    private static class PendingWrite {
+        final DocumentReference ref;
+        final LinkedHashMap<String, Object> fields = new LinkedHashMap<>();
+        final TaskCompletionSource<Void> source = new TaskCompletionSource<>();
+        boolean isDelete = false;
+
+        PendingWrite(DocumentReference ref) {
+            this.ref = ref;
+        }
+
+        /**
+         * put value of a field path, replacing values of its sub fields,
+         * a value of a parent field path is updated in place so that paths never conflict
+         */
+        @SuppressWarnings("unchecked")
+        void put(String field, @Nullable Object value) {
+            Iterator<String> iterator = fields.keySet().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().startsWith(field + ".")) iterator.remove();
+            }
+            for (Map.Entry<String, Object> entry : fields.entrySet()) {
+                String parent = entry.getKey();
+                if (!field.startsWith(parent + ".")) continue;
+                Object parentValue = entry.getValue();
+                Map<String, Object> map = parentValue instanceof Map ? new HashMap<>((Map<String, Object>) parentValue) : new HashMap<String, Object>();
+                entry.setValue(map);
+                String[] names = field.substring(parent.length() + 1).split("\\.");
+                for (int i = 0; i < names.length - 1; i++) {
+                    Object child = map.get(names[i]);
+                    Map<String, Object> childMap = child instanceof Map ? new HashMap<>((Map<String, Object>) child) : new HashMap<String, Object>();
+                    map.put(names[i], childMap);
+                    map = childMap;
+                }
+                map.put(names[names.length - 1], value);
+                return;
+            }
+            // move field to the end so the order of fields follows the order of writes
+            fields.remove(field);
+            fields.put(field, value);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package cf.bautroixa.firestoreodm;
+
+/**
+ * BenchmarkDocument is a Document that carries its own id, so benchmarks need no Firestore instance
+ */
+public class BenchmarkDocument extends Document {
+    public String name;
+    public long count;
+    private String id;
+
+    public BenchmarkDocument() {
+    }
+
+    BenchmarkDocument(String id, String name, long count) {
+        this.id = id;
+        this.name = name;
+        this.count = count;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    protected void update(Document document) {
+        BenchmarkDocument data = (BenchmarkDocument) document;
+        this.id = data.id;
+        this.name = data.name;
+        this.count = data.count;
+    }
+}
@@ -0,0 +1,35 @@
+package cf.bautroixa.firestoreodm;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+/**
+ * BenchmarksTest runs the JMH benchmarks of this module on the JVM,
+ * skipped unless gradle is run with -Pjmh, results are written to build/reports/jmh
+ */
+public class BenchmarksTest {
+    @Test
+    public void runBenchmarks() throws RunnerException {
+        Assume.assumeTrue(Boolean.getBoolean("jmh"));
+        File reports = new File("build/reports/jmh");
+        reports.mkdirs();
+        Options options = new OptionsBuilder()
+                .include(DocumentsBenchmark.class.getSimpleName())
+                .include(ListenerFanOutBenchmark.class.getSimpleName())
+                // the unit test classpath of an android library can not be forked, measure in this JVM
+                .forks(0)
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .resultFormat(ResultFormatType.JSON)
+                .result(new File(reports, "firestoreodm.json").getPath())
+                .build();
+        new Runner(options).run();
+    }
+}
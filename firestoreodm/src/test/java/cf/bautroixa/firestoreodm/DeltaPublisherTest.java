@@ -0,0 +1,194 @@
+package cf.bautroixa.firestoreodm;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * DeltaPublisherTest lets slow subscribers request at random while a manager changes at random,
+ * a subscriber must never receive more than it requested and must end with the state of the manager
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class DeltaPublisherTest {
+    private static final int ID_COUNT = 40;
+    private static final int STEPS = 3000;
+    private StoreItems items;
+
+    @Before
+    public void setUp() {
+        items = new StoreItems();
+    }
+
+    @Test
+    public void slowSubscribers_merge_endInStateOfManager() {
+        checkSlowSubscribers(DeltaPublisher.Conflation.MERGE, 3);
+    }
+
+    @Test
+    public void slowSubscribers_latest_endInStateOfManager() {
+        checkSlowSubscribers(DeltaPublisher.Conflation.LATEST, 4);
+    }
+
+    @Test
+    public void requestZero_signalsErrorOnceAndStops() {
+        DocumentsManager<StoreItem> source = newSource();
+        source.put(items.item("1", 1));
+        DeltaPublisher<StoreItem> publisher = source.publish(DeltaPublisher.Conflation.MERGE);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(1);
+        assertEquals(1, subscriber.received);
+
+        subscriber.subscription.request(0);
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+        subscriber.subscription.request(0);
+        subscriber.subscription.request(5);
+        source.put(items.item("2", 2));
+        assertEquals(1, subscriber.errorCount);
+        assertEquals(1, subscriber.received);
+        assertEquals(0, publisher.getSubscriberCount());
+    }
+
+    @Test
+    public void publishDocument_isTypedBySubclass() {
+        StoreItem item = items.item("1", 1);
+        item.setAvailable(true);
+        DeltaPublisher<StoreItem> publisher = DeltaPublisher.of(item, DeltaPublisher.Conflation.LATEST);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(1);
+        assertEquals(1, subscriber.received);
+        assertEquals(1, subscriber.state.get("1").longValue());
+        subscriber.subscription.cancel();
+    }
+
+    private void checkSlowSubscribers(DeltaPublisher.Conflation conflation, long seed) {
+        Random random = new Random(seed);
+        DocumentsManager<StoreItem> source = newSource();
+        for (int i = 0; i < ID_COUNT / 2; i++) {
+            source.put(items.item(String.valueOf(i), random.nextInt(100)));
+        }
+        DeltaPublisher<StoreItem> publisher = source.publish(conflation);
+        List<RecordingSubscriber> subscribers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            RecordingSubscriber subscriber = new RecordingSubscriber();
+            publisher.subscribe(subscriber);
+            subscribers.add(subscriber);
+        }
+
+        for (int step = 0; step < STEPS; step++) {
+            items.randomStep(source, random, ID_COUNT, 6, false);
+            // each subscriber is slower than the one before
+            for (int i = 0; i < subscribers.size(); i++) {
+                if (random.nextInt(1 + i * 10) == 0) subscribers.get(i).subscription.request(1 + random.nextInt(3));
+                assertTrue(subscribers.get(i).received <= subscribers.get(i).requested);
+            }
+        }
+
+        Map<String, Long> expected = values(source.getList());
+        for (RecordingSubscriber subscriber : subscribers) {
+            subscriber.subscription.request(Long.MAX_VALUE);
+            assertNull(subscriber.error);
+            assertEquals(expected, subscriber.state);
+            assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(values(subscriber.lastSnapshot).keySet()));
+            subscriber.subscription.cancel();
+        }
+        assertEquals(0, publisher.getSubscriberCount());
+    }
+
+    private DocumentsManager<StoreItem> newSource() {
+        return new DocumentsManager<StoreItem>(StoreItem.class, items.items) {
+            @Override
+            public boolean isListComplete() {
+                return true;
+            }
+        };
+    }
+
+    private static LinkedHashMap<String, Long> values(List<StoreItem> datas) {
+        LinkedHashMap<String, Long> values = new LinkedHashMap<>();
+        for (StoreItem data : datas) {
+            values.put(data.getId(), data.sequence);
+        }
+        return values;
+    }
+
+    /**
+     * RecordingSubscriber rebuild documentId -> sequence from the deltas it receives
+     */
+    private static class RecordingSubscriber implements Subscriber<DocumentDelta<StoreItem>> {
+        final LinkedHashMap<String, Long> state = new LinkedHashMap<>();
+        List<StoreItem> lastSnapshot = new ArrayList<>();
+        Subscription subscription;
+        long requested = 0, received = 0;
+        int errorCount = 0;
+        Throwable error;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = new CountingSubscription(subscription);
+        }
+
+        @Override
+        public void onNext(DocumentDelta<StoreItem> delta) {
+            received++;
+            assertNull("onNext after onError", error);
+            switch (delta.getType()) {
+                case RESET:
+                    state.clear();
+                    if (delta.getSnapshot() != null) state.putAll(values(delta.getSnapshot()));
+                    break;
+                case REMOVED:
+                    state.remove(delta.getId());
+                    break;
+                default:
+                    state.put(delta.getId(), delta.getData().sequence);
+            }
+            if (delta.getSnapshot() != null) lastSnapshot = delta.getSnapshot();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            errorCount++;
+            error = t;
+        }
+
+        @Override
+        public void onComplete() {
+        }
+
+        private class CountingSubscription implements Subscription {
+            private final Subscription subscription;
+
+            CountingSubscription(Subscription subscription) {
+                this.subscription = subscription;
+            }
+
+            @Override
+            public void request(long n) {
+                if (n > 0) requested = requested + n < 0 ? Long.MAX_VALUE : requested + n;
+                subscription.request(n);
+            }
+
+            @Override
+            public void cancel() {
+                subscription.cancel();
+            }
+        }
+    }
+}
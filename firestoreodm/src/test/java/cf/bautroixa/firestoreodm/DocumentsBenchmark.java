@@ -0,0 +1,41 @@
+package cf.bautroixa.firestoreodm;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DocumentsBenchmark measures {@link Documents#dumpArrayValue(Class, List)}, the copy made by
+ * every static snapshot of a list
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DocumentsBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private List<BenchmarkDocument> documents;
+
+    @Setup
+    public void setUp() {
+        documents = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            documents.add(new BenchmarkDocument("d" + i, "name " + i, i));
+        }
+    }
+
+    @Benchmark
+    public List<BenchmarkDocument> dumpArrayValue() throws InstantiationException, IllegalAccessException {
+        return Documents.dumpArrayValue(BenchmarkDocument.class, documents);
+    }
+}
@@ -0,0 +1,209 @@
+package cf.bautroixa.firestoreodm;
+
+import android.os.Handler;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.firestore.CollectionReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static android.os.Looper.getMainLooper;
+import static cf.bautroixa.firestoreodm.StoreItems.data;
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * InMemoryDocumentStoreTest drives managers through {@link InMemoryDocumentStore} with churn and injected failures
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class InMemoryDocumentStoreTest {
+    private static final int DOCUMENT_COUNT = 300;
+    private InMemoryDocumentStore store;
+    private CollectionReference items;
+    private final InMemoryDocumentStore.DataGenerator generator = new InMemoryDocumentStore.DataGenerator() {
+        @Override
+        public Map<String, Object> generate(String id, int sequence) {
+            return data(id, sequence);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        items = new StoreItems().items;
+        store = new InMemoryDocumentStore(new Handler(getMainLooper()));
+        DocumentStores.set(store);
+    }
+
+    @After
+    public void tearDown() {
+        store.shutdown();
+        DocumentStores.set(null);
+    }
+
+    @Test
+    public void churnAndFailures_keepCollectionInStepWithStore() {
+        store.setLatency(5);
+        for (int i = 0; i < DOCUMENT_COUNT / 2; i++) {
+            store.set(items.document(String.valueOf(i)), data(String.valueOf(i), -1));
+        }
+        CollectionManager<StoreItem> manager = new CollectionManager<>(StoreItem.class, items, items, true);
+        runFor(100);
+        assertTrue(manager.isListComplete());
+        assertEquals(DOCUMENT_COUNT / 2, manager.list.size());
+
+        InMemoryDocumentStore.Churn churn = store.startChurn(items, DOCUMENT_COUNT, 2000, 0.3, generator);
+        for (int round = 0; round < 5; round++) {
+            runFor(200);
+            // the connection drops while documents keep changing, the manager listens again after its retry interval
+            store.failActiveListeners();
+            if (round == 2) store.failNextListens(1);
+        }
+        churn.stop();
+        // the longest retry interval is 2 seconds, deliveries are 5 ms late
+        runFor(3000);
+
+        assertEquals(1, store.getActiveListenerCount());
+        assertInStep(manager);
+
+        manager.clear();
+        runFor(50);
+        assertEquals(0, store.getActiveListenerCount());
+    }
+
+    @Test
+    public void requestGet_readsThroughStore() {
+        store.set(items.document("a"), data("a", 1));
+        store.set(items.document("b"), data("b", 2));
+        DocumentsManager<StoreItem> manager = new DocumentsManager<StoreItem>(StoreItem.class, items) {
+            @Override
+            public boolean isListComplete() {
+                return true;
+            }
+        };
+        Task<StoreItem> a = manager.requestGet("a");
+        Task<StoreItem> b = manager.requestGet("b");
+        Task<StoreItem> missing = manager.requestGet("missing");
+        assertSame(a, manager.requestGet("a"));
+        runFor(50);
+        assertTrue(a.isSuccessful());
+        assertEquals("item a", a.getResult().name);
+        assertEquals(2, b.getResult().sequence);
+        assertFalse(missing.isSuccessful());
+        assertTrue(manager.contains("a"));
+
+        store.failNextListens(1);
+        Task<StoreItem> failed = manager.requestGet("missing");
+        runFor(50);
+        assertTrue(failed.isComplete());
+        assertFalse(failed.isSuccessful());
+
+        store.set(items.document("missing"), data("missing", 3));
+        Task<StoreItem> found = manager.requestGet("missing");
+        runFor(50);
+        assertEquals(3, found.getResult().sequence);
+    }
+
+    @Test
+    public void requestGet_clearDuringRead_doesNotPutReadDocument() {
+        store.setLatency(200);
+        store.set(items.document("a"), data("a", 1));
+        DocumentsManager<StoreItem> manager = new DocumentsManager<StoreItem>(StoreItem.class, items) {
+            @Override
+            public boolean isListComplete() {
+                return true;
+            }
+        };
+        Task<StoreItem> beforeClear = manager.requestGet("a");
+        runFor(100);
+        manager.clear();
+        // the read started before clear is not shared with requests made after it
+        Task<StoreItem> afterClear = manager.requestGet("a");
+        assertNotSame(beforeClear, afterClear);
+        runFor(150);
+        assertTrue(beforeClear.isSuccessful());
+        assertEquals(1, beforeClear.getResult().sequence);
+        assertFalse(afterClear.isComplete());
+        assertFalse(manager.contains("a"));
+        runFor(150);
+        assertTrue(afterClear.isSuccessful());
+        assertTrue(manager.contains("a"));
+    }
+
+    @Test
+    public void removedDocument_doesNotRetryListen() {
+        store.set(items.document("a"), data("a", 1));
+        store.failNextListens(1);
+        StoreItem item = new StoreItem().withClass(StoreItem.class).withRef(items.document("a"));
+        item.setListenerRegistration(100, null);
+        runFor(20);
+        // the listen failed and a retry is pending when the last holder removes the Document
+        item.onRemove();
+        runFor(300);
+        assertEquals(0, store.getActiveListenerCount());
+        assertFalse(item.isAvailable());
+    }
+
+    @Test
+    public void cache_evictsDocumentThatJustArrived() {
+        store.set(items.document("a"), data("a", 1));
+        store.set(items.document("b"), data("b", 2));
+        DocumentsManager<StoreItem> manager = new DocumentsManager<StoreItem>(StoreItem.class, items) {
+            @Override
+            public boolean isListComplete() {
+                return true;
+            }
+        };
+        manager.setCache(new DocumentsCache<StoreItem>(1));
+        StoreItem a = manager.listenNewDocument(items.document("a"));
+        runFor(20);
+        // a is pinned, so b is evicted by the put of its own first value
+        a.addOnNewValueListener(new Document.OnValueChangedListener() {
+            @Override
+            public void onValueChanged(@NonNull Document document) {
+            }
+        });
+        manager.listenNewDocument(items.document("b"));
+        runFor(20);
+        assertTrue(manager.contains("a"));
+        assertFalse(manager.contains("b"));
+        assertEquals(1, manager.getCache().getEvictionCount());
+    }
+
+    private void assertInStep(CollectionManager<StoreItem> manager) {
+        int expectedSize = 0;
+        for (int i = 0; i < DOCUMENT_COUNT; i++) {
+            String id = String.valueOf(i);
+            Map<String, Object> data = store.get(items.document(id));
+            StoreItem item = manager.get(id);
+            if (data == null) {
+                assertNull("document " + id + " was deleted", item);
+                continue;
+            }
+            expectedSize++;
+            assertNotNull("document " + id + " is missing", item);
+            assertEquals(data.get("name"), item.name);
+            assertEquals(((Number) data.get("sequence")).longValue(), item.sequence);
+        }
+        assertEquals(expectedSize, manager.list.size());
+    }
+
+    /**
+     * runFor advance main looper, which runs deliveries, churn and retries of the store, by millis
+     */
+    private static void runFor(long millis) {
+        shadowOf(getMainLooper()).idleFor(millis, TimeUnit.MILLISECONDS);
+    }
+}
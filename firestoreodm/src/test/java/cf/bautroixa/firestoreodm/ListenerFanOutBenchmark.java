@@ -0,0 +1,91 @@
+package cf.bautroixa.firestoreodm;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ListenerFanOutBenchmark measures how a change of a large list reaches every
+ * {@link DocumentsManager.OnListChangedListener}, one Document at a time and as one batch
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ListenerFanOutBenchmark {
+    private static final int BATCH_SIZE = 100;
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    @Param({"1", "10", "100"})
+    public int listeners;
+
+    private DocumentsManager<BenchmarkDocument> manager;
+    private Random random;
+    private long version = 0;
+    private long callbacks = 0;
+
+    @Setup
+    public void setUp() {
+        random = new Random(42);
+        manager = new DocumentsManager<BenchmarkDocument>(BenchmarkDocument.class) {
+            @Override
+            public boolean isListComplete() {
+                return true;
+            }
+        };
+        ArrayList<BenchmarkDocument> documents = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            documents.add(new BenchmarkDocument("d" + i, "name " + i, i));
+        }
+        manager.applyChanges(documents, Collections.<String>emptyList());
+        for (int i = 0; i < listeners; i++) {
+            manager.addOnListChangedListener(new DocumentsManager.OnListChangedListener<BenchmarkDocument>() {
+                @Override
+                public void onItemChanged(int position, BenchmarkDocument data) {
+                    callbacks++;
+                }
+
+                @Override
+                public void onItemRangeChanged(int positionStart, List<BenchmarkDocument> items) {
+                    callbacks += items.size();
+                }
+            });
+        }
+    }
+
+    /**
+     * update one random Document with put
+     */
+    @Benchmark
+    public long putOne() {
+        int i = random.nextInt(size);
+        manager.put(new BenchmarkDocument("d" + i, "name " + i, ++version));
+        return callbacks;
+    }
+
+    /**
+     * update BATCH_SIZE random Documents with one applyChanges
+     */
+    @Benchmark
+    public long applyBatch() {
+        ArrayList<BenchmarkDocument> puts = new ArrayList<>(BATCH_SIZE);
+        for (int j = 0; j < BATCH_SIZE; j++) {
+            int i = random.nextInt(size);
+            puts.add(new BenchmarkDocument("d" + i, "name " + i, ++version));
+        }
+        manager.applyChanges(puts, Collections.<String>emptyList());
+        return callbacks;
+    }
+}
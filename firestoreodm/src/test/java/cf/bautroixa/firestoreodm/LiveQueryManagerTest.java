@@ -0,0 +1,130 @@
+package cf.bautroixa.firestoreodm;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * LiveQueryManagerTest applies random changes to a source manager and compares every live view with
+ * {@link LocalQuery#run} of the source after each change
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class LiveQueryManagerTest {
+    private static final int ID_COUNT = 60;
+    private static final int STEPS = 5000;
+    private StoreItems items;
+
+    @Before
+    public void setUp() {
+        items = new StoreItems();
+    }
+
+    @Test
+    public void randomChanges_orderedView_matchesRun() {
+        checkRandomChanges(newQuery().orderBy(new Comparator<StoreItem>() {
+            @Override
+            public int compare(StoreItem o1, StoreItem o2) {
+                return Long.compare(o1.sequence, o2.sequence);
+            }
+        }), 7);
+    }
+
+    @Test
+    public void randomChanges_sourceOrderView_matchesRun() {
+        checkRandomChanges(newQuery(), 8);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void setCache_isRejected() {
+        DocumentsManager<StoreItem> source = new DocumentsManager<StoreItem>(StoreItem.class) {
+            @Override
+            public boolean isListComplete() {
+                return true;
+            }
+        };
+        source.liveQuery(newQuery()).setCache(new DocumentsCache<StoreItem>(5));
+    }
+
+    private LocalQuery<StoreItem> newQuery() {
+        return new LocalQuery<StoreItem>().where(new LocalQuery.Filter<StoreItem>() {
+            @Override
+            public boolean matches(StoreItem data) {
+                return data.sequence % 3 != 0;
+            }
+        }).limit(10);
+    }
+
+    private void checkRandomChanges(LocalQuery<StoreItem> query, long seed) {
+        Random random = new Random(seed);
+        DocumentsManager<StoreItem> source = new DocumentsManager<StoreItem>(StoreItem.class) {
+            @Override
+            public boolean isListComplete() {
+                return true;
+            }
+        };
+        for (int i = 0; i < ID_COUNT / 2; i++) {
+            source.put(items.item(String.valueOf(i), random.nextInt(100)));
+        }
+        LiveQueryManager<StoreItem> view = source.liveQuery(query);
+        // the view must notify its own listeners of every change, not only hold the right list
+        final ArrayList<String> notified = ids(view.getList());
+        view.addOnListChangedListener(new DocumentsManager.OnListChangedListener<StoreItem>() {
+            @Override
+            public void onItemInserted(int position, StoreItem data) {
+                notified.add(position, data.getId());
+            }
+
+            @Override
+            public void onItemRemoved(int position, StoreItem data) {
+                notified.remove(position);
+            }
+
+            @Override
+            public void onItemMoved(int fromPosition, int toPosition, StoreItem data) {
+                notified.add(toPosition, notified.remove(fromPosition));
+            }
+
+            @Override
+            public void onDataSetChanged(ArrayList<StoreItem> list) {
+                notified.clear();
+                notified.addAll(ids(list));
+            }
+        });
+
+        for (int step = 0; step < STEPS; step++) {
+            int operation = items.randomStep(source, random, ID_COUNT, 8, true);
+            String message = "step " + step + " operation " + operation;
+            assertEquals(message, values(query.run(source.getList())), values(view.getList()));
+            assertEquals(message, ids(view.getList()), notified);
+        }
+        view.stopListening();
+    }
+
+    private static ArrayList<String> ids(List<StoreItem> datas) {
+        ArrayList<String> ids = new ArrayList<>();
+        for (StoreItem data : datas) {
+            ids.add(data.getId());
+        }
+        return ids;
+    }
+
+    private static List<String> values(List<StoreItem> datas) {
+        List<String> values = new ArrayList<>();
+        for (StoreItem data : datas) {
+            values.add(data.getId() + ":" + data.sequence);
+        }
+        return values;
+    }
+}
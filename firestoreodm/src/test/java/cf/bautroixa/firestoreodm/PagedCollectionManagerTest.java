@@ -0,0 +1,35 @@
+package cf.bautroixa.firestoreodm;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * PagedCollectionManagerTest checks which neighbour pages are listened again when the edge of a page changes
+ */
+public class PagedCollectionManagerTest {
+    // two pages loaded with loadPrevious, the first page and one page loaded with loadNext
+    private static final List<Boolean> WINDOW = Arrays.asList(true, true, false, false);
+
+    @Test
+    public void edgeFollowers_forwardPageAfterBackwardPage_movesPrevious() {
+        // the first page of the query is preceded by a backward page that ends before its first Document
+        assertArrayEquals(new int[]{3, 1}, PagedCollectionManager.edgeFollowers(WINDOW, 2));
+    }
+
+    @Test
+    public void edgeFollowers_backwardPage_movesBackwardPreviousAndForwardNext() {
+        // the next page of the last backward page is the first page, which has no cursor to move
+        assertArrayEquals(new int[]{2, 0}, PagedCollectionManager.edgeFollowers(WINDOW, 1));
+        assertArrayEquals(new int[]{-1, -1}, PagedCollectionManager.edgeFollowers(WINDOW, 0));
+    }
+
+    @Test
+    public void edgeFollowers_lastForwardPage_movesNothing() {
+        assertArrayEquals(new int[]{-1, -1}, PagedCollectionManager.edgeFollowers(WINDOW, 3));
+        assertArrayEquals(new int[]{-1, -1}, PagedCollectionManager.edgeFollowers(Arrays.asList(false), 0));
+    }
+}
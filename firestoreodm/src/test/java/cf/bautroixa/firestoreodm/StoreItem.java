@@ -0,0 +1,20 @@
+package cf.bautroixa.firestoreodm;
+
+/**
+ * StoreItem is a Document read from {@link InMemoryDocumentStore} in tests
+ */
+@FirestoreModel
+public class StoreItem extends Document {
+    public String name;
+    public long sequence;
+
+    public StoreItem() {
+    }
+
+    @Override
+    protected void update(Document document) {
+        StoreItem item = (StoreItem) document;
+        this.name = item.name;
+        this.sequence = item.sequence;
+    }
+}
@@ -0,0 +1,94 @@
+package cf.bautroixa.firestoreodm;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.FirebaseOptions;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * StoreItems is the "items" collection of {@link StoreItem} shared by tests, it initializes FirebaseApp once
+ * and builds items, their stored data and random changes of a manager
+ */
+class StoreItems {
+    final CollectionReference items;
+
+    /**
+     * construct StoreItems, it must be called in a Robolectric test
+     */
+    StoreItems() {
+        if (FirebaseApp.getApps(ApplicationProvider.getApplicationContext()).isEmpty()) {
+            FirebaseApp.initializeApp(ApplicationProvider.getApplicationContext(), new FirebaseOptions.Builder()
+                    .setApplicationId("1:1:android:1")
+                    .setApiKey("test")
+                    .setProjectId("firestoreodm-test")
+                    .build());
+        }
+        items = FirebaseFirestore.getInstance().collection("items");
+    }
+
+    /**
+     * item create a StoreItem of items with documentId id
+     */
+    StoreItem item(String id, long sequence) {
+        StoreItem item = new StoreItem();
+        item.name = "item " + id;
+        item.sequence = sequence;
+        return item.withClass(StoreItem.class).withRef(items.document(id));
+    }
+
+    /**
+     * data is what {@link InMemoryDocumentStore} stores for the StoreItem with documentId id
+     */
+    static Map<String, Object> data(String id, long sequence) {
+        HashMap<String, Object> data = new HashMap<>();
+        data.put("name", "item " + id);
+        data.put("sequence", sequence);
+        return data;
+    }
+
+    /**
+     * randomStep apply a random put, remove, batch of at most maxBatch changes or move to source,
+     * documentIds are taken from 0 until idCount and sequences from 0 until 100
+     *
+     * @param withMoves true to also move Documents of source
+     * @return operation applied, 0 put, 1 remove, 2 batch, 3 move
+     */
+    int randomStep(DocumentsManager<StoreItem> source, Random random, int idCount, int maxBatch, boolean withMoves) {
+        int operation = random.nextInt(withMoves ? 4 : 3);
+        if (operation == 0) {
+            source.put(item(randomId(random, idCount), random.nextInt(100)));
+        } else if (operation == 1) {
+            source.remove(randomId(random, idCount));
+        } else if (operation == 2) {
+            List<StoreItem> puts = new ArrayList<>();
+            Set<String> removedIds = new HashSet<>();
+            int count = random.nextInt(maxBatch);
+            for (int i = 0; i < count; i++) {
+                if (random.nextBoolean()) {
+                    puts.add(item(randomId(random, idCount), random.nextInt(100)));
+                } else {
+                    removedIds.add(randomId(random, idCount));
+                }
+            }
+            source.applyChanges(puts, removedIds);
+        } else if (source.getList().size() > 1) {
+            int size = source.getList().size();
+            source.move(source.getList().get(random.nextInt(size)).getId(), random.nextInt(size));
+        }
+        return operation;
+    }
+
+    static String randomId(Random random, int idCount) {
+        return String.valueOf(random.nextInt(idCount));
+    }
+}